@@ -35,11 +35,14 @@ import android.util.Size;
 import com.qualcomm.robotcore.eventloop.opmode.Disabled;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.util.ElapsedTime;
 import org.firstinspires.ftc.robotcore.external.hardware.camera.BuiltinCameraDirection;
 import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
 import org.firstinspires.ftc.robotcore.external.tfod.Recognition;
 import org.firstinspires.ftc.vision.VisionPortal;
 import org.firstinspires.ftc.vision.tfod.TfodProcessor;
+import org.firstinspires.ftc.teamcode.command.Commands;
+import org.firstinspires.ftc.teamcode.util.TelemetryAggregator;
 
 import com.qualcomm.robotcore.eventloop.opmode.Disabled;
 import com.qualcomm.robotcore.hardware.Servo;
@@ -179,10 +182,27 @@ public class AutonomousRed extends LinearOpMode {
         // dropper 0.0 = opens
         // lift -827
         // end of auto
-        robot.encoderDrive(0.5, 5, 'B');
-        robot.rotateToHeading(90, 0.5);
-        robot.encoderDrive(0.5, 50, 'B');
-        robot.sleep(20000);
+        // command start times count from here
+        robot.scheduler.timeline.clear();
+        robot.scheduler.schedule(Commands.sequence(
+                robot.encoderDriveCommand(0.5, 5, 'B'),
+                robot.rotateToHeadingCommand(90, 0.5),
+                robot.encoderDriveCommand(0.5, 50, 'B')
+        ));
+
+        // keep ticking until the end of the period; the command timings stay on the driver station
+        ElapsedTime sinceTelemetry = new ElapsedTime();
+        robot.loopScheduler.reset();
+        while (opModeIsActive()) {
+            robot.update();
+            if (sinceTelemetry.milliseconds() >= TelemetryAggregator.INTERVAL_MS) {
+                sinceTelemetry.reset();
+                robot.scheduler.report(telemetry);
+                telemetry.update();
+            }
+            robot.loopScheduler.awaitNextTick();
+        }
+        robot.scheduler.cancelAll();
     }   // end runOpMode()
 
     /**
@@ -251,7 +271,7 @@ public class AutonomousRed extends LinearOpMode {
          * Initialize the drive system variables.
          * The init() method of the hardware class does all the work here
          */
-        robot = new RealRobot(hardwareMap, telemetry);
+        robot = RealRobot.withTunedGains(hardwareMap, telemetry);
         allMotors.add(robot.lf);
         allMotors.add(robot.rf);
         allMotors.add(robot.lr);
@@ -261,7 +281,7 @@ public class AutonomousRed extends LinearOpMode {
         //robot.carriage.setDirection(Servo.Direction.FORWARD);
 
         for (DcMotor dcMotor : allMotors) {
-            dcMotor.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+            robot.output.setMode(dcMotor, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
         }
 
     }   // end class
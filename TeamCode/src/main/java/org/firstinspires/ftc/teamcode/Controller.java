@@ -2,6 +2,8 @@ package org.firstinspires.ftc.teamcode;
 
 import com.qualcomm.robotcore.hardware.Gamepad;
 
+import org.firstinspires.ftc.teamcode.util.LoopProfiler;
+
 public class Controller {
     private Gamepad gamepad;
 
@@ -17,8 +19,7 @@ public class Controller {
     }
 
     public void update() {
-
-
+        long span = LoopProfiler.start();
 
         if (gamepad.x) {
             ++x;
@@ -77,6 +78,8 @@ public class Controller {
         right_stick_y = gamepad.right_stick_y;
         left_trigger = gamepad.left_trigger;
         right_trigger = gamepad.right_trigger;
+
+        LoopProfiler.end(LoopProfiler.CONTROLLER, span);
     }
 
     public boolean dpadUp() {
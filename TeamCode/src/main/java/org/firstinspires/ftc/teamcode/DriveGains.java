@@ -0,0 +1,78 @@
+package org.firstinspires.ftc.teamcode;
+
+import com.acmerobotics.roadrunner.control.PIDCoefficients;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The gains {@link RealRobot} follows trajectories with: the follower's translational and heading
+ * PID and the drive feedforward. The live values are the dashboard tunables; an instance is a
+ * fixed set of them, e.g. a candidate while tuning, that can be given to a single RealRobot
+ * without touching the tunables, or saved to and loaded from a JSON file.
+ */
+public class DriveGains {
+    public double translationalP, translationalI, translationalD;
+    public double headingP, headingI, headingD;
+    public double kV, kA, kStatic;
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    /**
+     * @return the tunables as they are now
+     */
+    public static DriveGains current() {
+        DriveGains gains = new DriveGains();
+        gains.translationalP = RealRobot.TRANSLATIONAL_PID.kP;
+        gains.translationalI = RealRobot.TRANSLATIONAL_PID.kI;
+        gains.translationalD = RealRobot.TRANSLATIONAL_PID.kD;
+        gains.headingP = RealRobot.HEADING_PID.kP;
+        gains.headingI = RealRobot.HEADING_PID.kI;
+        gains.headingD = RealRobot.HEADING_PID.kD;
+        gains.kV = DriveConstants.kV;
+        gains.kA = DriveConstants.kA;
+        gains.kStatic = DriveConstants.kStatic;
+        return gains;
+    }
+
+    public PIDCoefficients translational() {
+        return new PIDCoefficients(translationalP, translationalI, translationalD);
+    }
+
+    public PIDCoefficients heading() {
+        return new PIDCoefficients(headingP, headingI, headingD);
+    }
+
+    public DriveGains copy() {
+        DriveGains copy = new DriveGains();
+        copy.translationalP = translationalP;
+        copy.translationalI = translationalI;
+        copy.translationalD = translationalD;
+        copy.headingP = headingP;
+        copy.headingI = headingI;
+        copy.headingD = headingD;
+        copy.kV = kV;
+        copy.kA = kA;
+        copy.kStatic = kStatic;
+        return copy;
+    }
+
+    public void write(File file) throws IOException {
+        JSON_MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, this);
+    }
+
+    public static DriveGains read(File file) throws IOException {
+        return JSON_MAPPER.readValue(file, DriveGains.class);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "translational PID (%.4f, %.4f, %.4f), heading PID (%.4f, %.4f, %.4f), kV %.6f, kA %.6f, kStatic %.4f",
+                translationalP, translationalI, translationalD, headingP, headingI, headingD, kV, kA, kStatic);
+    }
+}
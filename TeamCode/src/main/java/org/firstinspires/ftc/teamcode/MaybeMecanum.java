@@ -7,6 +7,9 @@ import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.hardware.Servo;
 import com.qualcomm.robotcore.util.ElapsedTime;
 
+import org.firstinspires.ftc.teamcode.util.LoopProfiler;
+import org.firstinspires.ftc.teamcode.util.TelemetryAggregator;
+
 /**
  * This file contains an example of an iterative (Non-Linear) "OpMode".
  * An OpMode is a 'program' that runs in either the autonomous or the teleop period of an FTC match.
@@ -32,6 +35,7 @@ public class MaybeMecanum extends OpMode
     private RealRobot robot;
     private Controller controller;
     private Controller controller2;
+    private TelemetryAggregator status;
     private boolean arcadeMode = false;
     private boolean incrementMode = false;
     private boolean slowMode = false;
@@ -43,10 +47,37 @@ public class MaybeMecanum extends OpMode
      */
     @Override
     public void init() {
-        robot = new RealRobot(hardwareMap, telemetry);
+        robot = RealRobot.withTunedGains(hardwareMap, telemetry);
 
         controller = new Controller(gamepad1);
         controller2 = new Controller(gamepad2);
+
+        // evaluated and sent at TelemetryAggregator.INTERVAL_MS, not every loop
+        status = new TelemetryAggregator(telemetry)
+                .add("Arcade Mode (a)", () -> arcadeMode ? "YES" : "no.")
+                .add("Slow Mode (s)", () -> slowMode ? "YES" : "no.")
+                .add("Increment Mode (s)", () -> incrementMode ? "YES" : "no.")
+                .add("Heading", "%.1f", robot::getHeadingDegrees)
+                .add("LF Position", () -> robot.snapshot.positions[RealRobot.SNAPSHOT_LF])
+                .add("RF Position", () -> robot.snapshot.positions[RealRobot.SNAPSHOT_RF])
+                .add("LR Position", () -> robot.snapshot.positions[RealRobot.SNAPSHOT_LR])
+                .add("RR Position", () -> robot.snapshot.positions[RealRobot.SNAPSHOT_RR])
+                .add("Dropper Position", "%.2f", robot.dropper::getPosition)
+                .add("Launcher Position", "%.2f", robot.launcher::getPosition)
+                .add("Lift Position", () -> robot.snapshot.positions[RealRobot.SNAPSHOT_LIFT])
+                .add("1 Left Joystick Y", "%.2f", () -> controller.left_stick_y)
+                .add("1 Left Joystick X", "%.2f", () -> controller.left_stick_x)
+                .add("2 Left Joystick Y", "%.2f", () -> controller2.left_stick_y)
+                .add("2 Left Joystick X", "%.2f", () -> controller2.left_stick_x)
+                .add("Loop Time (ms)", "%.1f", robot.snapshot::getLoopTimeMs)
+                .add("Hub Commands / Loop", () -> robot.snapshot.getCommandsLastCycle()
+                        + " (" + robot.snapshot.getUncachedCommandsLastCycle() + " uncached)")
+                .add("Motor Writes Saved / s", "%.0f", robot.output::getSavedWritesPerSecond)
+                .add("IMU Sample Age (ms)", "%.1f", robot.imuPoller::getSampleAgeMs);
+        if (robot.odometryService != null) {
+            status.add("Odometry Rate (Hz)", "%.1f", robot.odometryService::getRateHz)
+                    .add("Odometry Missed Deadlines", () -> robot.odometryService.getMissedDeadlines());
+        }
         //
         // robot.launcher.setPosition(Servo.MAX_POSITION);
 
@@ -61,8 +92,7 @@ public class MaybeMecanum extends OpMode
         if (controller.XOnce()) {
             slowMode = !slowMode;
         }
-        telemetry.addData("Slow Mode (s)", slowMode ? "YES" : "no.");
-        telemetry.update();
+        status.update();
     }
 
     /*
@@ -140,10 +170,10 @@ public class MaybeMecanum extends OpMode
         }
         else robot.intake.setPower(0);
 
-        if(controller2.right_trigger!=0) robot.lift.setPower(1);
-        else robot.lift.setPower(0);
-        if(controller2.left_trigger!=0) robot.lift.setPower(-1);
-        else robot.lift.setPower(0);
+        if(controller2.right_trigger!=0) robot.output.setPower(robot.lift, 1);
+        else robot.output.setPower(robot.lift, 0);
+        if(controller2.left_trigger!=0) robot.output.setPower(robot.lift, -1);
+        else robot.output.setPower(robot.lift, 0);
 
         if(controller2.BOnce()) robot.dropper.setPosition(0.0);
         if(controller2.rightBumper()) {
@@ -200,23 +230,8 @@ public class MaybeMecanum extends OpMode
 
         robot.setMotors(lf, lr, rf, rr);
 
-        telemetry.addData("Arcade Mode (a)", arcadeMode ? "YES" : "no.");
-        telemetry.addData("Slow Mode (s)", slowMode ? "YES" : "no.");
-        telemetry.addData("Increment Mode (s)", incrementMode ? "YES" : "no.");
-        telemetry.addData("Heading", robot.getHeadingDegrees());
-        telemetry.addData("LF Position", robot.lf.getCurrentPosition());
-        telemetry.addData("RF Position", robot.rf.getCurrentPosition());
-        telemetry.addData("LR Position", robot.lr.getCurrentPosition());
-        telemetry.addData("RR Position", robot.rr.getCurrentPosition());
-        telemetry.addData("Dropper Position", robot.dropper.getPosition());
-        telemetry.addData("Launcher Position", robot.launcher.getPosition());
-        telemetry.addData("Lift Position", robot.lift.getCurrentPosition());
-        telemetry.addData("1 Left Joystick Y", controller.left_stick_y);
-        telemetry.addData("1 Left Joystick X", controller.left_stick_x);
-        telemetry.addData("2 Left Joystick Y", controller2.left_stick_y);
-        telemetry.addData("2 Left Joystick X", controller2.left_stick_x);
-
-        telemetry.update();
+        status.update();
+        LoopProfiler.endLoop();
     }
 
     /*
@@ -5,7 +5,6 @@ import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.XYZ;
 import static org.firstinspires.ftc.robotcore.external.navigation.AxesOrder.YZX;
 import static org.firstinspires.ftc.robotcore.external.navigation.AxesReference.EXTRINSIC;
 
-import com.qualcomm.hardware.bosch.BHI260IMU;
 import com.qualcomm.hardware.bosch.BNO055IMU;
 import com.qualcomm.hardware.bosch.JustLoggingAccelerationIntegrator;
 import com.qualcomm.hardware.rev.RevHubOrientationOnRobot;
@@ -15,6 +14,7 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.Servo;
 import com.qualcomm.robotcore.util.ElapsedTime;
+import com.qualcomm.robotcore.util.RobotLog;
 
 import org.firstinspires.ftc.robotcore.external.ClassFactory;
 import org.firstinspires.ftc.robotcore.external.Telemetry;
@@ -26,9 +26,12 @@ import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
 import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
 import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.roadrunner.control.PIDCoefficients;
@@ -45,6 +48,7 @@ import com.acmerobotics.roadrunner.trajectory.constraints.MinVelocityConstraint;
 import com.acmerobotics.roadrunner.trajectory.constraints.ProfileAccelerationConstraint;
 import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryAccelerationConstraint;
 import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryVelocityConstraint;
+import com.acmerobotics.roadrunner.util.NanoClock;
 import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.hardware.rev.RevHubOrientationOnRobot;
 import com.qualcomm.robotcore.hardware.DcMotor;
@@ -56,15 +60,32 @@ import com.qualcomm.robotcore.hardware.VoltageSensor;
 import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
 
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
-import org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer;
+import org.firstinspires.ftc.teamcode.command.Command;
+import org.firstinspires.ftc.teamcode.command.CommandScheduler;
+import org.firstinspires.ftc.teamcode.command.Subsystem;
+import org.firstinspires.ftc.teamcode.drive.FastTrackingWheelLocalizer;
+import org.firstinspires.ftc.teamcode.drive.HeadingFusionLocalizer;
+import org.firstinspires.ftc.teamcode.drive.OdometryService;
+import org.firstinspires.ftc.teamcode.sim.SimulationClock;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceBuilder;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner;
+import org.firstinspires.ftc.teamcode.util.FixedRateScheduler;
+import org.firstinspires.ftc.teamcode.util.HardwareSnapshot;
+import org.firstinspires.ftc.teamcode.util.ImuPoller;
+import org.firstinspires.ftc.teamcode.util.LogFiles;
+import org.firstinspires.ftc.teamcode.util.LoggingUtil;
+import org.firstinspires.ftc.teamcode.util.LoopProfiler;
 import org.firstinspires.ftc.teamcode.util.LynxModuleUtil;
+import org.firstinspires.ftc.teamcode.util.MotorOutputCache;
+import org.firstinspires.ftc.teamcode.util.TelemetryAggregator;
+import org.firstinspires.ftc.teamcode.util.VoltageService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ACCEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_ACCEL;
@@ -102,10 +123,22 @@ public class RealRobot extends MecanumDrive{
 
     //public final Servo grabber,track, trayL, trayR;
 
-    private final BHI260IMU imu;
+    private final IMU imu;
+
+    // indices into snapshot.positions / snapshot.velocities
+    public static final int SNAPSHOT_LF = 0, SNAPSHOT_LR = 1, SNAPSHOT_RR = 2, SNAPSHOT_RF = 3;
+    public static final int SNAPSHOT_INTAKE = 4, SNAPSHOT_LIFT = 5, SNAPSHOT_HOOK_SP = 6;
+
+    public final ImuPoller imuPoller;
+    public final HardwareSnapshot snapshot;
+    public final MotorOutputCache output;
+    // null unless OdometryService.ENABLED
+    public final OdometryService odometryService;
+
+    // MecanumDrive keeps its constructor arguments private; copies for the allocation free setDriveSignal
+    private final double driveKV, driveKA, driveKStatic, driveK, lateralMultiplier;
 
     private double headingOffset = 0.0;
-    private Orientation angles;
     private Acceleration gravity;
 
 
@@ -134,35 +167,115 @@ public class RealRobot extends MecanumDrive{
     public static double VY_WEIGHT = 1;
     public static double OMEGA_WEIGHT = 1;
 
+    // have withTunedGains() follow the gains GainTuner found (or any saved DriveGains); those
+    // robots then don't follow dashboard edits to the PID tunables
+    public static boolean LOAD_TUNED_GAINS = false;
+    public static final File TUNED_GAINS_FILE = new File(LoggingUtil.ROAD_RUNNER_FOLDER, "drive_gains.json");
+
     private TrajectorySequenceRunner trajectorySequenceRunner;
+    public final FixedRateScheduler loopScheduler;
+    // time base of everything time-dependent: the system clock, or a simulation's virtual clock
+    public final NanoClock clock;
+    private final boolean simulated;
+
+    public final CommandScheduler scheduler;
+    public final Subsystem driveSubsystem = new Subsystem("drive");
+    public final Subsystem liftSubsystem = new Subsystem("lift");
+    private final Set<Subsystem> driveRequirements = Collections.singleton(driveSubsystem);
+    private final Set<Subsystem> liftRequirements = Collections.singleton(liftSubsystem);
 
     private static final TrajectoryVelocityConstraint VEL_CONSTRAINT = getVelocityConstraint(MAX_VEL, MAX_ANG_VEL, TRACK_WIDTH);
     private static final TrajectoryAccelerationConstraint ACCEL_CONSTRAINT = getAccelerationConstraint(MAX_ACCEL);
 
     private TrajectoryFollower follower;
     private VoltageSensor batteryVoltageSensor;
+    public final VoltageService voltageService;
+    // last gains passed to setPIDFCoefficients(), re-applied when the battery voltage drifts. The
+    // constructor only sets them with RUN_USING_ENCODER; without it the follower's feedforward is
+    // what gets compensated, every loop, by the runner's voltage scale
+    private DcMotor.RunMode pidfRunMode;
+    private PIDFCoefficients pidfCoefficients;
 
-    private List<Integer> lastEncPositions = new ArrayList<>();
-    private List<Integer> lastEncVels = new ArrayList<>();
+    // raw ticks of lf, lr, rr, rf as of the last update(), for the log
+    private final int[] lastEncPositions = new int[4];
+    private final int[] lastEncVels = new int[4];
 
-    private List<DcMotorEx> motors = Arrays.asList(lf, lr, rr, rf);
+    private List<DcMotorEx> motors;
 
     public RealRobot(HardwareMap hardwareMap, final Telemetry _telemetry) {
+        this(hardwareMap, _telemetry, null, null);
+    }
 
-        //roadrunner stuff
-        super(kV, kA, kStatic, TRACK_WIDTH, TRACK_WIDTH, LATERAL_MULTIPLIER);
+    /**
+     * @return a robot following {@link #loadTunedGains()}, for the op modes that run a match
+     */
+    public static RealRobot withTunedGains(HardwareMap hardwareMap, Telemetry telemetry) {
+        return new RealRobot(hardwareMap, telemetry, null, loadTunedGains());
+    }
 
-        follower = new HolonomicPIDVAFollower(TRANSLATIONAL_PID, TRANSLATIONAL_PID, HEADING_PID,
-                new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5);
+    /**
+     * @return the gains in {@link #TUNED_GAINS_FILE} if {@link #LOAD_TUNED_GAINS} is set, otherwise
+     * null, i.e. the tunables; also null, with an error on the driver station, if the file can't
+     * be read
+     */
+    public static @Nullable DriveGains loadTunedGains() {
+        if (!LOAD_TUNED_GAINS) {
+            return null;
+        }
+        try {
+            return DriveGains.read(TUNED_GAINS_FILE);
+        } catch (IOException e) {
+            RobotLog.setGlobalErrorMsg(new RuntimeException(e),
+                    "Unable to load drive gains from " + TUNED_GAINS_FILE.getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * @param simulationClock virtual clock of a {@link org.firstinspires.ftc.teamcode.sim.SimulatedRobot}
+     *                        whose hardware is in {@code hardwareMap}, or null on the robot. Simulated,
+     *                        nothing runs on background threads and every wait advances that clock;
+     *                        telemetry may then be null.
+     */
+    public RealRobot(HardwareMap hardwareMap, final Telemetry _telemetry, @Nullable SimulationClock simulationClock) {
+        this(hardwareMap, _telemetry, simulationClock, null);
+    }
+
+    /**
+     * @param gains follower and feedforward gains for this robot alone, or null for the tunables
+     *              (whose PID coefficients then stay live)
+     */
+    public RealRobot(HardwareMap hardwareMap, final Telemetry _telemetry, @Nullable SimulationClock simulationClock,
+                     @Nullable DriveGains gains) {
+
+        //roadrunner stuff
+        super(gains != null ? gains.kV : kV, gains != null ? gains.kA : kA, gains != null ? gains.kStatic : kStatic,
+                TRACK_WIDTH, TRACK_WIDTH, LATERAL_MULTIPLIER);
+        driveKV = gains != null ? gains.kV : kV;
+        driveKA = gains != null ? gains.kA : kA;
+        driveKStatic = gains != null ? gains.kStatic : kStatic;
+        driveK = (TRACK_WIDTH + TRACK_WIDTH) / 2;
+        lateralMultiplier = LATERAL_MULTIPLIER;
+        PIDCoefficients translationalPid = gains != null ? gains.translational() : TRANSLATIONAL_PID;
+        PIDCoefficients headingPid = gains != null ? gains.heading() : HEADING_PID;
+
+        simulated = simulationClock != null;
+        clock = simulated ? simulationClock : NanoClock.system();
+        scheduler = new CommandScheduler(clock);
+        loopScheduler = simulated
+                ? new FixedRateScheduler(simulationClock, simulationClock::sleep)
+                : new FixedRateScheduler();
+        // the dashboard and the log are global; simulations running side by side would fight over them
+        loopScheduler.setLogging(!simulated);
+
+        follower = new HolonomicPIDVAFollower(translationalPid, translationalPid, headingPid,
+                new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5, clock);
 
         LynxModuleUtil.ensureMinimumFirmwareVersion(hardwareMap);
 
         batteryVoltageSensor = hardwareMap.voltageSensor.iterator().next();
+        voltageService = new VoltageService(batteryVoltageSensor, !simulated);
 
-        for (LynxModule module : hardwareMap.getAll(LynxModule.class)) {
-            module.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO);
-        }
-        
         //idk if this is needed
         if (RUN_USING_ENCODER) {
             setMode(DcMotor.RunMode.RUN_USING_ENCODER);
@@ -174,16 +287,29 @@ public class RealRobot extends MecanumDrive{
             setPIDFCoefficients(DcMotor.RunMode.RUN_USING_ENCODER, MOTOR_VELO_PID);
         }
 
-        List<Integer> lastTrackingEncPositions = new ArrayList<>();
-        List<Integer> lastTrackingEncVels = new ArrayList<>();
+        int[] lastTrackingEncPositions, lastTrackingEncVels;
 
         // TODO: if desired, use setLocalizer() to change the localization method
-        setLocalizer(new StandardTrackingWheelLocalizer(hardwareMap, lastTrackingEncPositions, lastTrackingEncVels));
+        // the background odometry thread runs on wall time, so a simulation uses the inline localizer
+        if (OdometryService.ENABLED && !simulated) {
+            odometryService = new OdometryService(hardwareMap);
+            setLocalizer(odometryService);
+            // the service reads the wheels on its own thread, so the log gets no tracking columns
+            lastTrackingEncPositions = new int[0];
+            lastTrackingEncVels = new int[0];
+        } else {
+            odometryService = null;
+            lastTrackingEncPositions = new int[3];
+            lastTrackingEncVels = new int[3];
+            setLocalizer(new FastTrackingWheelLocalizer(hardwareMap, lastTrackingEncPositions, lastTrackingEncVels, clock));
+        }
 
         trajectorySequenceRunner = new TrajectorySequenceRunner(
-                follower, HEADING_PID, batteryVoltageSensor,
-                lastEncPositions, lastEncVels, lastTrackingEncPositions, lastTrackingEncVels
+                follower, headingPid, voltageService,
+                lastEncPositions, lastEncVels, lastTrackingEncPositions, lastTrackingEncVels, clock
         );
+        // the log is global; simulations running side by side would interleave their samples in it
+        trajectorySequenceRunner.setLogging(!simulated);
 
 
 
@@ -205,6 +331,9 @@ public class RealRobot extends MecanumDrive{
         lift = hardwareMap.dcMotor.get("lift");
         launcher = hardwareMap.servo.get("launcher");
 
+        motors = Arrays.asList(lf, lr, rr, rf);
+        // the drive motors first, for setPowers
+        output = new MotorOutputCache(lf, lr, rr, rf, lift);
 
 
         lf.setDirection(DcMotorSimple.Direction.FORWARD);
@@ -221,8 +350,8 @@ public class RealRobot extends MecanumDrive{
 
 
 
-        imu = hardwareMap.get(BHI260IMU.class, "imu");
-        imu.initialize(new BHI260IMU.Parameters(new RevHubOrientationOnRobot(RevHubOrientationOnRobot.LogoFacingDirection.LEFT, RevHubOrientationOnRobot.UsbFacingDirection.UP)));
+        imu = hardwareMap.get(IMU.class, "imu");
+        imu.initialize(new IMU.Parameters(new RevHubOrientationOnRobot(RevHubOrientationOnRobot.LogoFacingDirection.LEFT, RevHubOrientationOnRobot.UsbFacingDirection.UP)));
 //        BNO055IMU.Parameters parameters = new BNO055IMU.Parameters();
 //        parameters.angleUnit = BNO055IMU.AngleUnit.RADIANS;
 //        parameters.accelUnit = BNO055IMU.AccelUnit.METERS_PERSEC_PERSEC;
@@ -231,7 +360,20 @@ public class RealRobot extends MecanumDrive{
 //        parameters.loggingTag = "IMU";
 //        parameters.accelerationIntegrationAlgorithm = new JustLoggingAccelerationIntegrator();
 //        imu.initialize(parameters);
-        angles = imu.getRobotOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+
+        imuPoller = simulated ? new ImuPoller(imu, clock) : new ImuPoller(imu);
+        snapshot = new HardwareSnapshot(hardwareMap, voltageService, imuPoller,
+                lf, lr, rr, rf,
+                hardwareMap.get(DcMotorEx.class, "intake"),
+                hardwareMap.get(DcMotorEx.class, "lift"),
+                hardwareMap.get(DcMotorEx.class, "hookSp"));
+        snapshot.setProfiling(!simulated);
+        snapshot.setOutputCache(output);
+        snapshot.update();
+
+        if (HeadingFusionLocalizer.ENABLED) {
+            setLocalizer(new HeadingFusionLocalizer(getLocalizer(), imuPoller, clock));
+        }
         //zeroPosition = slide.getCurrentPosition();
     }
 //start of rr function
@@ -295,15 +437,49 @@ public class RealRobot extends MecanumDrive{
         return trajectorySequenceRunner.getLastPoseError();
     }
 
+    /**
+     * Reads the encoders into the snapshot and refreshes the hubs' bulk caches. The wheel
+     * positions and velocities the localizer sees only change after this runs, so op modes that
+     * call {@link #updatePoseEstimate()} themselves instead of {@link #update()} must call this
+     * first.
+     */
+    public void updateEncoders() {
+        snapshot.updateEncoders();
+        // from the snapshot, as the tracking wheel localizers never ask for the drive wheels
+        for (int i = 0; i < lastEncPositions.length; i++) {
+            lastEncPositions[i] = snapshot.positions[i];
+            lastEncVels[i] = (int) snapshot.velocities[i];
+        }
+    }
+
     public void update() {
+        updateEncoders();
+
+        // the profiler is global and single threaded; simulations may run on any number of threads
+        long span = simulated ? 0 : LoopProfiler.start();
         updatePoseEstimate();
+        LoopProfiler.end(LoopProfiler.LOCALIZER, span);
+
+        span = simulated ? 0 : LoopProfiler.start();
         DriveSignal signal = trajectorySequenceRunner.update(getPoseEstimate(), getPoseVelocity());
-        if (signal != null) setDriveSignal(signal);
+        if (signal != null) setDriveSignal(signal, trajectorySequenceRunner.getVoltageScale());
+        LoopProfiler.end(LoopProfiler.FOLLOWER, span);
+        scheduler.run();
+
+        // a PIDF write is a hub transaction per motor, so it's only redone once the voltage has
+        // drifted; the feedforward scale above is free and follows the filtered voltage directly
+        if (pidfCoefficients != null && voltageService.needsCompensation()) {
+            setPIDFCoefficients(pidfRunMode, pidfCoefficients);
+        }
     }
 
     public void waitForIdle() {
-        while (!Thread.currentThread().isInterrupted() && isBusy())
+        loopScheduler.reset();
+        while (!Thread.currentThread().isInterrupted() && isBusy()) {
             update();
+            loopScheduler.awaitNextTick();
+        }
+        loopScheduler.publish();
     }
 
     public boolean isBusy() {
@@ -312,7 +488,7 @@ public class RealRobot extends MecanumDrive{
 
     public void setMode(DcMotor.RunMode runMode) {
         for (DcMotorEx motor : motors) {
-            motor.setMode(runMode);
+            output.setMode(motor, runMode);
         }
     }
     public void setZeroPowerBehavior(DcMotor.ZeroPowerBehavior zeroPowerBehavior) {
@@ -321,10 +497,17 @@ public class RealRobot extends MecanumDrive{
         }
     }
     public void setPIDFCoefficients(DcMotor.RunMode runMode, PIDFCoefficients coefficients) {
+        pidfRunMode = runMode;
+        pidfCoefficients = coefficients;
+
+        double voltage = voltageService.compensate();
         PIDFCoefficients compensatedCoefficients = new PIDFCoefficients(
                 coefficients.p, coefficients.i, coefficients.d,
-                coefficients.f * 12 / batteryVoltageSensor.getVoltage()
+                coefficients.f * VoltageService.NOMINAL_VOLTAGE / voltage
         );
+        if (!simulated) {
+            LogFiles.recordVoltageCompensation(voltage, compensatedCoefficients.f);
+        }
 
         for (DcMotorEx motor : motors) {
             motor.setPIDFCoefficients(runMode, compensatedCoefficients);
@@ -355,46 +538,65 @@ public class RealRobot extends MecanumDrive{
     @NonNull
     @Override
     public List<Double> getWheelPositions() {
-        lastEncPositions.clear();
-
         List<Double> wheelPositions = new ArrayList<>();
-        for (DcMotorEx motor : motors) {
-            int position = motor.getCurrentPosition();
-            lastEncPositions.add(position);
-            wheelPositions.add(encoderTicksToInches(position));
+        for (int i = 0; i < motors.size(); i++) {
+            wheelPositions.add(encoderTicksToInches(snapshot.positions[i]));
         }
         return wheelPositions;
     }
 
     @Override
     public List<Double> getWheelVelocities() {
-        lastEncVels.clear();
-
         List<Double> wheelVelocities = new ArrayList<>();
-        for (DcMotorEx motor : motors) {
-            int vel = (int) motor.getVelocity();
-            lastEncVels.add(vel);
-            wheelVelocities.add(encoderTicksToInches(vel));
+        for (int i = 0; i < motors.size(); i++) {
+            wheelVelocities.add(encoderTicksToInches((int) snapshot.velocities[i]));
         }
         return wheelVelocities;
     }
 
+    /**
+     * MecanumDrive.setDriveSignal with the velocity and acceleration feedforward scaled by
+     * {@code voltageScale}, done on primitives so the follow loop doesn't allocate wheel lists.
+     */
+    private void setDriveSignal(DriveSignal signal, double voltageScale) {
+        Pose2d vel = signal.getVel();
+        Pose2d accel = signal.getAccel();
+        double m = lateralMultiplier, k = driveK;
+        setMotorPowers(
+                feedforward(vel.getX() - m * vel.getY() - k * vel.getHeading(),
+                        accel.getX() - m * accel.getY() - k * accel.getHeading(), voltageScale),
+                feedforward(vel.getX() + m * vel.getY() - k * vel.getHeading(),
+                        accel.getX() + m * accel.getY() - k * accel.getHeading(), voltageScale),
+                feedforward(vel.getX() - m * vel.getY() + k * vel.getHeading(),
+                        accel.getX() - m * accel.getY() + k * accel.getHeading(), voltageScale),
+                feedforward(vel.getX() + m * vel.getY() + k * vel.getHeading(),
+                        accel.getX() + m * accel.getY() + k * accel.getHeading(), voltageScale)
+        );
+    }
+
+    private double feedforward(double vel, double accel, double voltageScale) {
+        double basePower = voltageScale * (vel * driveKV + accel * driveKA);
+        // Kinematics.calculateMotorFeedforward's epsilon
+        if (Math.abs(basePower) < 1e-6) {
+            return 0;
+        }
+        return basePower + Math.copySign(driveKStatic, basePower);
+    }
+
     @Override
     public void setMotorPowers(double v, double v1, double v2, double v3) {
-        lf.setPower(v);
-        lr.setPower(v1);
-        rr.setPower(v2);
-        rf.setPower(v3);
+        output.setPowers(v, v1, v2, v3);
     }
 
     @Override
     public double getRawExternalHeading() {
-        return 0;
+        return imuPoller.getHeading();
     }
 
     @Override
     public Double getExternalHeadingVelocity() {
-        return 0.0;
+        // sampled by the poller alongside the heading, so this doesn't wait on the bus either
+        return imuPoller.getHeadingVelocity();
     }
 
     public static TrajectoryVelocityConstraint getVelocityConstraint(double maxVel, double maxAngularVel, double trackWidth) {
@@ -412,7 +614,7 @@ public class RealRobot extends MecanumDrive{
 
     public void setMotorMode(DcMotor.RunMode mode, DcMotorEx... motors) {
         for (DcMotorEx motor : motors) {
-            motor.setMode(mode);
+            output.setMode(motor, mode);
         }
     }
 
@@ -442,10 +644,11 @@ public class RealRobot extends MecanumDrive{
      * <p>
      * Call this either in your OpMode::loop function or in your while(opModeIsActive())
      * loops in your autonomous. It refresh gyro and other values that are computationally
-     * expensive.
+     * expensive. Hubs use manual bulk caching, so encoder reads only change after this (or
+     * {@link #update()}) runs.
      */
     public void loop() {
-        angles = imu.getRobotOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS);
+        snapshot.update();
 //        gravity = imu.getGravity();
     }
 
@@ -453,7 +656,7 @@ public class RealRobot extends MecanumDrive{
      * @return the raw heading along the desired axis
      */
     private double getRawHeading() {
-        return angles.firstAngle;
+        return imuPoller.getHeading();
     }
 
     /**
@@ -505,36 +708,30 @@ public class RealRobot extends MecanumDrive{
 
     public void setMotors(double _lf, double _lr, double _rf, double _rr) {
         final double scale = maxAbs(1.0, _lf, _lr, _rf, _rr);
-        lf.setPower(_lf / scale);
-        lr.setPower(_lr / scale);
-        rf.setPower(_rf / scale);
-        rr.setPower(_rr / scale);
+        output.setPowers(_lf / scale, _lr / scale, _rr / scale, _rf / scale);
     }
 
     public void driveInches(double speed, double inches){
-        lf.setPower(speed);
-        lr.setPower(speed);
-        rf.setPower(speed);
-        rr.setPower(speed);
+        output.setPower(lf, speed);
+        output.setPower(lr, speed);
+        output.setPower(rf, speed);
+        output.setPower(rr, speed);
 
         lf.setTargetPosition((int) (inches * COUNTS_PER_INCH));
         lr.setTargetPosition((int) (inches * COUNTS_PER_INCH));
         rf.setTargetPosition((int) (inches * COUNTS_PER_INCH));
         rr.setTargetPosition((int) (inches * COUNTS_PER_INCH));
 
-        lf.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        lr.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        rf.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        rr.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+        output.setMode(lf, DcMotor.RunMode.RUN_TO_POSITION);
+        output.setMode(lr, DcMotor.RunMode.RUN_TO_POSITION);
+        output.setMode(rf, DcMotor.RunMode.RUN_TO_POSITION);
+        output.setMode(rr, DcMotor.RunMode.RUN_TO_POSITION);
 
     }
 
 
     public void stopRobot(){
-        lf.setPower(0);
-        rf.setPower(0);
-        lr.setPower(0);
-        rr.setPower(0);
+        output.setPowers(0, 0, 0, 0);
     }
 
     public void drive(double speed) {
@@ -594,6 +791,118 @@ public class RealRobot extends MecanumDrive{
 
     }
 
+    /**
+     * Runs a command to completion on the calling thread through {@link #scheduler}: ticks
+     * {@link #update()} and paces the loop with {@link #loopScheduler}. Commands that were already
+     * scheduled keep running alongside it. Telemetry goes through a {@link TelemetryAggregator},
+     * so it's only evaluated and sent at its interval; simulated, there's none, as the interval is
+     * in wall time.
+     */
+    public void runCommand(Command command) {
+        scheduler.schedule(command);
+        loopScheduler.reset();
+        TelemetryAggregator status = simulated || telemetry == null ? null : new TelemetryAggregator(telemetry)
+                .add("Path", () -> command)
+                .add("Heading", "%.1f", this::getHeadingDegrees);
+        try {
+            while (!Thread.currentThread().isInterrupted() && scheduler.isScheduled(command)) {
+                update();
+                if (status != null) {
+                    status.update();
+                }
+                loopScheduler.awaitNextTick();
+            }
+        } finally {
+            // no-op if it finished
+            scheduler.cancel(command);
+            loopScheduler.publish();
+        }
+        if (telemetry != null) {
+            telemetry.addData("Path", "Complete");
+            telemetry.update();
+        }
+    }
+
+    /**
+     * Non-blocking {@link #followTrajectorySequence}; cancelling it stops following.
+     */
+    public Command followTrajectorySequenceCommand(TrajectorySequence trajectorySequence) {
+        return new Command() {
+            @Override
+            public void start() {
+                followTrajectorySequenceAsync(trajectorySequence);
+            }
+
+            @Override
+            public void update() {
+                // the runner itself is ticked by RealRobot.update()
+            }
+
+            @Override
+            public boolean isFinished() {
+                return !isBusy();
+            }
+
+            @Override
+            public void end(boolean interrupted) {
+                if (interrupted) {
+                    trajectorySequenceRunner.breakFollowing();
+                    setDriveSignal(new DriveSignal());
+                }
+            }
+
+            @Override
+            public Set<Subsystem> getRequirements() {
+                return driveRequirements;
+            }
+
+            @Override
+            public String getName() {
+                return "TrajectorySequence";
+            }
+        };
+    }
+
+    /**
+     * Runs the lift to an encoder position and finishes when the hub reports it there.
+     */
+    public Command liftToCommand(int position, double power) {
+        return new Command() {
+            @Override
+            public void start() {
+                output.setTargetPosition(lift, position);
+                output.setMode(lift, DcMotor.RunMode.RUN_TO_POSITION);
+                output.setPower(lift, power);
+            }
+
+            @Override
+            public void update() {
+            }
+
+            @Override
+            public boolean isFinished() {
+                return !lift.isBusy();
+            }
+
+            @Override
+            public void end(boolean interrupted) {
+                if (interrupted) {
+                    output.setPower(lift, 0);
+                }
+            }
+
+            @Override
+            public Set<Subsystem> getRequirements() {
+                return liftRequirements;
+            }
+
+            @Override
+            public String getName() {
+                return "LiftTo " + position;
+            }
+        };
+    }
+
     /**
      *
      * @param power // power (Decimal) .0-1.0
@@ -602,87 +911,120 @@ public class RealRobot extends MecanumDrive{
      */
 
     public void encoderDrive(double power, double distance, char direction) {
-        distance *= 3;
-        setMotorZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
-
-        // How many turns do I need the wheels to go [distance] inches?
-
-        // The distance you drive with one turn of the wheel is the circumference of the wheel
-
-        //Re-measure
-        double circumference = ((direction == 'F' || direction == 'B') ? Math.PI*WHEEL_DIAMETER_INCHES : 11.4);
-        double TICKS_PER_INCH = MOTOR_TICK_COUNTS/circumference;
-
-        int eTarget = (int)(TICKS_PER_INCH*distance);
-
-
-
-        ((DcMotorEx)lf).setTargetPositionTolerance(12);
-        ((DcMotorEx)rf).setTargetPositionTolerance(12);
-        ((DcMotorEx)lr).setTargetPositionTolerance(12);
-        ((DcMotorEx)rr).setTargetPositionTolerance(12);
-
-        if(direction == 'R')
-        {
-            lf.setTargetPosition(-eTarget + lf.getCurrentPosition());
-            rf.setTargetPosition(eTarget + rf.getCurrentPosition());
-            lr.setTargetPosition(eTarget + lr.getCurrentPosition());
-            rr.setTargetPosition(-eTarget + rr.getCurrentPosition());
-        }
-        else if (direction == 'L')
-        {
-            lf.setTargetPosition(eTarget + lf.getCurrentPosition());
-            rf.setTargetPosition(-eTarget + rf.getCurrentPosition());
-            lr.setTargetPosition(-eTarget + lr.getCurrentPosition());
-            rr.setTargetPosition(eTarget + rr.getCurrentPosition());
-        }
-        else if (direction == 'B')
-        {
-            lf.setTargetPosition(eTarget + lf.getCurrentPosition());
-            rf.setTargetPosition(eTarget + rf.getCurrentPosition());
-            lr.setTargetPosition(eTarget + lr.getCurrentPosition());
-            rr.setTargetPosition(eTarget + rr.getCurrentPosition());
-        }
-        else if (direction == 'F')
-        {
-            lf.setTargetPosition(-eTarget + lf.getCurrentPosition());
-            rf.setTargetPosition(-eTarget + rf.getCurrentPosition());
-            lr.setTargetPosition(-eTarget + lr.getCurrentPosition());
-            rr.setTargetPosition(-eTarget + rr.getCurrentPosition());
-        }
-
-        //set the power desired for the motors
-        lf.setPower(power*.7*(direction == 'R' || direction == 'F' ? 1.3 : 1));
-        rf.setPower(power*.7*(direction == 'R' || direction == 'F' ? 1.3 : 1));
-        lr.setPower(power*.7);
-        rr.setPower(power*.7);
-
-        // set the motors to RUN_TO_POSITION
-        lf.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        rf.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        lr.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        rr.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-
-//        lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-//        lr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-//        rf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-//        rr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-
-        while(lf.isBusy() || rf.isBusy() || lr.isBusy() || rr.isBusy())
-        {
-            loop();
-            // make sure to not do anything while the motors are running
-            telemetry.addData("Path", "Driving " + distance + " inches");
-            /*telemetry.addData("Slide position:",slide.getCurrentPosition());
-            telemetry.addData("Slide target:",slide.getTargetPosition());*/
-            telemetry.addData("Current position", lf.getCurrentPosition());
-            telemetry.addData("Target position", lf.getTargetPosition());
-            telemetry.addData("Heading", getHeadingDegrees());
+        runCommand(encoderDriveCommand(power, distance, direction));
+    }
 
-            telemetry.update();
+    /**
+     * Non-blocking {@link #encoderDrive}.
+     */
+    public Command encoderDriveCommand(double power, double distance, char direction) {
+        return new EncoderDriveCommand(power, distance, direction);
+    }
+
+    private class EncoderDriveCommand implements Command {
+        private final double power;
+        private final double distance;
+        private final char direction;
+        private boolean finished;
+
+        EncoderDriveCommand(double power, double distance, char direction) {
+            this.power = power;
+            this.distance = distance * 3;
+            this.direction = direction;
+        }
+
+        @Override
+        public void start() {
+            // a command may be scheduled again after it finished
+            finished = false;
+            setMotorZeroPowerBehavior(DcMotor.ZeroPowerBehavior.BRAKE);
+
+            // How many turns do I need the wheels to go [distance] inches?
+
+            // The distance you drive with one turn of the wheel is the circumference of the wheel
+
+            //Re-measure
+            double circumference = ((direction == 'F' || direction == 'B') ? Math.PI*WHEEL_DIAMETER_INCHES : 11.4);
+            double TICKS_PER_INCH = MOTOR_TICK_COUNTS/circumference;
+
+            int eTarget = (int)(TICKS_PER_INCH*distance);
+
+
+
+            ((DcMotorEx)lf).setTargetPositionTolerance(12);
+            ((DcMotorEx)rf).setTargetPositionTolerance(12);
+            ((DcMotorEx)lr).setTargetPositionTolerance(12);
+            ((DcMotorEx)rr).setTargetPositionTolerance(12);
+
+            if(direction == 'R')
+            {
+                lf.setTargetPosition(-eTarget + lf.getCurrentPosition());
+                rf.setTargetPosition(eTarget + rf.getCurrentPosition());
+                lr.setTargetPosition(eTarget + lr.getCurrentPosition());
+                rr.setTargetPosition(-eTarget + rr.getCurrentPosition());
+            }
+            else if (direction == 'L')
+            {
+                lf.setTargetPosition(eTarget + lf.getCurrentPosition());
+                rf.setTargetPosition(-eTarget + rf.getCurrentPosition());
+                lr.setTargetPosition(-eTarget + lr.getCurrentPosition());
+                rr.setTargetPosition(eTarget + rr.getCurrentPosition());
+            }
+            else if (direction == 'B')
+            {
+                lf.setTargetPosition(eTarget + lf.getCurrentPosition());
+                rf.setTargetPosition(eTarget + rf.getCurrentPosition());
+                lr.setTargetPosition(eTarget + lr.getCurrentPosition());
+                rr.setTargetPosition(eTarget + rr.getCurrentPosition());
+            }
+            else if (direction == 'F')
+            {
+                lf.setTargetPosition(-eTarget + lf.getCurrentPosition());
+                rf.setTargetPosition(-eTarget + rf.getCurrentPosition());
+                lr.setTargetPosition(-eTarget + lr.getCurrentPosition());
+                rr.setTargetPosition(-eTarget + rr.getCurrentPosition());
+            }
+
+            //set the power desired for the motors
+            output.setPower(lf, power*.7*(direction == 'R' || direction == 'F' ? 1.3 : 1));
+            output.setPower(rf, power*.7*(direction == 'R' || direction == 'F' ? 1.3 : 1));
+            output.setPower(lr, power*.7);
+            output.setPower(rr, power*.7);
+
+            // set the motors to RUN_TO_POSITION
+            output.setMode(lf, DcMotor.RunMode.RUN_TO_POSITION);
+            output.setMode(rf, DcMotor.RunMode.RUN_TO_POSITION);
+            output.setMode(lr, DcMotor.RunMode.RUN_TO_POSITION);
+            output.setMode(rr, DcMotor.RunMode.RUN_TO_POSITION);
+        }
+
+        @Override
+        public void update() {
+            // served from the bulk cache, which update() refreshed before running the scheduler
+            finished = !(lf.isBusy() || rf.isBusy() || lr.isBusy() || rr.isBusy());
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            if (interrupted) {
+                stopRobot();
+            }
+        }
+
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return driveRequirements;
+        }
+
+        @Override
+        public String toString() {
+            return "Driving " + distance + " inches (" + lf.getCurrentPosition() + " / " + lf.getTargetPosition() + ")";
         }
-        telemetry.addData("Path", "Complete");
-        telemetry.update();
     }
 
     /**
@@ -690,115 +1032,192 @@ public class RealRobot extends MecanumDrive{
      * @param degrees //degrees (-360 to 360) you want to rotate (Positive is clockwise)
      */
     public void encoderRotate(int degrees, double power) {
+        runCommand(encoderRotateCommand(degrees, power));
+    }
 
-        // RESETS ENCODERS
+    /**
+     * Non-blocking {@link #encoderRotate}.
+     */
+    public Command encoderRotateCommand(int degrees, double power) {
+        return new EncoderRotateCommand(degrees, power);
+    }
 
-        // Circumference of the circle made by the robot (19-inch diameter * pi)
-        double rotationLength = 34.5565;
+    private class EncoderRotateCommand implements Command {
+        private final int degrees;
+        private final double power;
+        private boolean finished;
 
-        // Length the wheels would have to travel in order to rotate 1 degree in length (distance / 360)
-        double degreeLength = rotationLength/360.0;
+        EncoderRotateCommand(int degrees, double power) {
+            this.degrees = degrees;
+            this.power = power;
+        }
 
-        double distance = Math.abs(degrees)*degreeLength;
-        // The distance you drive with one turn of the wheel is the circumference of the wheel
-        double circumference = (28/14)*3.14*WHEEL_DIAMETER_INCHES;
+        @Override
+        public void start() {
+            finished = false;
+            // Circumference of the circle made by the robot (19-inch diameter * pi)
+            double rotationLength = 34.5565;
+
+            // Length the wheels would have to travel in order to rotate 1 degree in length (distance / 360)
+            double degreeLength = rotationLength/360.0;
+
+            double distance = Math.abs(degrees)*degreeLength;
+            // The distance you drive with one turn of the wheel is the circumference of the wheel
+            double circumference = (28/14)*3.14*WHEEL_DIAMETER_INCHES;
+
+            double rotationsNeeded = distance/circumference;
+
+            int eTarget = (int)(rotationsNeeded * MOTOR_TICK_COUNTS);
+
+            ((DcMotorEx)lf).setTargetPositionTolerance(12);
+            ((DcMotorEx)rf).setTargetPositionTolerance(12);
+            ((DcMotorEx)lr).setTargetPositionTolerance(12);
+            ((DcMotorEx)rr).setTargetPositionTolerance(12);
+            //Set target position
+            if(degrees > 0)
+            {
+                lf.setTargetPosition(eTarget    + lf.getCurrentPosition());
+                rf.setTargetPosition(eTarget*-1 + rf.getCurrentPosition());
+                lr.setTargetPosition(eTarget    + lr.getCurrentPosition());
+                rr.setTargetPosition(eTarget*-1 + rr.getCurrentPosition());
+            }
+            else if(degrees < 0)
+            {
+                lf.setTargetPosition(eTarget*-1 + lf.getCurrentPosition());
+                rf.setTargetPosition(eTarget    + rf.getCurrentPosition());
+                lr.setTargetPosition(eTarget*-1 + lr.getCurrentPosition());
+                rr.setTargetPosition(eTarget    + rr.getCurrentPosition());
+            }
 
-        double rotationsNeeded = distance/circumference;
+            //set the power desired for the motors
+            output.setPower(lf, power*-1);//power used to be *-0.7
+            output.setPower(rf, power*-1);
+            output.setPower(lr, power*-1);
+            output.setPower(rr, power*-1);
+
+            // set the motors to RUN_TO_POSITION
+            output.setMode(lf, DcMotor.RunMode.RUN_TO_POSITION);
+            output.setMode(rf, DcMotor.RunMode.RUN_TO_POSITION);
+            output.setMode(lr, DcMotor.RunMode.RUN_TO_POSITION);
+            output.setMode(rr, DcMotor.RunMode.RUN_TO_POSITION);
+        }
 
-        int eTarget = (int)(rotationsNeeded * MOTOR_TICK_COUNTS);
+        @Override
+        public void update() {
+            // served from the bulk cache, which update() refreshed before running the scheduler
+            finished = !(lf.isBusy() || rf.isBusy() || lr.isBusy() || rr.isBusy());
+        }
 
-        ((DcMotorEx)lf).setTargetPositionTolerance(12);
-        ((DcMotorEx)rf).setTargetPositionTolerance(12);
-        ((DcMotorEx)lr).setTargetPositionTolerance(12);
-        ((DcMotorEx)rr).setTargetPositionTolerance(12);
-        //Set target position
-        if(degrees > 0)
-        {
-            lf.setTargetPosition(eTarget    + lf.getCurrentPosition());
-            rf.setTargetPosition(eTarget*-1 + rf.getCurrentPosition());
-            lr.setTargetPosition(eTarget    + lr.getCurrentPosition());
-            rr.setTargetPosition(eTarget*-1 + rr.getCurrentPosition());
+        @Override
+        public boolean isFinished() {
+            return finished;
         }
-        else if(degrees < 0)
-        {
-            lf.setTargetPosition(eTarget*-1 + lf.getCurrentPosition());
-            rf.setTargetPosition(eTarget    + rf.getCurrentPosition());
-            lr.setTargetPosition(eTarget*-1 + lr.getCurrentPosition());
-            rr.setTargetPosition(eTarget    + rr.getCurrentPosition());
+
+        @Override
+        public void end(boolean interrupted) {
+            if (interrupted) {
+                stopRobot();
+            }
         }
 
-        //set the power desired for the motors
-        lf.setPower(power*-1);//power used to be *-0.7
-        rf.setPower(power*-1);
-        lr.setPower(power*-1);
-        rr.setPower(power*-1);
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return driveRequirements;
+        }
 
-//        lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-//        lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-//        lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        @Override
+        public String toString() {
+            return "Rotating " + degrees + " degrees (" + lf.getCurrentPosition() + " / " + lf.getTargetPosition() + ")";
+        }
+    }
 
-        // set the motors to RUN_TO_POSITION
-        lf.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        rf.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        lr.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        rr.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+    public void rotateToHeading(int degrees, double power){
+        runCommand(rotateToHeadingCommand(degrees, power));
+    }
 
-//        while(lf.isBusy() || rf.isBusy() || lr.isBusy() || rr.isBusy())
-//        {
-//            loop();
-//            // make sure to not do anything while the motors are running
-//            telemetry.addData("Path", "Driving " + distance + " inches");
-//            telemetry.addData("Heading", getHeadingDegrees());
-//            telemetry.update();
-//        }
+    /**
+     * Non-blocking {@link #rotateToHeading}: an {@link #encoderRotate} by the heading error, then
+     * 10 degree steps until the heading is within 3 degrees. As in the blocking original, the
+     * first check uses the heading read before the first rotation, and the heading is only read
+     * again after each step.
+     */
+    public Command rotateToHeadingCommand(int degrees, double power) {
+        return new RotateToHeadingCommand(degrees, power);
+    }
 
+    private class RotateToHeadingCommand implements Command {
+        private final int degrees;
+        private final double power;
+        private Command rotation;
+        private boolean finished;
+        // the heading the next check is made against, and whether a 10 degree step has run yet
+        private int head;
+        private boolean stepped;
+
+        RotateToHeadingCommand(int degrees, double power) {
+            this.degrees = degrees;
+            this.power = power;
+        }
 
+        @Override
+        public void start() {
+            finished = false;
+            stepped = false;
+            head = (int)getHeadingDegrees();
+            int diff=head-degrees;
+            rotation = new EncoderRotateCommand(-diff, power);
+            rotation.start();
+        }
 
-//        lf.setPower(0);
-//        rf.setPower(0);
-//        lr.setPower(0);
-//        rr.setPower(0);
+        @Override
+        public void update() {
+            rotation.update();
+            if (!rotation.isFinished()) {
+                return;
+            }
+            rotation.end(false);
 
-        while(lf.isBusy() || rf.isBusy() || lr.isBusy() || rr.isBusy())
-        {
-            loop();
-            // make sure to not do anything while the motors are running
-            telemetry.addData("Path", "Driving " + distance + " inches");
-            /*telemetry.addData("Slide position:",slide.getCurrentPosition());
-            telemetry.addData("Slide target:",slide.getTargetPosition());*/
-            telemetry.addData("Current position", lf.getCurrentPosition());
-            telemetry.addData("Target position", lf.getTargetPosition());
-            telemetry.addData("Heading", getHeadingDegrees());
+            if (stepped) {
+                head = (int)getHeadingDegrees();
+            }
+            if (head>degrees-3&&head<degrees+3) {
+                finished = true;
+            } else {
+                rotation = new EncoderRotateCommand(-10, power);
+                rotation.start();
+                stepped = true;
+            }
+        }
 
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
 
+        @Override
+        public void end(boolean interrupted) {
+            if (interrupted) {
+                rotation.end(true);
+            }
+        }
 
-            telemetry.update();
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return driveRequirements;
         }
-        telemetry.addData("Path", "Complete");
-        //telemetry.addData("Heading: ", getHeadingDegrees());
-        telemetry.update();
-    }
 
-    public void rotateToHeading(int degrees, double power){
-        int head = (int)getHeadingDegrees();
-        int diff=head-degrees;
-        encoderRotate(-diff, power);
-        loop();
-        telemetry.addData("Heading: ", getHeadingDegrees());
-        while(!(head>degrees-3&&head<degrees+3)){
-            encoderRotate(-10, power);
-            head = (int)getHeadingDegrees();
-            loop();
-            telemetry.addData("Heading: ", getHeadingDegrees());
+        @Override
+        public String toString() {
+            return "Rotating to " + degrees + " degrees";
         }
     }
 
     public void mecanumEncoders()
     {
-        lf.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-        lr.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-        rf.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-        rr.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        output.setMode(lf, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        output.setMode(lr, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        output.setMode(rf, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        output.setMode(rr, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
     }
 
     public void sleep(int millis)
@@ -814,59 +1233,81 @@ public class RealRobot extends MecanumDrive{
      */
     public void rotate(double degrees, double power)
     {
-        //double endHeading = getHeadingDegrees()+degrees;
-        double endHeading = degrees - getHeadingDegrees();
-        if(endHeading<-180)
-            endHeading+=360;
-        else if(endHeading>180)
-            endHeading-=360;
-        if(degrees > 0)
-        {
-            lf.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-            lr.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-            rf.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-            rr.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-
-            lf.setPower(-power);
-            lr.setPower(-power);
-            rf.setPower(power);
-            rr.setPower(power);
-            do {
-                loop();
-                telemetry.addData("Heading", getHeadingDegrees());
-                telemetry.addData("Absolute", Math.abs(degrees-getHeadingDegrees()));
-                telemetry.addData("Degrees", degrees);
-                telemetry.update();
-
-            } while(Math.abs(getHeadingDegrees()-endHeading) > 4);
-            lf.setPower(0);
-            lr.setPower(0);
-            rf.setPower(0);
-            rr.setPower(0);
-        }
-        else if(degrees < 0)
-        {
-            lf.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-            lr.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-            rf.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-            rr.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
-
-            lf.setPower(power);
-            lr.setPower(power);
-            rf.setPower(-power);
-            rr.setPower(-power);
-            do {
-                loop();
-                telemetry.addData("Heading", getHeadingDegrees());
-                telemetry.addData("Absolute", Math.abs(degrees-getHeadingDegrees()));
-                telemetry.addData("Degrees", degrees);
-                telemetry.update();
-
-            }while(Math.abs(getHeadingDegrees()-endHeading) > 4);
-            lf.setPower(0);
-            lr.setPower(0);
-            rf.setPower(0);
-            rr.setPower(0);
+        runCommand(rotateCommand(degrees, power));
+    }
+
+    /**
+     * Non-blocking {@link #rotate}.
+     */
+    public Command rotateCommand(double degrees, double power) {
+        return new RotateCommand(degrees, power);
+    }
+
+    private class RotateCommand implements Command {
+        private final double degrees;
+        private final double power;
+        private double endHeading;
+        private boolean finished;
+
+        RotateCommand(double degrees, double power) {
+            this.degrees = degrees;
+            this.power = power;
+        }
+
+        @Override
+        public void start() {
+            finished = false;
+            //double endHeading = getHeadingDegrees()+degrees;
+            endHeading = degrees - getHeadingDegrees();
+            if(endHeading<-180)
+                endHeading+=360;
+            else if(endHeading>180)
+                endHeading-=360;
+
+            if (degrees == 0) {
+                finished = true;
+                return;
+            }
+
+            output.setMode(lf, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+            output.setMode(lr, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+            output.setMode(rf, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+            output.setMode(rr, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+
+            double sign = degrees > 0 ? 1 : -1;
+            output.setPower(lf, -sign * power);
+            output.setPower(lr, -sign * power);
+            output.setPower(rf, sign * power);
+            output.setPower(rr, sign * power);
+        }
+
+        @Override
+        public void update() {
+            if (!finished) {
+                finished = Math.abs(getHeadingDegrees()-endHeading) <= 4;
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            if (degrees != 0) {
+                stopRobot();
+            }
+        }
+
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return driveRequirements;
+        }
+
+        @Override
+        public String toString() {
+            return "Rotating to " + degrees + " degrees";
         }
     }
 
@@ -878,81 +1319,98 @@ public class RealRobot extends MecanumDrive{
 
     public void rotateTo(double degrees, double power)
     {
-        double currHeading = convertHeading(getHeadingDegrees());
-        //double endHeading = getHeadingDegrees()+degrees;
-        double endHeading = convertHeading(degrees);
-
-        double diff = convertHeading(endHeading - currHeading);
-        if(diff > 0)
-        {
-            lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-            lr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-            rf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-            rr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-
-            lf.setPower(0.25);
-            lr.setPower(0.25);
-            rf.setPower(-0.25);
-            rr.setPower(-0.25);
-            do {
-                loop();
-
-                double newPow = Math.abs(currHeading-convertHeading(degrees)) / 300.0;
-                lf.setPower(newPow);
-                lr.setPower(newPow);
-                rf.setPower(-newPow);
-                rr.setPower(-newPow);
-                currHeading = convertHeading(getHeadingDegrees());
-                telemetry.addData("Heading", getHeadingDegrees());
-                telemetry.addData("Absolute", Math.abs(degrees));
-                telemetry.addData("Degrees", diff);
-                telemetry.update();
-
-            } while(Math.abs(currHeading-convertHeading(degrees)) > 4);
-            lf.setPower(0);
-            lr.setPower(0);
-            rf.setPower(0);
-            rr.setPower(0);
-        }
-        else if(diff < 0)
-        {
-            lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-            lr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-            rf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-            rr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-
-            lf.setPower(-0.25);
-            lr.setPower(-0.25);
-            rf.setPower(0.25);
-            rr.setPower(0.25);
-            do {
-                loop();
-
-                double newPow = Math.abs(currHeading-convertHeading(degrees)) / 400.0;
-                lf.setPower(-newPow);
-                lr.setPower(-newPow);
-                rf.setPower(newPow);
-                rr.setPower(newPow);
-                currHeading = convertHeading(getHeadingDegrees());
-                telemetry.addData("Heading", getHeadingDegrees());
-                telemetry.addData("Absolute", Math.abs(degrees));
-                telemetry.addData("Degrees", diff);
-                telemetry.update();
-
-            }while(Math.abs(currHeading-convertHeading(degrees)) > 4);
-            lf.setPower(0);
-            lr.setPower(0);
-            rf.setPower(0);
-            rr.setPower(0);
+        runCommand(rotateToCommand(degrees, power));
+    }
+
+    /**
+     * Non-blocking {@link #rotateTo}. Slows down in proportion to the remaining heading error.
+     */
+    public Command rotateToCommand(double degrees, double power) {
+        return new RotateToCommand(degrees);
+    }
+
+    private class RotateToCommand implements Command {
+        private final double degrees;
+        private double sign;
+        private boolean finished;
+
+        RotateToCommand(double degrees) {
+            this.degrees = degrees;
+        }
+
+        @Override
+        public void start() {
+            finished = false;
+            sign = 0;
+            double currHeading = convertHeading(getHeadingDegrees());
+            //double endHeading = getHeadingDegrees()+degrees;
+            double endHeading = convertHeading(degrees);
+
+            double diff = convertHeading(endHeading - currHeading);
+            if (diff == 0) {
+                finished = true;
+                return;
+            }
+            sign = diff > 0 ? 1 : -1;
+
+            output.setMode(lf, DcMotor.RunMode.RUN_USING_ENCODER);
+            output.setMode(lr, DcMotor.RunMode.RUN_USING_ENCODER);
+            output.setMode(rf, DcMotor.RunMode.RUN_USING_ENCODER);
+            output.setMode(rr, DcMotor.RunMode.RUN_USING_ENCODER);
+
+            output.setPower(lf, sign * 0.25);
+            output.setPower(lr, sign * 0.25);
+            output.setPower(rf, -sign * 0.25);
+            output.setPower(rr, -sign * 0.25);
+        }
+
+        @Override
+        public void update() {
+            if (finished) {
+                return;
+            }
+            double error = Math.abs(convertHeading(getHeadingDegrees())-convertHeading(degrees));
+            if (error <= 4) {
+                finished = true;
+                return;
+            }
+
+            double newPow = error / (sign > 0 ? 300.0 : 400.0);
+            output.setPower(lf, sign * newPow);
+            output.setPower(lr, sign * newPow);
+            output.setPower(rf, -sign * newPow);
+            output.setPower(rr, -sign * newPow);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            if (sign != 0) {
+                stopRobot();
+            }
+        }
+
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return driveRequirements;
+        }
+
+        @Override
+        public String toString() {
+            return "Rotating to " + degrees + " degrees";
         }
     }
 
     public void useEncoders()
     {
-        lf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-        lr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-        rf.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
-        rr.setMode(DcMotor.RunMode.RUN_USING_ENCODER);
+        output.setMode(lf, DcMotor.RunMode.RUN_USING_ENCODER);
+        output.setMode(lr, DcMotor.RunMode.RUN_USING_ENCODER);
+        output.setMode(rf, DcMotor.RunMode.RUN_USING_ENCODER);
+        output.setMode(rr, DcMotor.RunMode.RUN_USING_ENCODER);
     }
 
 
@@ -0,0 +1,43 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A robot action that runs over many loop iterations without blocking the thread that ticks it.
+ * <p>
+ * {@link #start()} is called once, then {@link #update()} once per loop iteration after the
+ * encoders have been refreshed (by {@code RealRobot.update()}, which runs the scheduler), until
+ * {@link #isFinished()} returns true. A command may be scheduled again after it ended, so
+ * {@link #start()} resets whatever {@link #isFinished()} depends on. {@link #end(boolean)} is called exactly once afterwards, also when the command is
+ * cancelled before it finished. Several commands can be ticked from the same loop as long as they
+ * don't drive the same motors; {@link CommandScheduler} enforces that through
+ * {@link #getRequirements()}.
+ */
+public interface Command {
+    void start();
+
+    void update();
+
+    boolean isFinished();
+
+    /**
+     * @param interrupted whether the command was stopped before {@link #isFinished()} returned true
+     */
+    default void end(boolean interrupted) {
+    }
+
+    /**
+     * @return subsystems this command drives; scheduling it cancels any other command using them
+     */
+    default Set<Subsystem> getRequirements() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return name shown in the timing telemetry
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+}
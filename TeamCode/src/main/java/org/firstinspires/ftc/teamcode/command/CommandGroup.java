@@ -0,0 +1,69 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Common bookkeeping for commands made of other commands: the members' combined requirements and
+ * recording each member in the scheduler's {@link CommandTimeline}.
+ */
+public abstract class CommandGroup implements Command {
+    protected final Command[] commands;
+    private final int[] ids;
+    private final Set<Subsystem> requirements;
+
+    private CommandTimeline timeline;
+    private int depth;
+
+    protected CommandGroup(Command... commands) {
+        this.commands = commands;
+        ids = new int[commands.length];
+
+        Set<Subsystem> union = new HashSet<>();
+        for (Command command : commands) {
+            union.addAll(command.getRequirements());
+        }
+        requirements = Collections.unmodifiableSet(union);
+    }
+
+    /**
+     * Called by the scheduler before {@link #start()}, so members show up in its timeline.
+     */
+    void attach(CommandTimeline timeline, int depth) {
+        this.timeline = timeline;
+        this.depth = depth;
+        for (Command command : commands) {
+            if (command instanceof CommandGroup) {
+                ((CommandGroup) command).attach(timeline, depth + 1);
+            }
+        }
+    }
+
+    protected void startMember(int i) {
+        ids[i] = timeline == null ? -1 : timeline.begin(commands[i], depth);
+        commands[i].start();
+    }
+
+    protected void updateMember(int i) {
+        if (timeline == null) {
+            commands[i].update();
+            return;
+        }
+        long start = timeline.nanoTime();
+        commands[i].update();
+        timeline.addUpdateNanos(ids[i], timeline.nanoTime() - start);
+    }
+
+    protected void endMember(int i, boolean interrupted) {
+        commands[i].end(interrupted);
+        if (timeline != null) {
+            timeline.end(ids[i], interrupted);
+        }
+    }
+
+    @Override
+    public Set<Subsystem> getRequirements() {
+        return requirements;
+    }
+}
@@ -0,0 +1,179 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs any number of {@link Command}s on the op mode thread, one {@link #run()} per loop iteration
+ * ({@code RealRobot.update()} calls it).
+ * <p>
+ * Each subsystem is owned by at most one command: scheduling a command cancels the commands that
+ * currently hold any of its requirements. Commands scheduled or cancelled from inside another
+ * command's update are applied once the current pass is over. Every command, including the members
+ * of groups, is recorded in {@link #timeline}.
+ */
+public class CommandScheduler {
+    private static class Entry {
+        final Command command;
+        final int id;
+
+        Entry(Command command, int id) {
+            this.command = command;
+            this.id = id;
+        }
+    }
+
+    public final CommandTimeline timeline;
+
+    private final List<Entry> scheduled = new ArrayList<>();
+    private final Map<Subsystem, Command> owners = new HashMap<>();
+
+    private boolean running;
+    private final List<Command> toSchedule = new ArrayList<>();
+    private final List<Command> toCancel = new ArrayList<>();
+
+    public CommandScheduler() {
+        this(NanoClock.system());
+    }
+
+    /**
+     * @param clock time base of the {@link #timeline}, e.g. {@code RealRobot.clock}
+     */
+    public CommandScheduler(NanoClock clock) {
+        timeline = new CommandTimeline(clock);
+    }
+
+    /**
+     * Starts a command. It is first updated on the next {@link #run()}; a command that is finished
+     * right after starting ends immediately.
+     */
+    public void schedule(Command command) {
+        if (running) {
+            toSchedule.add(command);
+            return;
+        }
+        if (isScheduled(command)) {
+            return;
+        }
+
+        for (Subsystem subsystem : command.getRequirements()) {
+            Command owner = owners.get(subsystem);
+            if (owner != null) {
+                cancel(owner);
+            }
+        }
+        for (Subsystem subsystem : command.getRequirements()) {
+            owners.put(subsystem, command);
+        }
+
+        if (command instanceof CommandGroup) {
+            ((CommandGroup) command).attach(timeline, 1);
+        }
+        Entry entry = new Entry(command, timeline.begin(command, 0));
+        command.start();
+
+        if (command.isFinished()) {
+            finish(entry, false);
+        } else {
+            scheduled.add(entry);
+        }
+    }
+
+    /**
+     * Updates every scheduled command once and ends the ones that finished.
+     */
+    public void run() {
+        running = true;
+        try {
+            for (int i = 0; i < scheduled.size(); i++) {
+                Entry entry = scheduled.get(i);
+
+                long start = timeline.nanoTime();
+                entry.command.update();
+                timeline.addUpdateNanos(entry.id, timeline.nanoTime() - start);
+
+                if (entry.command.isFinished()) {
+                    scheduled.remove(i--);
+                    finish(entry, false);
+                }
+            }
+        } finally {
+            running = false;
+        }
+
+        for (int i = 0; i < toCancel.size(); i++) {
+            cancel(toCancel.get(i));
+        }
+        toCancel.clear();
+        for (int i = 0; i < toSchedule.size(); i++) {
+            schedule(toSchedule.get(i));
+        }
+        toSchedule.clear();
+    }
+
+    public void cancel(Command command) {
+        if (running) {
+            toCancel.add(command);
+            return;
+        }
+        for (int i = 0; i < scheduled.size(); i++) {
+            Entry entry = scheduled.get(i);
+            if (entry.command == command) {
+                scheduled.remove(i);
+                finish(entry, true);
+                return;
+            }
+        }
+    }
+
+    public void cancelAll() {
+        while (!scheduled.isEmpty()) {
+            cancel(scheduled.get(scheduled.size() - 1).command);
+        }
+    }
+
+    private void finish(Entry entry, boolean interrupted) {
+        entry.command.end(interrupted);
+        timeline.end(entry.id, interrupted);
+        for (Subsystem subsystem : entry.command.getRequirements()) {
+            if (owners.get(subsystem) == entry.command) {
+                owners.remove(subsystem);
+            }
+        }
+    }
+
+    public boolean isScheduled(Command command) {
+        for (int i = 0; i < scheduled.size(); i++) {
+            if (scheduled.get(i).command == command) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isIdle() {
+        return scheduled.isEmpty();
+    }
+
+    /**
+     * @return a marker callback that schedules {@code command}, to start mechanisms partway along
+     * a trajectory sequence
+     */
+    public MarkerCallback scheduling(Command command) {
+        return () -> schedule(command);
+    }
+
+    /**
+     * Adds the timing of the recorded commands to the telemetry.
+     */
+    public void report(Telemetry telemetry) {
+        timeline.report(telemetry);
+    }
+}
@@ -0,0 +1,132 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.Locale;
+
+/**
+ * When each command run by a {@link CommandScheduler} started and finished, including the members
+ * of groups, and how much loop time its updates took, so it's visible where autonomous time goes.
+ * <p>
+ * The last {@link #CAPACITY} entries are kept in preallocated arrays. Entries are addressed by a
+ * running id, so a long running command whose slot has been reused just stops being recorded.
+ * Times are read from a {@link NanoClock}, so a simulated robot's timeline is in simulated time.
+ */
+public class CommandTimeline {
+    public static final int CAPACITY = 64;
+    private static final int REPORT_LINES = 12;
+
+    private final String[] names = new String[CAPACITY];
+    private final int[] depths = new int[CAPACITY];
+    private final long[] startNanos = new long[CAPACITY];
+    private final long[] endNanos = new long[CAPACITY];
+    private final long[] updateNanos = new long[CAPACITY];
+    private final boolean[] ended = new boolean[CAPACITY];
+    private final boolean[] interrupted = new boolean[CAPACITY];
+
+    private final NanoClock clock;
+    private int count;
+    private long originNanos;
+
+    public CommandTimeline() {
+        this(NanoClock.system());
+    }
+
+    public CommandTimeline(NanoClock clock) {
+        this.clock = clock;
+        clear();
+    }
+
+    /**
+     * @return the current time on this timeline's clock, for measuring update times
+     */
+    long nanoTime() {
+        return (long) (clock.seconds() * 1e9);
+    }
+
+    /**
+     * Forgets every entry and measures start times from now.
+     */
+    public void clear() {
+        count = 0;
+        originNanos = nanoTime();
+    }
+
+    /**
+     * @return id to pass to {@link #addUpdateNanos} and {@link #end}
+     */
+    public int begin(Command command, int depth) {
+        int id = count++;
+        int i = id % CAPACITY;
+        names[i] = command.getName();
+        depths[i] = depth;
+        startNanos[i] = nanoTime();
+        endNanos[i] = 0;
+        updateNanos[i] = 0;
+        ended[i] = false;
+        interrupted[i] = false;
+        return id;
+    }
+
+    private boolean isLive(int id) {
+        return id >= 0 && id < count && id >= count - CAPACITY;
+    }
+
+    public void addUpdateNanos(int id, long nanos) {
+        if (isLive(id)) {
+            updateNanos[id % CAPACITY] += nanos;
+        }
+    }
+
+    public void end(int id, boolean wasInterrupted) {
+        if (isLive(id)) {
+            int i = id % CAPACITY;
+            endNanos[i] = nanoTime();
+            ended[i] = true;
+            interrupted[i] = wasInterrupted;
+        }
+    }
+
+    /**
+     * Adds one line for each of the most recent commands, oldest first: start time, duration and
+     * update time.
+     */
+    public void report(Telemetry telemetry) {
+        int first = Math.max(0, count - REPORT_LINES);
+        for (int id = first; id < count; id++) {
+            telemetry.addLine(format(id));
+        }
+    }
+
+    private String format(int id) {
+        int i = id % CAPACITY;
+        boolean running = !ended[i];
+        long end = running ? nanoTime() : endNanos[i];
+
+        StringBuilder sb = new StringBuilder();
+        for (int d = 0; d < depths[i]; d++) {
+            sb.append("  ");
+        }
+        sb.append(names[i]);
+        sb.append(String.format(Locale.US, " @%.2fs %.2fs (update %.1fms)",
+                (startNanos[i] - originNanos) / 1e9, (end - startNanos[i]) / 1e9, updateNanos[i] / 1e6));
+        if (running) {
+            sb.append(" running");
+        } else if (interrupted[i]) {
+            sb.append(" interrupted");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        int first = Math.max(0, count - CAPACITY);
+        for (int id = first; id < count; id++) {
+            sb.append(format(id)).append('\n');
+        }
+        return sb.toString();
+    }
+}
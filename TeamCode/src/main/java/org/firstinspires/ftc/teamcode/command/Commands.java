@@ -0,0 +1,137 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Factories for groups and small commands, so an autonomous reads as a tree of calls.
+ */
+public class Commands {
+    private Commands() {
+    }
+
+    public static Command sequence(Command... commands) {
+        return new SequentialCommandGroup(commands);
+    }
+
+    public static Command parallel(Command... commands) {
+        return new ParallelCommandGroup(ParallelCommandGroup.Mode.ALL, commands);
+    }
+
+    public static Command race(Command... commands) {
+        return new ParallelCommandGroup(ParallelCommandGroup.Mode.RACE, commands);
+    }
+
+    /**
+     * Runs {@code others} alongside {@code deadline} and interrupts them when it finishes.
+     */
+    public static Command deadline(Command deadline, Command... others) {
+        Command[] commands = new Command[others.length + 1];
+        commands[0] = deadline;
+        System.arraycopy(others, 0, commands, 1, others.length);
+        return new ParallelCommandGroup(ParallelCommandGroup.Mode.DEADLINE, commands);
+    }
+
+    /**
+     * Runs an action once, e.g. moving a servo.
+     */
+    public static Command instant(String name, Runnable action, Subsystem... requirements) {
+        Set<Subsystem> set = requirementSet(requirements);
+        return new Command() {
+            @Override
+            public void start() {
+                action.run();
+            }
+
+            @Override
+            public void update() {
+            }
+
+            @Override
+            public boolean isFinished() {
+                return true;
+            }
+
+            @Override
+            public Set<Subsystem> getRequirements() {
+                return set;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    public static Command waitMillis(double millis) {
+        return waitMillis(millis, NanoClock.system());
+    }
+
+    /**
+     * Waits on {@code clock}, e.g. {@link org.firstinspires.ftc.teamcode.RealRobot#clock}, so the
+     * wait also works in simulated time.
+     */
+    public static Command waitMillis(double millis, NanoClock clock) {
+        return new Command() {
+            private long endNanos;
+
+            @Override
+            public void start() {
+                endNanos = nanoTime(clock) + (long) (millis * 1e6);
+            }
+
+            @Override
+            public void update() {
+            }
+
+            @Override
+            public boolean isFinished() {
+                return nanoTime(clock) - endNanos >= 0;
+            }
+
+            @Override
+            public String getName() {
+                return "Wait " + millis + "ms";
+            }
+        };
+    }
+
+    public static Command waitUntil(String name, BooleanSupplier condition) {
+        return new Command() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void update() {
+            }
+
+            @Override
+            public boolean isFinished() {
+                return condition.getAsBoolean();
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    private static Set<Subsystem> requirementSet(Subsystem... requirements) {
+        if (requirements.length == 0) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(requirements)));
+    }
+
+    private static long nanoTime(NanoClock clock) {
+        return (long) (clock.seconds() * 1e9);
+    }
+}
@@ -0,0 +1,125 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs its commands at the same time. The members may not share a subsystem.
+ */
+public class ParallelCommandGroup extends CommandGroup {
+    public enum Mode {
+        /** finishes when every member has */
+        ALL,
+        /** finishes when any member does; the rest are interrupted */
+        RACE,
+        /** finishes when the first member does; the rest are interrupted */
+        DEADLINE
+    }
+
+    private final Mode mode;
+    private final boolean[] running;
+    private boolean finished;
+
+    public ParallelCommandGroup(Mode mode, Command... commands) {
+        super(commands);
+        this.mode = mode;
+        running = new boolean[commands.length];
+
+        Set<Subsystem> seen = new HashSet<>();
+        for (Command command : commands) {
+            for (Subsystem subsystem : command.getRequirements()) {
+                if (!seen.add(subsystem)) {
+                    throw new IllegalArgumentException(
+                            "parallel commands both require " + subsystem + ": " + command.getName());
+                }
+            }
+        }
+        if (mode == Mode.DEADLINE && commands.length == 0) {
+            throw new IllegalArgumentException("a deadline group needs a deadline command");
+        }
+    }
+
+    @Override
+    public void start() {
+        finished = false;
+        for (int i = 0; i < commands.length; i++) {
+            startMember(i);
+            running[i] = true;
+        }
+        // members that are done right away (instant actions) end here
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i].isFinished()) {
+                endMember(i, false);
+                running[i] = false;
+            }
+        }
+        checkFinished();
+    }
+
+    @Override
+    public void update() {
+        if (finished) {
+            return;
+        }
+
+        for (int i = 0; i < commands.length; i++) {
+            if (!running[i]) {
+                continue;
+            }
+            updateMember(i);
+            if (commands[i].isFinished()) {
+                endMember(i, false);
+                running[i] = false;
+            }
+        }
+        checkFinished();
+    }
+
+    private void checkFinished() {
+        switch (mode) {
+            case ALL:
+                finished = true;
+                for (boolean r : running) {
+                    finished &= !r;
+                }
+                break;
+            case RACE:
+                finished = commands.length == 0;
+                for (boolean r : running) {
+                    finished |= !r;
+                }
+                break;
+            case DEADLINE:
+                finished = !running[0];
+                break;
+        }
+
+        if (finished) {
+            interruptRunning();
+        }
+    }
+
+    private void interruptRunning() {
+        for (int i = 0; i < commands.length; i++) {
+            if (running[i]) {
+                endMember(i, true);
+                running[i] = false;
+            }
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        interruptRunning();
+    }
+
+    @Override
+    public String getName() {
+        return mode == Mode.ALL ? "Parallel" : mode == Mode.RACE ? "Race" : "Deadline";
+    }
+}
@@ -0,0 +1,63 @@
+package org.firstinspires.ftc.teamcode.command;
+
+/**
+ * Runs its commands one after another. A command that is already finished right after
+ * {@link Command#start()} (e.g. an instant action) is skipped over in the same loop iteration;
+ * otherwise the next command is started in the iteration its predecessor finished and first
+ * updated in the following one.
+ */
+public class SequentialCommandGroup extends CommandGroup {
+    private int index;
+
+    public SequentialCommandGroup(Command... commands) {
+        super(commands);
+    }
+
+    @Override
+    public void start() {
+        index = 0;
+        startNext();
+    }
+
+    private void startNext() {
+        while (index < commands.length) {
+            startMember(index);
+            if (!commands[index].isFinished()) {
+                return;
+            }
+            endMember(index, false);
+            index++;
+        }
+    }
+
+    @Override
+    public void update() {
+        if (index >= commands.length) {
+            return;
+        }
+
+        updateMember(index);
+        if (commands[index].isFinished()) {
+            endMember(index, false);
+            index++;
+            startNext();
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return index >= commands.length;
+    }
+
+    @Override
+    public void end(boolean interrupted) {
+        if (interrupted && index < commands.length) {
+            endMember(index, true);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Sequence";
+    }
+}
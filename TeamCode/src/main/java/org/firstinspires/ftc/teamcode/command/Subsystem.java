@@ -0,0 +1,18 @@
+package org.firstinspires.ftc.teamcode.command;
+
+/**
+ * A set of actuators only one command may drive at a time, e.g. the drive train or the lift.
+ * Commands list the subsystems they drive in {@link Command#getRequirements()}.
+ */
+public class Subsystem {
+    private final String name;
+
+    public Subsystem(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,140 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.acmerobotics.roadrunner.util.NanoClock;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.teamcode.util.Encoder;
+
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.FORWARD_OFFSET;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.LATERAL_DISTANCE;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.X_MULTIPLIER;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.Y_MULTIPLIER;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.encoderTicksToInches;
+
+/*
+ * Drop-in replacement for StandardTrackingWheelLocalizer (same wheels, same tuning constants)
+ * that runs the odometry through TrackingWheelOdometry instead of Road Runner's list-based
+ * ThreeTrackingWheelLocalizer. Encoder readings stay in primitive arrays; the pose and velocity
+ * objects Road Runner asks for are only created when asked, at most once per update.
+ */
+public class FastTrackingWheelLocalizer implements Localizer {
+    private final Encoder leftEncoder, rightEncoder, frontEncoder;
+    private final TrackingWheelOdometry odometry;
+
+    private final int[] positions = new int[3];
+    private final int[] velocities = new int[3];
+
+    private final int[] lastEncPositions, lastEncVels;
+
+    private double lateralDistance, forwardOffset;
+
+    private Pose2d poseEstimate;
+    private Pose2d poseVelocity;
+
+    public FastTrackingWheelLocalizer(HardwareMap hardwareMap, int[] lastTrackingEncPositions, int[] lastTrackingEncVels) {
+        this(hardwareMap, lastTrackingEncPositions, lastTrackingEncVels, NanoClock.system());
+    }
+
+    /**
+     * @param lastTrackingEncPositions overwritten with the three raw positions on every update, for the log
+     * @param lastTrackingEncVels      overwritten with the three raw velocities on every update
+     * @param clock                    time base for the encoders' velocity estimates; a simulation passes its virtual clock
+     */
+    public FastTrackingWheelLocalizer(HardwareMap hardwareMap, int[] lastTrackingEncPositions, int[] lastTrackingEncVels, NanoClock clock) {
+        lastEncPositions = lastTrackingEncPositions;
+        lastEncVels = lastTrackingEncVels;
+
+        leftEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "intake"), clock);
+        rightEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "lift"), clock);
+        frontEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "hookSp"), clock);
+
+        // TODO: reverse any encoders using Encoder.setDirection(Encoder.Direction.REVERSE)
+
+        lateralDistance = LATERAL_DISTANCE;
+        forwardOffset = FORWARD_OFFSET;
+        odometry = new TrackingWheelOdometry(lateralDistance, forwardOffset);
+    }
+
+    @Override
+    public void update() {
+        // the offsets are dashboard tunables; only redo the inverse when they actually change
+        if (lateralDistance != LATERAL_DISTANCE || forwardOffset != FORWARD_OFFSET) {
+            lateralDistance = LATERAL_DISTANCE;
+            forwardOffset = FORWARD_OFFSET;
+            odometry.setGeometry(lateralDistance, forwardOffset);
+        }
+
+        positions[0] = leftEncoder.getCurrentPosition();
+        positions[1] = rightEncoder.getCurrentPosition();
+        positions[2] = frontEncoder.getCurrentPosition();
+
+        velocities[0] = (int) leftEncoder.getVelocity();
+        velocities[1] = (int) rightEncoder.getVelocity();
+        velocities[2] = (int) frontEncoder.getVelocity();
+
+        odometry.update(
+                encoderTicksToInches(positions[0]) * X_MULTIPLIER,
+                encoderTicksToInches(positions[1]) * X_MULTIPLIER,
+                encoderTicksToInches(positions[2]) * Y_MULTIPLIER
+        );
+        odometry.updateVelocity(
+                encoderTicksToInches(velocities[0]) * X_MULTIPLIER,
+                encoderTicksToInches(velocities[1]) * X_MULTIPLIER,
+                encoderTicksToInches(velocities[2]) * Y_MULTIPLIER
+        );
+
+        System.arraycopy(positions, 0, lastEncPositions, 0, positions.length);
+        System.arraycopy(velocities, 0, lastEncVels, 0, velocities.length);
+
+        poseEstimate = null;
+        poseVelocity = null;
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        if (poseEstimate == null) {
+            poseEstimate = new Pose2d(odometry.getX(), odometry.getY(), odometry.getHeading());
+        }
+        return poseEstimate;
+    }
+
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d pose) {
+        odometry.setPose(pose.getX(), pose.getY(), pose.getHeading());
+        poseEstimate = pose;
+    }
+
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        if (poseVelocity == null) {
+            poseVelocity = new Pose2d(odometry.getVelX(), odometry.getVelY(), odometry.getVelHeading());
+        }
+        return poseVelocity;
+    }
+
+    public TrackingWheelOdometry getOdometry() {
+        return odometry;
+    }
+
+    /**
+     * @return latest raw tracking wheel positions in ticks: left, right, front; don't modify
+     */
+    public int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return latest corrected tracking wheel velocities in ticks per second; don't modify
+     */
+    public int[] getVelocities() {
+        return velocities;
+    }
+}
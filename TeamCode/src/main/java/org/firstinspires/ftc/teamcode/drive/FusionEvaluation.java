@@ -0,0 +1,197 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import com.acmerobotics.roadrunner.util.Angle;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Locale;
+
+/**
+ * Replays a recorded {@link org.firstinspires.ftc.teamcode.util.LogFiles} trace through wheel-only
+ * odometry and through {@link HeadingFusion}, and reports how far each heading drifts. The
+ * localizer that actually ran is included for reference.
+ * <p>
+ * The replay corrects only when the IMU has a new sample, stamped with when the IMU took it minus
+ * the latency, as {@link HeadingFusionLocalizer} does. Every {@link #HOLDOUT_EVERY}th new sample
+ * is held out of the correction, and all headings are scored against those, so the fused heading
+ * isn't scored against the very samples it was pulled towards. A heading known independently at
+ * the end (e.g. the robot was driven back against a wall) is scored too.
+ * <p>
+ * Served from {@code /logs/fusion?file=...}, optionally with {@code gain}, {@code latency} (ms)
+ * and {@code finalHeading} (deg). Needs a log recorded with the IMU heading and sample time
+ * columns (i.e. with {@link HeadingFusionLocalizer} enabled).
+ */
+public class FusionEvaluation {
+    public static final int HOLDOUT_EVERY = 4;
+
+    /**
+     * @param latencyMs    IMU latency to replay with, or NaN for the one the log was recorded with
+     * @param finalHeading field heading in radians known at the end of the log, or NaN
+     */
+    public static String evaluate(JsonNode log, double gain, double latencyMs, double finalHeading) {
+        JsonNode nsTimes = log.path("nsTimes");
+        JsonNode imuHeadings = log.path("imuHeadings");
+        JsonNode imuNsTimes = log.path("imuNsTimes");
+        JsonNode encoders = log.path("trackingEncPositions");
+        int n = nsTimes.size();
+
+        if (encoders.size() < 3 || encoders.get(0).size() < n) {
+            return "log has no tracking wheel positions\n";
+        }
+        if (imuHeadings.size() < n) {
+            return "log has no IMU headings; record it with HeadingFusionLocalizer.ENABLED\n";
+        }
+        if (imuNsTimes.size() < n) {
+            return "log has no IMU sample times; it was recorded before they were logged\n";
+        }
+        if (n < 2) {
+            return "log has fewer than two samples\n";
+        }
+        if (Double.isNaN(latencyMs)) {
+            latencyMs = log.path("imuLatencyMs").asDouble(0);
+        }
+        long latencyNanos = (long) (latencyMs * 1e6);
+
+        double inchesPerTick = log.path("trackingWheelRadius").asDouble() * 2 * Math.PI
+                * log.path("trackingGearRatio").asDouble() / log.path("trackingTicksPerRev").asDouble();
+
+        TrackingWheelOdometry wheels = new TrackingWheelOdometry(
+                log.path("trackingLateralDistance").asDouble(), log.path("trackingForwardOffset").asDouble());
+        HeadingFusion fusion = new HeadingFusion();
+
+        double x0 = log.path("xs").path(0).asDouble();
+        double y0 = log.path("ys").path(0).asDouble();
+        double h0 = log.path("headings").path(0).asDouble();
+        wheels.setPose(x0, y0, h0);
+        fusion.setPose(x0, y0, h0);
+
+        // each estimate's heading at every row, to look up at the held-out samples' times
+        long[] rowNanos = new long[n];
+        double[] loggedHeadings = new double[n], wheelHeadings = new double[n], fusedHeadings = new double[n];
+        long[] heldOutNanos = new long[n];
+        double[] heldOutHeadings = new double[n];
+        int heldOut = 0, fresh = 0;
+        long lastImuNanos = 0;
+        double maxSeparation = 0;
+
+        for (int i = 0; i < n; i++) {
+            long nanos = nsTimes.get(i).asLong();
+
+            double lastX = wheels.getX(), lastY = wheels.getY(), lastHeading = wheels.getHeading();
+            wheels.update(
+                    encoders.get(0).get(i).asInt() * inchesPerTick * StandardTrackingWheelLocalizer.X_MULTIPLIER,
+                    encoders.get(1).get(i).asInt() * inchesPerTick * StandardTrackingWheelLocalizer.X_MULTIPLIER,
+                    encoders.get(2).get(i).asInt() * inchesPerTick * StandardTrackingWheelLocalizer.Y_MULTIPLIER
+            );
+
+            double dx = wheels.getX() - lastX, dy = wheels.getY() - lastY;
+            double cos = Math.cos(lastHeading), sin = Math.sin(lastHeading);
+            fusion.predict(nanos, dx * cos + dy * sin, -dx * sin + dy * cos,
+                    Angle.normDelta(wheels.getHeading() - lastHeading));
+
+            // NaN is serialized as a string, which asDouble parses back
+            double imu = imuHeadings.get(i).asDouble(Double.NaN);
+            long imuNanos = imuNsTimes.get(i).asLong();
+            // rows repeat the last sample until the IMU has a new one
+            if (!Double.isNaN(imu) && imuNanos != lastImuNanos) {
+                lastImuNanos = imuNanos;
+                long sampleNanos = imuNanos - latencyNanos;
+                // the first sample aligns the IMU with the field, so it's never held out
+                if (fresh++ % HOLDOUT_EVERY == HOLDOUT_EVERY - 1) {
+                    heldOutNanos[heldOut] = sampleNanos;
+                    heldOutHeadings[heldOut] = imu;
+                    heldOut++;
+                } else {
+                    fusion.correct(sampleNanos, imu, gain);
+                }
+            }
+
+            rowNanos[i] = nanos;
+            loggedHeadings[i] = log.path("headings").get(i).asDouble();
+            wheelHeadings[i] = wheels.getHeading();
+            fusedHeadings[i] = fusion.getHeading();
+            maxSeparation = Math.max(maxSeparation,
+                    Math.hypot(fusion.getX() - wheels.getX(), fusion.getY() - wheels.getY()));
+        }
+
+        Drift logged = new Drift(), wheelOnly = new Drift(), fused = new Drift();
+        for (int k = 0; k < heldOut; k++) {
+            long t = heldOutNanos[k];
+            double imu = heldOutHeadings[k];
+            logged.add(headingAt(rowNanos, loggedHeadings, t) - imu);
+            wheelOnly.add(headingAt(rowNanos, wheelHeadings, t) - imu);
+            fused.add(headingAt(rowNanos, fusedHeadings, t) - imu);
+        }
+
+        double seconds = (nsTimes.get(n - 1).asLong() - nsTimes.get(0).asLong()) / 1e9;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%s: %d samples over %.1f s, %d IMU samples, IMU gain %.3f, latency %.1f ms%n%n",
+                log.path("opModeName").asText(), n, seconds, fresh, gain, latencyMs));
+        if (heldOut == 0) {
+            sb.append("too few IMU samples to hold any out\n");
+        } else {
+            sb.append(String.format(Locale.US, "vs the %d IMU samples held out of the replay's correction:%n", heldOut));
+            sb.append(String.format(Locale.US, "%-12s %14s %14s %14s%n",
+                    "heading", "final (deg)", "max (deg)", "rms (deg)"));
+            logged.append(sb, "recorded*");
+            wheelOnly.append(sb, "wheels only");
+            fused.append(sb, "fused");
+            sb.append("* corrected on the robot with every sample, the held out ones included\n");
+        }
+        if (!Double.isNaN(finalHeading)) {
+            sb.append(String.format(Locale.US, "%nvs the known final heading %.1f deg: recorded %.2f, wheels only %.2f, fused %.2f (deg)%n",
+                    Math.toDegrees(finalHeading),
+                    Math.toDegrees(Angle.normDelta(loggedHeadings[n - 1] - finalHeading)),
+                    Math.toDegrees(Angle.normDelta(wheelHeadings[n - 1] - finalHeading)),
+                    Math.toDegrees(Angle.normDelta(fusedHeadings[n - 1] - finalHeading))));
+        }
+        sb.append(String.format(Locale.US, "%nfused vs wheels only: final position difference %.2f in, max %.2f in%n",
+                Math.hypot(fusion.getX() - wheels.getX(), fusion.getY() - wheels.getY()), maxSeparation));
+        return sb.toString();
+    }
+
+    /**
+     * @return the heading at {@code nanos}, interpolated between rows (clamped to the ends)
+     */
+    private static double headingAt(long[] rowNanos, double[] headings, long nanos) {
+        int n = rowNanos.length;
+        if (nanos <= rowNanos[0]) {
+            return headings[0];
+        }
+        if (nanos >= rowNanos[n - 1]) {
+            return headings[n - 1];
+        }
+
+        int lo = 0, hi = n - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (rowNanos[mid] <= nanos) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        long span = rowNanos[hi] - rowNanos[lo];
+        double t = span == 0 ? 0 : (double) (nanos - rowNanos[lo]) / span;
+        return headings[lo] + t * Angle.normDelta(headings[hi] - headings[lo]);
+    }
+
+    private static class Drift {
+        int count;
+        double last, max, sumSquares;
+
+        void add(double error) {
+            error = Angle.normDelta(error);
+            count++;
+            last = error;
+            max = Math.max(max, Math.abs(error));
+            sumSquares += error * error;
+        }
+
+        void append(StringBuilder sb, String name) {
+            sb.append(String.format(Locale.US, "%-12s %14.2f %14.2f %14.2f%n", name,
+                    Math.toDegrees(last), Math.toDegrees(max),
+                    count == 0 ? 0 : Math.toDegrees(Math.sqrt(sumSquares / count))));
+        }
+    }
+}
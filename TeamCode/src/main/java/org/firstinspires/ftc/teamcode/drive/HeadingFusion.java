@@ -0,0 +1,148 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import com.acmerobotics.roadrunner.util.Angle;
+
+/**
+ * Complementary filter that corrects wheel odometry heading with IMU heading.
+ * <p>
+ * Wheel odometry is smooth and has no latency but drifts whenever a wheel slips; the IMU doesn't
+ * drift with slip but arrives later and at its own rate. Every odometry step is applied
+ * immediately ({@link #predict}) and recorded in a short history. When an IMU sample arrives
+ * ({@link #correct}) it is compared with the fused heading at the time the sample was taken, not
+ * the current one, and a fraction of the difference is applied to the current estimate.
+ * <p>
+ * Hardware free, so the same filter runs on the robot and over recorded logs.
+ */
+public class HeadingFusion {
+    private static final int HISTORY = 64;
+
+    private final long[] historyNanos = new long[HISTORY];
+    private final double[] historyHeadings = new double[HISTORY];
+    private int historyStart, historySize;
+
+    private double x, y, heading;
+
+    // IMU heading + offset = field heading
+    private double imuOffset;
+    private boolean imuAligned;
+
+    private double lastInnovation;
+    private long lastImuNanos;
+
+    public void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        historySize = 0;
+        imuAligned = false;
+    }
+
+    /**
+     * Applies a robot-relative odometry delta (already integrated over the step, e.g. the chord of
+     * a pose exponential) using the fused heading.
+     */
+    public void predict(long nanos, double dxRobot, double dyRobot, double dHeading) {
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        x += dxRobot * cos - dyRobot * sin;
+        y += dxRobot * sin + dyRobot * cos;
+        heading = Angle.norm(heading + dHeading);
+
+        int i = historyStart + historySize;
+        if (historySize < HISTORY) {
+            historySize++;
+        } else {
+            historyStart = (historyStart + 1) % HISTORY;
+        }
+        i %= HISTORY;
+        historyNanos[i] = nanos;
+        historyHeadings[i] = heading;
+    }
+
+    /**
+     * Blends in an IMU sample. The first sample after {@link #setPose} only aligns the IMU with
+     * the field.
+     *
+     * @param sampleNanos when the IMU measured the heading
+     * @param imuHeading  raw IMU yaw
+     * @param gain        fraction of the disagreement to apply, in [0, 1]
+     */
+    public void correct(long sampleNanos, double imuHeading, double gain) {
+        if (sampleNanos == lastImuNanos) {
+            return;
+        }
+        lastImuNanos = sampleNanos;
+
+        double then = headingAt(sampleNanos);
+        if (!imuAligned) {
+            imuOffset = then - imuHeading;
+            imuAligned = true;
+            lastInnovation = 0;
+            return;
+        }
+
+        double innovation = Angle.normDelta(imuHeading + imuOffset - then);
+        lastInnovation = innovation;
+
+        double correction = gain * innovation;
+        heading = Angle.norm(heading + correction);
+        // keep the history consistent with the corrected estimate
+        for (int k = 0; k < historySize; k++) {
+            int i = (historyStart + k) % HISTORY;
+            historyHeadings[i] = Angle.norm(historyHeadings[i] + correction);
+        }
+    }
+
+    /**
+     * @return fused heading at the given time, interpolated from the history (clamped to its ends)
+     */
+    private double headingAt(long nanos) {
+        if (historySize == 0) {
+            return heading;
+        }
+
+        int newest = (historyStart + historySize - 1) % HISTORY;
+        if (nanos >= historyNanos[newest]) {
+            return historyHeadings[newest];
+        }
+        if (nanos <= historyNanos[historyStart]) {
+            return historyHeadings[historyStart];
+        }
+
+        for (int k = historySize - 1; k > 0; k--) {
+            int i = (historyStart + k) % HISTORY;
+            int prev = (historyStart + k - 1) % HISTORY;
+            if (historyNanos[prev] <= nanos) {
+                double t = (double) (nanos - historyNanos[prev]) / (historyNanos[i] - historyNanos[prev]);
+                return Angle.norm(historyHeadings[prev] + t * Angle.normDelta(historyHeadings[i] - historyHeadings[prev]));
+            }
+        }
+        return historyHeadings[historyStart];
+    }
+
+    /**
+     * @return field heading the IMU currently reports, or NaN before the first sample
+     */
+    public double imuFieldHeading(double imuHeading) {
+        return imuAligned ? Angle.norm(imuHeading + imuOffset) : Double.NaN;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return IMU minus odometry heading at the last IMU sample, before correction
+     */
+    public double getLastInnovation() {
+        return lastInnovation;
+    }
+}
@@ -0,0 +1,127 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.acmerobotics.roadrunner.util.Angle;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.teamcode.util.ImuPoller;
+import org.firstinspires.ftc.teamcode.util.LogFiles;
+
+/**
+ * Wraps a tracking wheel localizer and corrects its heading with the IMU through
+ * {@link HeadingFusion}. The wrapped localizer's motion is re-applied in the fused heading, so a
+ * heading correction also straightens out the position estimate from then on.
+ * <p>
+ * IMU samples come from {@link ImuPoller} with the time they were taken, so the filter compares
+ * them against the odometry heading from that moment. {@link #IMU_LATENCY_MS} covers any further
+ * delay inside the IMU itself. Enable with {@link #ENABLED}.
+ */
+@Config
+public class HeadingFusionLocalizer implements Localizer {
+    public static boolean ENABLED = false;
+    // fraction of the IMU/odometry disagreement corrected per IMU sample
+    public static double IMU_GAIN = 0.05;
+    public static double IMU_LATENCY_MS = 0;
+
+    private final Localizer wheels;
+    private final ImuPoller imu;
+    private final NanoClock clock;
+    private final HeadingFusion fusion = new HeadingFusion();
+
+    private final double[] imuSample = new double[1];
+
+    private double lastWheelX, lastWheelY, lastWheelHeading;
+
+    private Pose2d poseEstimate;
+
+    public HeadingFusionLocalizer(Localizer wheels, ImuPoller imu) {
+        this(wheels, imu, NanoClock.system());
+    }
+
+    /**
+     * @param clock the clock {@code imu} stamps its samples with
+     */
+    public HeadingFusionLocalizer(Localizer wheels, ImuPoller imu, NanoClock clock) {
+        this.wheels = wheels;
+        this.imu = imu;
+        this.clock = clock;
+        setPoseEstimate(wheels.getPoseEstimate());
+    }
+
+    @Override
+    public void update() {
+        wheels.update();
+        long now = (long) (clock.seconds() * 1e9);
+
+        Pose2d wheelPose = wheels.getPoseEstimate();
+        double dx = wheelPose.getX() - lastWheelX;
+        double dy = wheelPose.getY() - lastWheelY;
+
+        // the wheel localizer's motion over this step, back in the robot frame
+        double cos = Math.cos(lastWheelHeading);
+        double sin = Math.sin(lastWheelHeading);
+        fusion.predict(now,
+                dx * cos + dy * sin,
+                -dx * sin + dy * cos,
+                Angle.normDelta(wheelPose.getHeading() - lastWheelHeading));
+
+        lastWheelX = wheelPose.getX();
+        lastWheelY = wheelPose.getY();
+        lastWheelHeading = wheelPose.getHeading();
+
+        long stamp = imu.readLatest(imuSample);
+        // a stale sample says nothing about the heading now; odometry carries on alone until the
+        // poller catches up
+        if (stamp != 0) {
+            fusion.correct(stamp - (long) (IMU_LATENCY_MS * 1e6), imuSample[0], IMU_GAIN);
+            // logged with the poller's stamp; a replay applies the latency itself
+            LogFiles.recordImuHeading(fusion.imuFieldHeading(imuSample[0]), stamp);
+        }
+
+        poseEstimate = null;
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        if (poseEstimate == null) {
+            poseEstimate = new Pose2d(fusion.getX(), fusion.getY(), fusion.getHeading());
+        }
+        return poseEstimate;
+    }
+
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d pose) {
+        wheels.setPoseEstimate(pose);
+        fusion.setPose(pose.getX(), pose.getY(), pose.getHeading());
+
+        lastWheelX = pose.getX();
+        lastWheelY = pose.getY();
+        lastWheelHeading = pose.getHeading();
+
+        poseEstimate = pose;
+    }
+
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        // robot-relative, so the wheel estimate holds as is
+        return wheels.getPoseVelocity();
+    }
+
+    public Localizer getWheelLocalizer() {
+        return wheels;
+    }
+
+    /**
+     * @return IMU minus odometry heading at the last IMU sample, in radians
+     */
+    public double getLastInnovation() {
+        return fusion.getLastInnovation();
+    }
+}
@@ -0,0 +1,345 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManagerImpl;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManagerNotifier;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.DcMotorSimple;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.util.Encoder;
+import org.firstinspires.ftc.teamcode.util.VelocityEstimator;
+import org.firstinspires.ftc.teamcode.util.VelocityEstimatorConfig;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.FORWARD_OFFSET;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.LATERAL_DISTANCE;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.X_MULTIPLIER;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.Y_MULTIPLIER;
+import static org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer.encoderTicksToInches;
+
+/**
+ * Integrates tracking wheel odometry on its own thread at {@link #RATE_HZ}, so the pose estimate
+ * doesn't develop gaps while the op mode is blocked in telemetry, sleeps or a long drive call.
+ * <p>
+ * The thread issues its own bulk reads ({@link LynxModule#getBulkData()}) instead of going through
+ * the motors. The SDK stores every such read as the hub's bulk cache, so while the service runs,
+ * the control loop's cached motor reads can be refreshed by this thread partway through a cycle;
+ * {@link org.firstinspires.ftc.teamcode.util.HardwareSnapshot} copies its encoders at the start of
+ * the cycle, so those stay consistent. Each integration step publishes a
+ * timestamped pose with a sequence lock, like {@link org.firstinspires.ftc.teamcode.util.ImuPoller},
+ * so readers never block.
+ * <p>
+ * As a {@link Localizer} it can be passed to {@code setLocalizer()}: {@link #update()} then only
+ * picks up the latest published pose. Enable with {@link #ENABLED}.
+ */
+@Config
+public class OdometryService implements Localizer {
+    public static boolean ENABLED = false;
+    public static double RATE_HZ = 200;
+
+    private static final String[] ENCODER_NAMES = {"intake", "lift", "hookSp"};
+    private static final double RATE_WINDOW_S = 1.0;
+
+    private final LynxModule[] modules = new LynxModule[ENCODER_NAMES.length];
+    private final int[] ports = new int[ENCODER_NAMES.length];
+    private final DcMotorEx[] motors = new DcMotorEx[ENCODER_NAMES.length];
+    private final Encoder.Direction[] directions = new Encoder.Direction[ENCODER_NAMES.length];
+
+    // only touched by the odometry thread
+    private final TrackingWheelOdometry odometry;
+    private final int[] rawPositions = new int[ENCODER_NAMES.length];
+    private final double[] rawVelocities = new double[ENCODER_NAMES.length];
+    private final double[] velocityTicks = new double[ENCODER_NAMES.length];
+    private final VelocityEstimator velocityEstimator = new VelocityEstimator(ENCODER_NAMES.length);
+    private double lateralDistance, forwardOffset;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // a pose reset requested by setPoseEstimate(), applied by the odometry thread. The pose and
+    // its number travel together, so the thread can't apply one reset under another's number
+    private final AtomicReference<PoseReset> pendingReset = new AtomicReference<>();
+    private volatile int requestedResets;
+    private int appliedResets;
+
+    // odd while the odometry thread is writing the fields below
+    private volatile int sequence;
+    private volatile double x, y, heading;
+    private volatile double velX, velY, velHeading;
+    private volatile long timestampNanos;
+    private volatile int resets;
+
+    private volatile double rateHz;
+    private volatile long missedDeadlines;
+
+    // snapshot taken by update() on the op mode thread, in the order read() fills it; the poses
+    // are only rebuilt from it when someone asks and it has changed
+    private final double[] estimate = new double[6];
+    private final double[] scratch = new double[6];
+    private Pose2d poseEstimate = new Pose2d();
+    private Pose2d poseVelocity = new Pose2d();
+
+    private final OpModeManagerNotifier.Notifications stopListener = new OpModeManagerNotifier.Notifications() {
+        @Override
+        public void onOpModePreInit(OpMode opMode) {
+        }
+
+        @Override
+        public void onOpModePreStart(OpMode opMode) {
+        }
+
+        @Override
+        public void onOpModePostStop(OpMode opMode) {
+            stop();
+        }
+    };
+
+    public OdometryService(HardwareMap hardwareMap) {
+        List<LynxModule> hubs = hardwareMap.getAll(LynxModule.class);
+        for (int i = 0; i < ENCODER_NAMES.length; i++) {
+            motors[i] = hardwareMap.get(DcMotorEx.class, ENCODER_NAMES[i]);
+            ports[i] = motors[i].getPortNumber();
+            directions[i] = Encoder.Direction.FORWARD;
+            for (LynxModule hub : hubs) {
+                if (hub.getSerialNumber().equals(motors[i].getController().getSerialNumber())) {
+                    modules[i] = hub;
+                }
+            }
+            if (modules[i] == null) {
+                throw new IllegalArgumentException(ENCODER_NAMES[i] + " is not on a Lynx module");
+            }
+        }
+
+        // TODO: reverse any encoders using setDirection()
+
+        lateralDistance = LATERAL_DISTANCE;
+        forwardOffset = FORWARD_OFFSET;
+        odometry = new TrackingWheelOdometry(lateralDistance, forwardOffset);
+
+        OpModeManagerImpl manager = OpModeManagerImpl.getOpModeManagerOfActivity(AppUtil.getInstance().getActivity());
+        if (manager != null) {
+            manager.registerListener(stopListener);
+        }
+
+        thread = new Thread(this::run, "OdometryService");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param wheel 0 = left, 1 = right, 2 = front
+     */
+    public void setDirection(int wheel, Encoder.Direction direction) {
+        directions[wheel] = direction;
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        long windowStart = next;
+        int windowSteps = 0;
+
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                step();
+
+                windowSteps++;
+                long now = System.nanoTime();
+                if (now - windowStart >= RATE_WINDOW_S * 1e9) {
+                    rateHz = windowSteps / ((now - windowStart) / 1e9);
+                    windowStart = now;
+                    windowSteps = 0;
+                }
+
+                next += (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(1, RATE_HZ));
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    // fell behind; count it and don't try to catch up with a burst of reads
+                    missedDeadlines++;
+                    next = System.nanoTime();
+                }
+            }
+        } catch (RuntimeException e) {
+            RobotLog.ee("OdometryService", e, "odometry thread stopped");
+        }
+    }
+
+    private void step() {
+        PoseReset reset = pendingReset.getAndSet(null);
+        if (reset != null) {
+            odometry.setPose(reset.pose.getX(), reset.pose.getY(), reset.pose.getHeading());
+            appliedResets = reset.id;
+        }
+
+        if (lateralDistance != LATERAL_DISTANCE || forwardOffset != FORWARD_OFFSET) {
+            lateralDistance = LATERAL_DISTANCE;
+            forwardOffset = FORWARD_OFFSET;
+            odometry.setGeometry(lateralDistance, forwardOffset);
+        }
+
+        long now = System.nanoTime();
+
+        // one bulk read per hub; the three wheels are usually on the same one
+        LynxModule.BulkData data = null;
+        LynxModule dataModule = null;
+        for (int i = 0; i < ENCODER_NAMES.length; i++) {
+            if (modules[i] != dataModule) {
+                dataModule = modules[i];
+                data = dataModule.getBulkData();
+            }
+
+            int multiplier = directions[i].getMultiplier()
+                    * (motors[i].getDirection() == DcMotorSimple.Direction.FORWARD ? 1 : -1);
+            rawPositions[i] = data.getMotorCurrentPosition(ports[i]) * multiplier;
+            rawVelocities[i] = data.getMotorVelocity(ports[i]) * multiplier;
+        }
+
+        // fit all three wheels at once
+        VelocityEstimatorConfig.apply(velocityEstimator);
+        velocityEstimator.add(now, rawPositions);
+        for (int i = 0; i < ENCODER_NAMES.length; i++) {
+            velocityTicks[i] = velocityEstimator.getVelocity(i, rawVelocities[i]);
+        }
+
+        odometry.update(
+                encoderTicksToInches(rawPositions[0]) * X_MULTIPLIER,
+                encoderTicksToInches(rawPositions[1]) * X_MULTIPLIER,
+                encoderTicksToInches(rawPositions[2]) * Y_MULTIPLIER
+        );
+        odometry.updateVelocity(
+                encoderTicksToInches(velocityTicks[0]) * X_MULTIPLIER,
+                encoderTicksToInches(velocityTicks[1]) * X_MULTIPLIER,
+                encoderTicksToInches(velocityTicks[2]) * Y_MULTIPLIER
+        );
+
+        sequence++;
+        x = odometry.getX();
+        y = odometry.getY();
+        heading = odometry.getHeading();
+        velX = odometry.getVelX();
+        velY = odometry.getVelY();
+        velHeading = odometry.getVelHeading();
+        timestampNanos = now;
+        resets = appliedResets;
+        sequence++;
+    }
+
+    /**
+     * Copies the latest pose and robot-relative velocity into {@code out} without allocating.
+     *
+     * @param out at least six elements: x, y, heading, x velocity, y velocity, heading velocity
+     * @return {@link System#nanoTime()} at which the pose was sampled, or 0 if the latest pose
+     * predates the last {@link #setPoseEstimate} (out is left unspecified)
+     */
+    public long read(double[] out) {
+        while (true) {
+            int seq = sequence;
+            out[0] = x;
+            out[1] = y;
+            out[2] = heading;
+            out[3] = velX;
+            out[4] = velY;
+            out[5] = velHeading;
+            long stamp = timestampNanos;
+            int sampleResets = resets;
+            if ((seq & 1) == 0 && seq == sequence) {
+                return sampleResets == requestedResets ? stamp : 0;
+            }
+        }
+    }
+
+    @Override
+    public void update() {
+        if (read(scratch) == 0) {
+            // the published pose predates the last setPoseEstimate(); keep reporting the pose that was set
+            return;
+        }
+
+        System.arraycopy(scratch, 0, estimate, 0, estimate.length);
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        if (estimate[0] != poseEstimate.getX() || estimate[1] != poseEstimate.getY()
+                || estimate[2] != poseEstimate.getHeading()) {
+            poseEstimate = new Pose2d(estimate[0], estimate[1], estimate[2]);
+        }
+        return poseEstimate;
+    }
+
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d pose) {
+        int id = requestedResets + 1;
+        requestedResets = id;
+        pendingReset.set(new PoseReset(pose, id));
+        estimate[0] = pose.getX();
+        estimate[1] = pose.getY();
+        estimate[2] = pose.getHeading();
+        estimate[3] = 0;
+        estimate[4] = 0;
+        estimate[5] = 0;
+        poseEstimate = pose;
+    }
+
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        if (estimate[3] != poseVelocity.getX() || estimate[4] != poseVelocity.getY()
+                || estimate[5] != poseVelocity.getHeading()) {
+            poseVelocity = new Pose2d(estimate[3], estimate[4], estimate[5]);
+        }
+        return poseVelocity;
+    }
+
+    /**
+     * @return integration steps per second over the last second
+     */
+    public double getRateHz() {
+        return rateHz;
+    }
+
+    /**
+     * @return number of steps that started late because the previous one overran its period
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines;
+    }
+
+    /**
+     * @return age of the latest published pose in milliseconds
+     */
+    public double getSampleAgeMs() {
+        return (System.nanoTime() - timestampNanos) / 1e6;
+    }
+
+    public void stop() {
+        // the op mode manager only holds the listener weakly, so it goes away with this service
+        running = false;
+    }
+
+    private static final class PoseReset {
+        final Pose2d pose;
+        final int id;
+
+        PoseReset(Pose2d pose, int id) {
+            this.pose = pose;
+            this.id = id;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceBuilder;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner;
 import org.firstinspires.ftc.teamcode.util.LynxModuleUtil;
+import org.firstinspires.ftc.teamcode.util.VoltageService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -75,9 +76,10 @@ public class SampleMecanumDrive extends MecanumDrive {
 
     private IMU imu;
     private VoltageSensor batteryVoltageSensor;
+    private VoltageService voltageService;
 
-    private List<Integer> lastEncPositions = new ArrayList<>();
-    private List<Integer> lastEncVels = new ArrayList<>();
+    private final int[] lastEncPositions = new int[4];
+    private final int[] lastEncVels = new int[4];
 
     public SampleMecanumDrive(HardwareMap hardwareMap) {
         super(kV, kA, kStatic, TRACK_WIDTH, TRACK_WIDTH, LATERAL_MULTIPLIER);
@@ -88,6 +90,7 @@ public class SampleMecanumDrive extends MecanumDrive {
         LynxModuleUtil.ensureMinimumFirmwareVersion(hardwareMap);
 
         batteryVoltageSensor = hardwareMap.voltageSensor.iterator().next();
+        voltageService = new VoltageService(batteryVoltageSensor);
 
         for (LynxModule module : hardwareMap.getAll(LynxModule.class)) {
             module.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO);
@@ -120,15 +123,17 @@ public class SampleMecanumDrive extends MecanumDrive {
 
         // TODO: reverse any motors using DcMotor.setDirection()
 
-        List<Integer> lastTrackingEncPositions = new ArrayList<>();
-        List<Integer> lastTrackingEncVels = new ArrayList<>();
+        int[] lastTrackingEncPositions = new int[3];
+        int[] lastTrackingEncVels = new int[3];
 
         // TODO: if desired, use setLocalizer() to change the localization method
         setLocalizer(new StandardTrackingWheelLocalizer(hardwareMap, lastTrackingEncPositions, lastTrackingEncVels));
 
+        // the tracking wheel localizer never reads the drive wheels, so the log gets no drive
+        // columns; pass lastEncPositions and lastEncVels instead with the drive encoder localizer
         trajectorySequenceRunner = new TrajectorySequenceRunner(
-                follower, HEADING_PID, batteryVoltageSensor,
-                lastEncPositions, lastEncVels, lastTrackingEncPositions, lastTrackingEncVels
+                follower, HEADING_PID, voltageService,
+                new int[0], new int[0], lastTrackingEncPositions, lastTrackingEncVels
         );
     }
 
@@ -194,7 +199,8 @@ public class SampleMecanumDrive extends MecanumDrive {
     public void update() {
         updatePoseEstimate();
         DriveSignal signal = trajectorySequenceRunner.update(getPoseEstimate(), getPoseVelocity());
-        if (signal != null) setDriveSignal(signal);
+        if (signal != null)
+            setDriveSignal(TrajectorySequenceRunner.compensate(signal, trajectorySequenceRunner.getVoltageScale()));
     }
 
     public void waitForIdle() {
@@ -221,7 +227,7 @@ public class SampleMecanumDrive extends MecanumDrive {
     public void setPIDFCoefficients(DcMotor.RunMode runMode, PIDFCoefficients coefficients) {
         PIDFCoefficients compensatedCoefficients = new PIDFCoefficients(
                 coefficients.p, coefficients.i, coefficients.d,
-                coefficients.f * 12 / batteryVoltageSensor.getVoltage()
+                coefficients.f * VoltageService.NOMINAL_VOLTAGE / voltageService.compensate()
         );
 
         for (DcMotorEx motor : motors) {
@@ -252,12 +258,10 @@ public class SampleMecanumDrive extends MecanumDrive {
     @NonNull
     @Override
     public List<Double> getWheelPositions() {
-        lastEncPositions.clear();
-
         List<Double> wheelPositions = new ArrayList<>();
-        for (DcMotorEx motor : motors) {
-            int position = motor.getCurrentPosition();
-            lastEncPositions.add(position);
+        for (int i = 0; i < motors.size(); i++) {
+            int position = motors.get(i).getCurrentPosition();
+            lastEncPositions[i] = position;
             wheelPositions.add(encoderTicksToInches(position));
         }
         return wheelPositions;
@@ -265,12 +269,10 @@ public class SampleMecanumDrive extends MecanumDrive {
 
     @Override
     public List<Double> getWheelVelocities() {
-        lastEncVels.clear();
-
         List<Double> wheelVelocities = new ArrayList<>();
-        for (DcMotorEx motor : motors) {
-            int vel = (int) motor.getVelocity();
-            lastEncVels.add(vel);
+        for (int i = 0; i < motors.size(); i++) {
+            int vel = (int) motors.get(i).getVelocity();
+            lastEncVels[i] = vel;
             wheelVelocities.add(encoderTicksToInches(vel));
         }
         return wheelVelocities;
@@ -5,6 +5,7 @@ import androidx.annotation.NonNull;
 import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
 import com.acmerobotics.roadrunner.localization.ThreeTrackingWheelLocalizer;
+import com.acmerobotics.roadrunner.util.NanoClock;
 import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import org.firstinspires.ftc.teamcode.util.Encoder;
@@ -41,9 +42,16 @@ public class StandardTrackingWheelLocalizer extends ThreeTrackingWheelLocalizer
 
     private Encoder leftEncoder, rightEncoder, frontEncoder;
 
-    private List<Integer> lastEncPositions, lastEncVels;
+    private int[] lastEncPositions, lastEncVels;
 
-    public StandardTrackingWheelLocalizer(HardwareMap hardwareMap, List<Integer> lastTrackingEncPositions, List<Integer> lastTrackingEncVels) {
+    public StandardTrackingWheelLocalizer(HardwareMap hardwareMap, int[] lastTrackingEncPositions, int[] lastTrackingEncVels) {
+        this(hardwareMap, lastTrackingEncPositions, lastTrackingEncVels, NanoClock.system());
+    }
+
+    /**
+     * @param clock time base for the encoders' velocity estimates; a simulation passes its virtual clock
+     */
+    public StandardTrackingWheelLocalizer(HardwareMap hardwareMap, int[] lastTrackingEncPositions, int[] lastTrackingEncVels, NanoClock clock) {
         super(Arrays.asList(
                 new Pose2d(0, LATERAL_DISTANCE / 2, 0), // left
                 new Pose2d(0, -LATERAL_DISTANCE / 2, 0), // right
@@ -53,9 +61,9 @@ public class StandardTrackingWheelLocalizer extends ThreeTrackingWheelLocalizer
         lastEncPositions = lastTrackingEncPositions;
         lastEncVels = lastTrackingEncVels;
 
-        leftEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "intake"));
-        rightEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "lift"));
-        frontEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "hookSp"));
+        leftEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "intake"), clock);
+        rightEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "lift"), clock);
+        frontEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "hookSp"), clock);
 
         // TODO: reverse any encoders using Encoder.setDirection(Encoder.Direction.REVERSE)
     }
@@ -71,10 +79,9 @@ public class StandardTrackingWheelLocalizer extends ThreeTrackingWheelLocalizer
         int rightPos = rightEncoder.getCurrentPosition();
         int frontPos = frontEncoder.getCurrentPosition();
 
-        lastEncPositions.clear();
-        lastEncPositions.add(leftPos);
-        lastEncPositions.add(rightPos);
-        lastEncPositions.add(frontPos);
+        lastEncPositions[0] = leftPos;
+        lastEncPositions[1] = rightPos;
+        lastEncPositions[2] = frontPos;
 
         return Arrays.asList(
                 encoderTicksToInches(leftPos) * X_MULTIPLIER,
@@ -86,14 +93,13 @@ public class StandardTrackingWheelLocalizer extends ThreeTrackingWheelLocalizer
     @NonNull
     @Override
     public List<Double> getWheelVelocities() {
-        int leftVel = (int) leftEncoder.getCorrectedVelocity();
-        int rightVel = (int) rightEncoder.getCorrectedVelocity();
-        int frontVel = (int) frontEncoder.getCorrectedVelocity();
-
-        lastEncVels.clear();
-        lastEncVels.add(leftVel);
-        lastEncVels.add(rightVel);
-        lastEncVels.add(frontVel);
+        int leftVel = (int) leftEncoder.getVelocity();
+        int rightVel = (int) rightEncoder.getVelocity();
+        int frontVel = (int) frontEncoder.getVelocity();
+
+        lastEncVels[0] = leftVel;
+        lastEncVels[1] = rightVel;
+        lastEncVels[2] = frontVel;
 
         return Arrays.asList(
                 encoderTicksToInches(leftVel) * X_MULTIPLIER,
@@ -0,0 +1,168 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import com.acmerobotics.roadrunner.util.Angle;
+
+/**
+ * Three tracking wheel odometry on primitives. This is the same math as Road Runner's
+ * {@code ThreeTrackingWheelLocalizer} (wheel deltas through the inverse of the wheel kinematics
+ * matrix, then a pose exponential update), but the inverse is computed once per wheel geometry
+ * and {@link #update} allocates nothing.
+ * <p>
+ * It knows nothing about hardware: feed it wheel positions (and optionally velocities) in inches.
+ */
+public class TrackingWheelOdometry {
+    private static final int WHEELS = 3;
+
+    private final double[] wheelX = new double[WHEELS];
+    private final double[] wheelY = new double[WHEELS];
+    private final double[] wheelHeading = new double[WHEELS];
+
+    // row-major inverse of the matrix mapping a robot pose delta to wheel deltas
+    private final double[] inverse = new double[WHEELS * WHEELS];
+
+    private final double[] lastPositions = new double[WHEELS];
+    private boolean hasLastPositions;
+
+    private double x, y, heading;
+    private double velX, velY, velHeading;
+
+    /**
+     * Standard configuration: parallel wheels on either side of the center, lateral wheel ahead of it.
+     */
+    public TrackingWheelOdometry(double lateralDistance, double forwardOffset) {
+        setGeometry(lateralDistance, forwardOffset);
+    }
+
+    public void setGeometry(double lateralDistance, double forwardOffset) {
+        setWheel(0, 0, lateralDistance / 2, 0); // left
+        setWheel(1, 0, -lateralDistance / 2, 0); // right
+        setWheel(2, forwardOffset, 0, Math.toRadians(90)); // front
+        computeInverse();
+    }
+
+    /**
+     * Sets an arbitrary wheel pose; call {@link #computeInverse()} after changing wheels.
+     */
+    public void setWheel(int wheel, double x, double y, double heading) {
+        wheelX[wheel] = x;
+        wheelY[wheel] = y;
+        wheelHeading[wheel] = heading;
+    }
+
+    public void computeInverse() {
+        // each row: wheel delta = cos * dx + sin * dy + (x sin - y cos) * dtheta
+        double[] m = new double[WHEELS * WHEELS];
+        for (int i = 0; i < WHEELS; i++) {
+            double cos = Math.cos(wheelHeading[i]);
+            double sin = Math.sin(wheelHeading[i]);
+            m[i * 3] = cos;
+            m[i * 3 + 1] = sin;
+            m[i * 3 + 2] = wheelX[i] * sin - wheelY[i] * cos;
+        }
+
+        double c00 = m[4] * m[8] - m[5] * m[7];
+        double c01 = m[5] * m[6] - m[3] * m[8];
+        double c02 = m[3] * m[7] - m[4] * m[6];
+        double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (Math.abs(det) < 1e-9) {
+            throw new IllegalArgumentException("The specified configuration cannot support full localization");
+        }
+
+        inverse[0] = c00 / det;
+        inverse[1] = (m[2] * m[7] - m[1] * m[8]) / det;
+        inverse[2] = (m[1] * m[5] - m[2] * m[4]) / det;
+        inverse[3] = c01 / det;
+        inverse[4] = (m[0] * m[8] - m[2] * m[6]) / det;
+        inverse[5] = (m[2] * m[3] - m[0] * m[5]) / det;
+        inverse[6] = c02 / det;
+        inverse[7] = (m[1] * m[6] - m[0] * m[7]) / det;
+        inverse[8] = (m[0] * m[4] - m[1] * m[3]) / det;
+    }
+
+    /**
+     * Integrates the change since the last call. The first call after construction or
+     * {@link #setPose} only records the positions.
+     */
+    public void update(double left, double right, double front) {
+        if (hasLastPositions) {
+            double d0 = left - lastPositions[0];
+            double d1 = right - lastPositions[1];
+            double d2 = front - lastPositions[2];
+
+            double dx = inverse[0] * d0 + inverse[1] * d1 + inverse[2] * d2;
+            double dy = inverse[3] * d0 + inverse[4] * d1 + inverse[5] * d2;
+            double dTheta = inverse[6] * d0 + inverse[7] * d1 + inverse[8] * d2;
+
+            integrate(dx, dy, dTheta);
+        }
+
+        lastPositions[0] = left;
+        lastPositions[1] = right;
+        lastPositions[2] = front;
+        hasLastPositions = true;
+    }
+
+    /**
+     * Sets the robot-relative velocity from the wheel velocities.
+     */
+    public void updateVelocity(double left, double right, double front) {
+        velX = inverse[0] * left + inverse[1] * right + inverse[2] * front;
+        velY = inverse[3] * left + inverse[4] * right + inverse[5] * front;
+        velHeading = inverse[6] * left + inverse[7] * right + inverse[8] * front;
+    }
+
+    /**
+     * Applies a robot-relative pose delta with the pose exponential, like
+     * {@code Kinematics.relativeOdometryUpdate}.
+     */
+    public void integrate(double dx, double dy, double dTheta) {
+        double sineTerm, cosTerm;
+        if (Math.abs(dTheta) < 1e-6) {
+            sineTerm = 1.0 - dTheta * dTheta / 6.0;
+            cosTerm = dTheta / 2.0;
+        } else {
+            sineTerm = Math.sin(dTheta) / dTheta;
+            cosTerm = (1 - Math.cos(dTheta)) / dTheta;
+        }
+
+        double localX = sineTerm * dx - cosTerm * dy;
+        double localY = cosTerm * dx + sineTerm * dy;
+
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+        x += localX * cos - localY * sin;
+        y += localX * sin + localY * cos;
+        heading = Angle.norm(heading + dTheta);
+    }
+
+    public void setPose(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        hasLastPositions = false;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getHeading() {
+        return heading;
+    }
+
+    public double getVelX() {
+        return velX;
+    }
+
+    public double getVelY() {
+        return velY;
+    }
+
+    public double getVelHeading() {
+        return velHeading;
+    }
+}
@@ -168,7 +168,7 @@ public class movementTest extends LinearOpMode {
         //robot.carriage.setDirection(Servo.Direction.FORWARD);
 
         for (DcMotor dcMotor : allMotors) {
-            dcMotor.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+            robot.output.setMode(dcMotor, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
         }
 
     }   // end class
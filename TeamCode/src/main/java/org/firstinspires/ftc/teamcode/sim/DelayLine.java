@@ -0,0 +1,44 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+/**
+ * Recent samples of a few channels, so a simulated sensor can return what it measured a fixed
+ * latency ago. Preallocated; the oldest sample is overwritten.
+ */
+class DelayLine {
+    private final int channels;
+    private final long[] times;
+    private final double[] values;
+    private int newest = -1;
+    private int count;
+
+    DelayLine(int channels, double latency, double step) {
+        this.channels = channels;
+        int capacity = (int) Math.ceil(latency / step) + 2;
+        times = new long[capacity];
+        values = new double[capacity * channels];
+    }
+
+    void record(long time, double[] sample) {
+        newest = (newest + 1) % times.length;
+        times[newest] = time;
+        System.arraycopy(sample, 0, values, newest * channels, channels);
+        count = Math.min(count + 1, times.length);
+    }
+
+    void clear() {
+        newest = -1;
+        count = 0;
+    }
+
+    /**
+     * Copies the newest sample taken at or before {@code time} into {@code out}, or the oldest one
+     * kept if they are all newer.
+     */
+    void read(long time, double[] out) {
+        int index = newest;
+        for (int i = 1; i < count && times[index] > time; i++) {
+            index = index == 0 ? times.length - 1 : index - 1;
+        }
+        System.arraycopy(values, index * channels, out, 0, channels);
+    }
+}
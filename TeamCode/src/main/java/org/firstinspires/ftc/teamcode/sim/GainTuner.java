@@ -0,0 +1,385 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.teamcode.DriveGains;
+import org.firstinspires.ftc.teamcode.RealRobot;
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Searches the follower PID gains ({@link DriveGains}) with Nelder-Mead, scoring each candidate by
+ * following a test sequence on {@link MonteCarloEvaluator} simulations.
+ * <p>
+ * The simulated robot is {@link MonteCarloEvaluator#baseParameters}, whose drive model defaults
+ * to {@link DriveConstants}' feedforward. Searching the feedforward against that only finds the
+ * constants again, so by default only the PID gains are tuned. To fit the feedforward too, set
+ * the base parameters' kV/kA/kStatic to what the real robot measures (e.g. from a logged run's
+ * motor power against velocity) and use {@link #feedforwardSteps()}. Every
+ * candidate is scored on the same perturbed trials (the evaluator's seed is fixed), so the cost is
+ * a deterministic function of the gains, which Nelder-Mead needs.
+ * <p>
+ * Candidates are evaluated in parallel on a fork-join pool: the starting simplex all at once, and
+ * every iteration the reflection, expansion and both contractions at once, of which the usual
+ * Nelder-Mead rules then pick one. Each candidate's trials are forked in the same pool.
+ * <p>
+ * GainTunerTest runs a full tune and writes the result when given {@code -PtuneGains=<file>}.
+ */
+public class GainTuner {
+    private static final double REFLECTION = 1, EXPANSION = 2, CONTRACTION = 0.5, SHRINK = 0.5;
+
+    public MonteCarloEvaluator evaluator = new MonteCarloEvaluator();
+    public int trialsPerCandidate = 8;
+
+    public DriveGains start = DriveGains.current();
+    // size of the starting simplex along each gain; gains with a step of 0 aren't tuned
+    public DriveGains steps = defaultSteps();
+
+    public int maxEvaluations = 400;
+    // stop once the simplex's costs are within this fraction of the best
+    public double tolerance = 1e-3;
+
+    // the cost of a trial, in inches: RMS tracking error plus final error, with radians weighted
+    // as this many inches, plus these for running late or not finishing at all
+    public double headingWeight = 10; // in/rad
+    public double finalErrorWeight = 0.5;
+    public double latenessWeight = 2; // in/s
+    public double timeoutCost = 100; // in
+
+    // the test drive; by default FollowerPIDTuner's square with a strafe, so every axis is exercised
+    public Function<RealRobot, TrajectorySequence> sequence = robot -> robot.trajectorySequenceBuilder(new Pose2d(-24, -24, 0))
+            .forward(48)
+            .turn(Math.toRadians(90))
+            .forward(48)
+            .strafeLeft(24)
+            .strafeRight(24)
+            .turn(Math.toRadians(90))
+            .forward(48)
+            .turn(Math.toRadians(90))
+            .forward(48)
+            .turn(Math.toRadians(90))
+            .build();
+
+    /**
+     * @return steps for the PID gains only; the feedforward stays at the start's
+     */
+    public static DriveGains defaultSteps() {
+        DriveGains steps = new DriveGains();
+        steps.translationalP = 2;
+        steps.translationalD = 0.2;
+        steps.headingP = 2;
+        steps.headingD = 0.2;
+        return steps;
+    }
+
+    /**
+     * @return {@link #defaultSteps()} plus the feedforward; only meaningful once the simulated
+     * robot's feedforward is set from measurements rather than from the constants being tuned
+     */
+    public static DriveGains feedforwardSteps() {
+        DriveGains steps = defaultSteps();
+        steps.kV = 0.1 * DriveConstants.kV;
+        steps.kA = 0.001;
+        steps.kStatic = 0.02;
+        return steps;
+    }
+
+    public static class Iteration {
+        public final int iteration;
+        public final int evaluations;
+        public final double bestCost;
+        public final double worstCost;
+        public final double seconds;
+        public final String move;
+
+        Iteration(int iteration, int evaluations, double bestCost, double worstCost, double seconds, String move) {
+            this.iteration = iteration;
+            this.evaluations = evaluations;
+            this.bestCost = bestCost;
+            this.worstCost = worstCost;
+            this.seconds = seconds;
+            this.move = move;
+        }
+    }
+
+    public static class Result {
+        public final DriveGains start, best;
+        public final double startCost, bestCost;
+        public final List<Iteration> history;
+        public final int evaluations;
+        public final boolean converged;
+        public final double seconds;
+
+        Result(DriveGains start, DriveGains best, double startCost, double bestCost, List<Iteration> history,
+               int evaluations, boolean converged, double seconds) {
+            this.start = start;
+            this.best = best;
+            this.startCost = startCost;
+            this.bestCost = bestCost;
+            this.history = history;
+            this.evaluations = evaluations;
+            this.converged = converged;
+            this.seconds = seconds;
+        }
+
+        public String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%s after %d evaluations in %.1f s; cost %.3f -> %.3f%n%n",
+                    converged ? "converged" : "stopped", evaluations, seconds, startCost, bestCost));
+            sb.append(String.format(Locale.US, "%6s %6s %10s %10s %8s  %s%n",
+                    "iter", "evals", "best", "worst", "time (s)", "move"));
+            for (Iteration it : history) {
+                sb.append(String.format(Locale.US, "%6d %6d %10.3f %10.3f %8.1f  %s%n",
+                        it.iteration, it.evaluations, it.bestCost, it.worstCost, it.seconds, it.move));
+            }
+            sb.append(String.format(Locale.US, "%nstart: %s%nbest:  %s%n", start, best));
+            return sb.toString();
+        }
+
+        /**
+         * Writes the best gains. Copied to {@link RealRobot#TUNED_GAINS_FILE} on the robot, they're
+         * followed by {@link RealRobot#withTunedGains} when {@link RealRobot#LOAD_TUNED_GAINS} is set.
+         */
+        public void write(File file) throws IOException {
+            best.write(file);
+        }
+    }
+
+    /**
+     * Tunes on all cores.
+     */
+    public Result tune() {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return tune(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public Result tune(ForkJoinPool pool) {
+        return pool.invoke(ForkJoinTask.adapt(() -> optimize(pool)));
+    }
+
+    private Result optimize(ForkJoinPool pool) {
+        long startNanos = System.nanoTime();
+
+        // only the gains with a step are searched; the simplex is in units of each gain's step
+        double[] origin = toArray(start);
+        double[] scale = toArray(steps);
+        int[] tuned = new int[scale.length];
+        int n = 0;
+        for (int i = 0; i < scale.length; i++) {
+            if (scale[i] != 0) {
+                tuned[n++] = i;
+            }
+        }
+        if (n == 0) {
+            throw new IllegalArgumentException("no gain has a step, so there's nothing to tune");
+        }
+        Space space = new Space(origin, scale, tuned, n);
+
+        double[][] points = new double[n + 1][n];
+        for (int i = 0; i < n; i++) {
+            points[i + 1][i] = 1;
+        }
+        double[] costs = evaluateAll(pool, space, points);
+        int evaluations = n + 1;
+        double startCost = costs[0];
+
+        List<Iteration> history = new ArrayList<>();
+        boolean converged = false;
+        int iteration = 0;
+        while (evaluations < maxEvaluations) {
+            sort(points, costs);
+            if (costs[n] - costs[0] <= tolerance * Math.abs(costs[0])) {
+                converged = true;
+                break;
+            }
+
+            double[] centroid = new double[n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    centroid[j] += points[i][j] / n;
+                }
+            }
+            double[] worst = points[n];
+            double[][] trials = {
+                    lerp(centroid, worst, -REFLECTION),
+                    lerp(centroid, worst, -REFLECTION * EXPANSION),
+                    lerp(centroid, worst, -REFLECTION * CONTRACTION),
+                    lerp(centroid, worst, CONTRACTION)
+            };
+            double[] trialCosts = evaluateAll(pool, space, trials);
+            evaluations += trials.length;
+            double reflected = trialCosts[0], expanded = trialCosts[1],
+                    outside = trialCosts[2], inside = trialCosts[3];
+
+            String move;
+            if (reflected < costs[0]) {
+                if (expanded < reflected) {
+                    points[n] = trials[1];
+                    costs[n] = expanded;
+                    move = "expand";
+                } else {
+                    points[n] = trials[0];
+                    costs[n] = reflected;
+                    move = "reflect";
+                }
+            } else if (reflected < costs[n - 1]) {
+                points[n] = trials[0];
+                costs[n] = reflected;
+                move = "reflect";
+            } else if (reflected < costs[n] && outside <= reflected) {
+                points[n] = trials[2];
+                costs[n] = outside;
+                move = "contract outside";
+            } else if (reflected >= costs[n] && inside < costs[n]) {
+                points[n] = trials[3];
+                costs[n] = inside;
+                move = "contract inside";
+            } else {
+                double[][] shrunk = new double[n][];
+                for (int i = 1; i <= n; i++) {
+                    shrunk[i - 1] = lerp(points[0], points[i], SHRINK);
+                }
+                double[] shrunkCosts = evaluateAll(pool, space, shrunk);
+                evaluations += n;
+                for (int i = 1; i <= n; i++) {
+                    points[i] = shrunk[i - 1];
+                    costs[i] = shrunkCosts[i - 1];
+                }
+                move = "shrink";
+            }
+
+            iteration++;
+            double best = Double.POSITIVE_INFINITY, worstCost = Double.NEGATIVE_INFINITY;
+            for (double cost : costs) {
+                best = Math.min(best, cost);
+                worstCost = Math.max(worstCost, cost);
+            }
+            history.add(new Iteration(iteration, evaluations, best, worstCost, (System.nanoTime() - startNanos) / 1e9, move));
+        }
+        sort(points, costs);
+
+        return new Result(start.copy(), space.toGains(points[0]), startCost, costs[0], history, evaluations,
+                converged, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    private double[] evaluateAll(ForkJoinPool pool, Space space, double[][] points) {
+        List<ForkJoinTask<Double>> tasks = new ArrayList<>(points.length);
+        for (double[] point : points) {
+            DriveGains gains = space.toGains(point);
+            tasks.add(ForkJoinTask.adapt(() -> cost(pool, gains)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+        double[] costs = new double[points.length];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = tasks.get(i).join();
+        }
+        return costs;
+    }
+
+    /**
+     * @return mean cost over the trials, in inches
+     */
+    public double cost(ForkJoinPool pool, DriveGains gains) {
+        MonteCarloEvaluator candidate = new MonteCarloEvaluator();
+        candidate.baseParameters = evaluator.baseParameters;
+        candidate.randomization = evaluator.randomization;
+        candidate.timeout = evaluator.timeout;
+        candidate.seed = evaluator.seed;
+        candidate.gains = gains;
+
+        MonteCarloEvaluator.Result result = candidate.evaluate(sequence, trialsPerCandidate, pool);
+        double total = 0;
+        for (MonteCarloEvaluator.Trial trial : result.trials) {
+            total += trial.trackingError + headingWeight * trial.headingTrackingError
+                    + finalErrorWeight * (trial.getPositionError() + headingWeight * Math.abs(trial.headingError))
+                    + latenessWeight * Math.max(0, trial.time - trial.duration)
+                    + (trial.timedOut ? timeoutCost : 0);
+        }
+        return total / result.trials.length;
+    }
+
+    private static double[] lerp(double[] from, double[] to, double t) {
+        double[] point = new double[from.length];
+        for (int i = 0; i < point.length; i++) {
+            point[i] = from[i] + t * (to[i] - from[i]);
+        }
+        return point;
+    }
+
+    private static void sort(double[][] points, double[] costs) {
+        // insertion sort; the simplex is nearly sorted after every iteration
+        for (int i = 1; i < costs.length; i++) {
+            double cost = costs[i];
+            double[] point = points[i];
+            int j = i - 1;
+            while (j >= 0 && costs[j] > cost) {
+                costs[j + 1] = costs[j];
+                points[j + 1] = points[j];
+                j--;
+            }
+            costs[j + 1] = cost;
+            points[j + 1] = point;
+        }
+    }
+
+    private static double[] toArray(DriveGains gains) {
+        return new double[]{
+                gains.translationalP, gains.translationalI, gains.translationalD,
+                gains.headingP, gains.headingI, gains.headingD,
+                gains.kV, gains.kA, gains.kStatic
+        };
+    }
+
+    private static DriveGains fromArray(double[] values) {
+        DriveGains gains = new DriveGains();
+        gains.translationalP = values[0];
+        gains.translationalI = values[1];
+        gains.translationalD = values[2];
+        gains.headingP = values[3];
+        gains.headingI = values[4];
+        gains.headingD = values[5];
+        gains.kV = values[6];
+        gains.kA = values[7];
+        gains.kStatic = values[8];
+        return gains;
+    }
+
+    /**
+     * Maps simplex points, in steps away from the start along the tuned gains, to gains.
+     */
+    private static class Space {
+        private final double[] origin, scale;
+        private final int[] tuned;
+        private final int dimensions;
+
+        Space(double[] origin, double[] scale, int[] tuned, int dimensions) {
+            this.origin = origin;
+            this.scale = scale;
+            this.tuned = tuned;
+            this.dimensions = dimensions;
+        }
+
+        DriveGains toGains(double[] point) {
+            double[] values = origin.clone();
+            for (int i = 0; i < dimensions; i++) {
+                int gain = tuned[i];
+                // none of the gains make sense negative; the search may step past 0 but gets 0
+                values[gain] = Math.max(0, origin[gain] + point[i] * scale[gain]);
+            }
+            return fromArray(values);
+        }
+    }
+}
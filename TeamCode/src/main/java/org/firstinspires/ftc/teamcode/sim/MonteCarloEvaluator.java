@@ -0,0 +1,290 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.firstinspires.ftc.teamcode.DriveGains;
+import org.firstinspires.ftc.teamcode.RealRobot;
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Runs a trajectory sequence through {@link RealRobot} on many {@link SimulatedRobot}s, each with
+ * randomly perturbed battery, wheel slip, encoder noise and loop jitter, and reports how long it
+ * took and where the robot really ended up.
+ * <p>
+ * The follower gains and feedforward are {@link #gains}, or the current tunables; the velocity and
+ * acceleration limits are whatever the sequence was built with. Evaluated with the same seed,
+ * each trial sees the same perturbations, so parameter sets are compared like for like.
+ * Trials are spread over a fork-join pool, one simulation per task; results are deterministic
+ * for a given seed regardless of the number of threads.
+ * <p>
+ * To evaluate the current tunables on the desktop, run MonteCarloEvaluatorTest with
+ * {@code -PmonteCarlo=<dir>}; it writes the summary table and the per-trial CSV to that directory.
+ */
+public class MonteCarloEvaluator {
+    /**
+     * Ranges the perturbations are drawn from, uniformly. Everything else is the base parameters'.
+     */
+    public static class Randomization {
+        public double minBatteryVoltage = 12.0, maxBatteryVoltage = 13.8; // V
+        public double minBatteryResistance = 0.01, maxBatteryResistance = 0.08; // ohm
+        public double maxTrackingSlip = 0.02;
+        public double maxEncoderNoise = 1; // ticks
+        public double maxLoopJitter = 0.004; // s
+        public double maxImuNoise = 0.002; // rad
+
+        SimulationParameters apply(SimulationParameters base, Random random) {
+            SimulationParameters p = base.copy();
+            p.batteryVoltage = uniform(random, minBatteryVoltage, maxBatteryVoltage);
+            p.batteryResistance = uniform(random, minBatteryResistance, maxBatteryResistance);
+            p.trackingSlip = uniform(random, 0, maxTrackingSlip);
+            p.encoderNoise = uniform(random, 0, maxEncoderNoise);
+            p.loopJitter = uniform(random, 0, maxLoopJitter);
+            p.imuNoise = uniform(random, 0, maxImuNoise);
+            p.seed = random.nextLong();
+            return p;
+        }
+
+        private static double uniform(Random random, double min, double max) {
+            return min + (max - min) * random.nextDouble();
+        }
+    }
+
+    public static class Trial {
+        public final int index;
+        public final SimulationParameters parameters;
+        public double time; // s
+        public double duration; // s, of the sequence, i.e. the time a perfect run takes
+        public boolean timedOut;
+        // true final pose minus the sequence's end, in the field frame
+        public double xError, yError, headingError;
+        // distance between where the localizer thinks the robot ended up and where it did
+        public double localizationError;
+        // RMS over the run of the follower's error, target minus estimate
+        public double trackingError, headingTrackingError;
+
+        Trial(int index, SimulationParameters parameters) {
+            this.index = index;
+            this.parameters = parameters;
+        }
+
+        public double getPositionError() {
+            return Math.hypot(xError, yError);
+        }
+    }
+
+    public static class Result {
+        public final Trial[] trials;
+        public final double wallSeconds;
+
+        Result(Trial[] trials, double wallSeconds) {
+            this.trials = trials;
+            this.wallSeconds = wallSeconds;
+        }
+
+        public String summary() {
+            int n = trials.length;
+            double[] times = new double[n], positions = new double[n], headings = new double[n],
+                    localization = new double[n], tracking = new double[n], headingTracking = new double[n];
+            int timeouts = 0;
+            double simulatedSeconds = 0;
+            for (int i = 0; i < n; i++) {
+                Trial trial = trials[i];
+                times[i] = trial.time;
+                positions[i] = trial.getPositionError();
+                headings[i] = Math.toDegrees(Math.abs(trial.headingError));
+                localization[i] = trial.localizationError;
+                tracking[i] = trial.trackingError;
+                headingTracking[i] = Math.toDegrees(trial.headingTrackingError);
+                simulatedSeconds += trial.time;
+                if (trial.timedOut) {
+                    timeouts++;
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%d trials, %d timed out; %.1f s simulated in %.1f s (%.0fx real time)%n%n",
+                    n, timeouts, simulatedSeconds, wallSeconds, simulatedSeconds / wallSeconds));
+            sb.append(String.format(Locale.US, "%-22s %8s %8s %8s %8s %8s %8s %8s%n",
+                    "", "mean", "sd", "min", "p50", "p90", "p95", "max"));
+            appendRow(sb, "completion time (s)", times);
+            appendRow(sb, "position error (in)", positions);
+            appendRow(sb, "heading error (deg)", headings);
+            appendRow(sb, "localization err (in)", localization);
+            appendRow(sb, "RMS tracking err (in)", tracking);
+            appendRow(sb, "RMS heading err (deg)", headingTracking);
+            return sb.toString();
+        }
+
+        private static void appendRow(StringBuilder sb, String name, double[] values) {
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+            double sum = 0, sumSquares = 0;
+            for (double value : sorted) {
+                sum += value;
+                sumSquares += value * value;
+            }
+            int n = sorted.length;
+            double mean = n == 0 ? 0 : sum / n;
+            double sd = n < 2 ? 0 : Math.sqrt(Math.max(0, (sumSquares - n * mean * mean) / (n - 1)));
+            sb.append(String.format(Locale.US, "%-22s %8.3f %8.3f %8.3f %8.3f %8.3f %8.3f %8.3f%n", name,
+                    mean, sd, percentile(sorted, 0), percentile(sorted, 0.5), percentile(sorted, 0.9),
+                    percentile(sorted, 0.95), percentile(sorted, 1)));
+        }
+
+        private static double percentile(double[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - (p > 0 ? 1 : 0))];
+        }
+
+        /**
+         * Writes one row per trial: its perturbations, then its outcome.
+         */
+        public void writeCsv(Writer writer) throws IOException {
+            writer.write("trial,seed,battery_voltage,battery_resistance,tracking_slip,encoder_noise,loop_jitter,imu_noise,"
+                    + "time,timed_out,x_error,y_error,heading_error_deg,position_error,localization_error,"
+                    + "tracking_error,heading_tracking_error_deg\n");
+            for (Trial trial : trials) {
+                SimulationParameters p = trial.parameters;
+                writer.write(String.format(Locale.US, "%d,%d,%.4f,%.4f,%.5f,%.4f,%.5f,%.5f,%.4f,%b,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f\n",
+                        trial.index, p.seed, p.batteryVoltage, p.batteryResistance, p.trackingSlip, p.encoderNoise,
+                        p.loopJitter, p.imuNoise, trial.time, trial.timedOut, trial.xError, trial.yError,
+                        Math.toDegrees(trial.headingError), trial.getPositionError(), trial.localizationError,
+                        trial.trackingError, Math.toDegrees(trial.headingTrackingError)));
+            }
+        }
+
+        public void writeCsv(File file) throws IOException {
+            try (Writer writer = new FileWriter(file)) {
+                writeCsv(writer);
+            }
+        }
+    }
+
+    public SimulationParameters baseParameters = new SimulationParameters();
+    // null to follow with the tunables
+    public DriveGains gains;
+    public Randomization randomization = new Randomization();
+    // how long past the sequence's duration a trial may run before it counts as timed out
+    public double timeout = 5; // s
+    public long seed = 0;
+
+    /**
+     * Evaluates a sequence without markers, or with markers that don't touch the robot, on all
+     * cores.
+     */
+    public Result evaluate(TrajectorySequence sequence, int trials) {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return evaluate(robot -> sequence, trials, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @param sequence builds the sequence for each trial's robot, so markers can act on that robot
+     */
+    public Result evaluate(Function<RealRobot, TrajectorySequence> sequence, int trials, ForkJoinPool pool) {
+        Trial[] results = new Trial[trials];
+        long start = System.nanoTime();
+        TrialTask task = new TrialTask(sequence, results, 0, trials);
+        if (ForkJoinTask.getPool() == pool) {
+            // already a task in the pool, e.g. one candidate of a tuner; fork from here
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+        return new Result(results, (System.nanoTime() - start) / 1e9);
+    }
+
+    private Trial runTrial(Function<RealRobot, TrajectorySequence> sequenceFactory, int index) {
+        // each trial's perturbations depend only on the seed and its index, not on scheduling
+        Random random = new Random(seed + index * 0x9E3779B97F4A7C15L);
+        Trial trial = new Trial(index, randomization.apply(baseParameters, random));
+
+        SimulatedRobot simulation = new SimulatedRobot(trial.parameters);
+        SimulationClock clock = simulation.getClock();
+        RealRobot robot = gains != null ? simulation.createRobot(null, gains) : simulation.createRobot(null);
+        TrajectorySequence sequence = sequenceFactory.apply(robot);
+
+        Pose2d startPose = sequence.start();
+        simulation.setPose(startPose);
+        robot.setPoseEstimate(startPose);
+
+        trial.duration = sequence.duration();
+        double startTime = clock.seconds();
+        double deadline = startTime + trial.duration + timeout;
+        robot.followTrajectorySequenceAsync(sequence);
+        robot.loopScheduler.reset();
+        double sumSquares = 0, headingSumSquares = 0;
+        int loops = 0;
+        while (robot.isBusy()) {
+            if (clock.seconds() >= deadline) {
+                trial.timedOut = true;
+                break;
+            }
+            robot.update();
+            Pose2d error = robot.getLastError();
+            sumSquares += error.getX() * error.getX() + error.getY() * error.getY();
+            headingSumSquares += error.getHeading() * error.getHeading();
+            loops++;
+            robot.loopScheduler.awaitNextTick();
+        }
+        trial.time = clock.seconds() - startTime;
+        if (loops > 0) {
+            trial.trackingError = Math.sqrt(sumSquares / loops);
+            trial.headingTrackingError = Math.sqrt(headingSumSquares / loops);
+        }
+
+        Pose2d end = sequence.end();
+        Pose2d actual = simulation.getPose();
+        trial.xError = actual.getX() - end.getX();
+        trial.yError = actual.getY() - end.getY();
+        trial.headingError = Angle.normDelta(actual.getHeading() - end.getHeading());
+        Pose2d estimate = robot.getPoseEstimate();
+        trial.localizationError = Math.hypot(estimate.getX() - actual.getX(), estimate.getY() - actual.getY());
+        return trial;
+    }
+
+    private class TrialTask extends RecursiveAction {
+        private final Function<RealRobot, TrajectorySequence> sequence;
+        private final Trial[] results;
+        private final int from, to;
+
+        TrialTask(Function<RealRobot, TrajectorySequence> sequence, Trial[] results, int from, int to) {
+            this.sequence = sequence;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            // a trial is thousands of physics steps, so split all the way down to single trials
+            if (to - from == 1) {
+                results[from] = runTrial(sequence, from);
+                return;
+            }
+            if (to <= from) {
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TrialTask(sequence, results, from, mid), new TrialTask(sequence, results, mid, to));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.external.navigation.Axis;
+import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+
+/**
+ * The hub IMU of a simulated robot, lying flat: it measures yaw and yaw rate only, pitch and roll
+ * are always 0. {@link SimulatedRobot} writes what it measures, already delayed and noisy.
+ */
+public class SimulatedImu implements IMU {
+    private final SimulationClock clock;
+
+    // robot frame, radians; written by SimulatedRobot
+    private double yaw;
+    private double yawRate;
+    private double yawOffset;
+
+    SimulatedImu(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    void setMeasurement(double yaw, double yawRate) {
+        this.yaw = yaw;
+        this.yawRate = yawRate;
+    }
+
+    private double getYaw() {
+        return AngleUnit.normalizeRadians(yaw - yawOffset);
+    }
+
+    @Override
+    public boolean initialize(Parameters parameters) {
+        return true;
+    }
+
+    @Override
+    public void resetYaw() {
+        yawOffset = yaw;
+    }
+
+    @Override
+    public YawPitchRollAngles getRobotYawPitchRollAngles() {
+        return new YawPitchRollAngles(AngleUnit.RADIANS, getYaw(), 0, 0, clock.nanoTime());
+    }
+
+    @Override
+    public Orientation getRobotOrientation(AxesReference reference, AxesOrder order, AngleUnit angleUnit) {
+        // rotation about Z only, so each order just puts the yaw wherever Z comes in it
+        float[] angles = new float[3];
+        Axis[] axes = order.axes();
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] == Axis.Z) {
+                angles[i] = (float) angleUnit.fromRadians(getYaw());
+            }
+        }
+        return new Orientation(reference, order, angleUnit, angles[0], angles[1], angles[2], clock.nanoTime());
+    }
+
+    @Override
+    public Quaternion getRobotOrientationAsQuaternion() {
+        double half = getYaw() / 2;
+        return new Quaternion((float) Math.cos(half), 0, 0, (float) Math.sin(half), clock.nanoTime());
+    }
+
+    @Override
+    public AngularVelocity getRobotAngularVelocity(AngleUnit angleUnit) {
+        return new AngularVelocity(angleUnit, 0, 0, (float) angleUnit.fromRadians(yawRate), clock.nanoTime());
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated IMU";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulation";
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
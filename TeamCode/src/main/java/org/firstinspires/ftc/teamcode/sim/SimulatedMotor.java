@@ -0,0 +1,337 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.DcMotorController;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.PIDCoefficients;
+import com.qualcomm.robotcore.hardware.PIDFCoefficients;
+import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.CurrentUnit;
+import org.firstinspires.ftc.teamcode.util.VoltageService;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A motor port of a simulated hub. It behaves like the SDK's motor: the direction flips both the
+ * power and the encoder, the run modes are applied by the "hub" ({@link #command(double)}) and
+ * the velocity is reported the way the hub does it, in steps of 20 counts per second and
+ * truncated to 16 bits.
+ * <p>
+ * {@link SimulatedRobot} decides what the port's encoder measures: the motor's own shaft for the
+ * drive motors, a tracking wheel for the ports the odometry pods are plugged into.
+ */
+public class SimulatedMotor implements DcMotorEx {
+    // error at which RUN_TO_POSITION stops applying the full power; below it the hub ramps down
+    private static final double RUN_TO_POSITION_RAMP_TICKS = 50;
+
+    private final String name;
+    private final int port;
+    private final double ticksPerRev;
+    private final double maxTicksPerSecond;
+
+    private Direction direction = Direction.FORWARD;
+    private RunMode mode = RunMode.RUN_WITHOUT_ENCODER;
+    private ZeroPowerBehavior zeroPowerBehavior = ZeroPowerBehavior.BRAKE;
+    private double power;
+    private boolean enabled = true;
+    private int targetPosition;
+    private int targetPositionTolerance = 5;
+    private final Map<RunMode, PIDFCoefficients> pidfCoefficients = new EnumMap<>(RunMode.class);
+    private MotorConfigurationType motorType;
+    private double currentAlert = 5; // A
+
+    // encoder as the port sees it, before the direction is applied; written by SimulatedRobot
+    private double rawPosition;
+    private double rawVelocity;
+    private int encoderOffset;
+    double current;
+
+    public SimulatedMotor(String name, int port, double ticksPerRev, double maxRpm) {
+        this.name = name;
+        this.port = port;
+        this.ticksPerRev = ticksPerRev;
+        this.maxTicksPerSecond = maxRpm * ticksPerRev / 60;
+    }
+
+    private int sign() {
+        return direction == Direction.FORWARD ? 1 : -1;
+    }
+
+    void setEncoder(double rawPosition, double rawVelocity) {
+        this.rawPosition = rawPosition;
+        this.rawVelocity = rawVelocity;
+    }
+
+    /**
+     * What the hub drives the motor with, as a fraction of the battery voltage on the motor's own
+     * shaft (i.e. with the direction applied).
+     */
+    double command(double voltage) {
+        if (!enabled) {
+            return 0;
+        }
+
+        double output;
+        switch (mode) {
+            case RUN_TO_POSITION:
+                int error = targetPosition - getCurrentPosition();
+                output = Math.signum(error) * Math.abs(power)
+                        * Math.min(1, Math.abs(error) / RUN_TO_POSITION_RAMP_TICKS)
+                        * VoltageService.NOMINAL_VOLTAGE / voltage;
+                break;
+            case RUN_USING_ENCODER:
+                // the hub's velocity loop takes the battery voltage out
+                output = power * VoltageService.NOMINAL_VOLTAGE / voltage;
+                break;
+            case STOP_AND_RESET_ENCODER:
+                output = 0;
+                break;
+            default:
+                output = power;
+        }
+        return Math.max(-1, Math.min(1, output)) * sign();
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated Motor";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulation; port " + port;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        direction = Direction.FORWARD;
+        power = 0;
+    }
+
+    @Override
+    public void close() {
+        power = 0;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public void setPower(double power) {
+        this.power = Math.max(-1, Math.min(1, power));
+    }
+
+    @Override
+    public double getPower() {
+        return power;
+    }
+
+    @Override
+    public MotorConfigurationType getMotorType() {
+        if (motorType == null) {
+            motorType = MotorConfigurationType.getUnspecifiedMotorType();
+        }
+        return motorType;
+    }
+
+    @Override
+    public void setMotorType(MotorConfigurationType motorType) {
+        this.motorType = motorType;
+    }
+
+    /**
+     * @return null; there is no controller behind a simulated port
+     */
+    @Override
+    public DcMotorController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return port;
+    }
+
+    @Override
+    public void setZeroPowerBehavior(ZeroPowerBehavior zeroPowerBehavior) {
+        this.zeroPowerBehavior = zeroPowerBehavior;
+    }
+
+    @Override
+    public ZeroPowerBehavior getZeroPowerBehavior() {
+        return zeroPowerBehavior;
+    }
+
+    @Deprecated
+    @Override
+    public void setPowerFloat() {
+        zeroPowerBehavior = ZeroPowerBehavior.FLOAT;
+        power = 0;
+    }
+
+    @Override
+    public boolean getPowerFloat() {
+        return zeroPowerBehavior == ZeroPowerBehavior.FLOAT && power == 0;
+    }
+
+    @Override
+    public void setTargetPosition(int position) {
+        targetPosition = position;
+    }
+
+    @Override
+    public int getTargetPosition() {
+        return targetPosition;
+    }
+
+    @Override
+    public boolean isBusy() {
+        return mode == RunMode.RUN_TO_POSITION
+                && Math.abs(targetPosition - getCurrentPosition()) > targetPositionTolerance;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return ((int) Math.round(rawPosition) - encoderOffset) * sign();
+    }
+
+    @Override
+    public void setMode(RunMode mode) {
+        if (mode == RunMode.STOP_AND_RESET_ENCODER) {
+            encoderOffset = (int) Math.round(rawPosition);
+        }
+        this.mode = mode;
+    }
+
+    @Override
+    public RunMode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void setMotorEnable() {
+        enabled = true;
+    }
+
+    @Override
+    public void setMotorDisable() {
+        enabled = false;
+    }
+
+    @Override
+    public boolean isMotorEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setVelocity(double angularRate) {
+        setPower(angularRate / maxTicksPerSecond);
+    }
+
+    @Override
+    public void setVelocity(double angularRate, AngleUnit unit) {
+        setVelocity(unit.toDegrees(angularRate) / 360 * ticksPerRev);
+    }
+
+    /**
+     * @return counts per second as the hub reports them: in steps of 20 and truncated to 16 bits
+     */
+    @Override
+    public double getVelocity() {
+        int measured = (int) Math.round(rawVelocity / 20) * 20;
+        return (short) measured * sign();
+    }
+
+    @Override
+    public double getVelocity(AngleUnit unit) {
+        return unit.fromDegrees(rawVelocity * sign() / ticksPerRev * 360);
+    }
+
+    @Deprecated
+    @Override
+    public void setPIDCoefficients(RunMode mode, PIDCoefficients pidCoefficients) {
+        setPIDFCoefficients(mode, new PIDFCoefficients(pidCoefficients.p, pidCoefficients.i, pidCoefficients.d, 0));
+    }
+
+    @Override
+    public void setPIDFCoefficients(RunMode mode, PIDFCoefficients pidfCoefficients) {
+        this.pidfCoefficients.put(mode, new PIDFCoefficients(pidfCoefficients));
+    }
+
+    @Override
+    public void setVelocityPIDFCoefficients(double p, double i, double d, double f) {
+        setPIDFCoefficients(RunMode.RUN_USING_ENCODER, new PIDFCoefficients(p, i, d, f));
+    }
+
+    @Override
+    public void setPositionPIDFCoefficients(double p) {
+        setPIDFCoefficients(RunMode.RUN_TO_POSITION, new PIDFCoefficients(p, 0, 0, 0));
+    }
+
+    @Deprecated
+    @Override
+    public PIDCoefficients getPIDCoefficients(RunMode mode) {
+        PIDFCoefficients pidf = getPIDFCoefficients(mode);
+        return new PIDCoefficients(pidf.p, pidf.i, pidf.d);
+    }
+
+    @Override
+    public PIDFCoefficients getPIDFCoefficients(RunMode mode) {
+        PIDFCoefficients pidf = pidfCoefficients.get(mode);
+        return pidf != null ? new PIDFCoefficients(pidf) : new PIDFCoefficients();
+    }
+
+    @Override
+    public void setTargetPositionTolerance(int tolerance) {
+        targetPositionTolerance = tolerance;
+    }
+
+    @Override
+    public int getTargetPositionTolerance() {
+        return targetPositionTolerance;
+    }
+
+    @Override
+    public double getCurrent(CurrentUnit unit) {
+        return unit == CurrentUnit.AMPS ? current : current * 1000;
+    }
+
+    @Override
+    public double getCurrentAlert(CurrentUnit unit) {
+        return unit == CurrentUnit.AMPS ? currentAlert : currentAlert * 1000;
+    }
+
+    @Override
+    public void setCurrentAlert(double current, CurrentUnit unit) {
+        currentAlert = unit == CurrentUnit.AMPS ? current : current / 1000;
+    }
+
+    @Override
+    public boolean isOverCurrent() {
+        return current > currentAlert;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,306 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.firstinspires.ftc.teamcode.DriveGains;
+import org.firstinspires.ftc.teamcode.RealRobot;
+import org.firstinspires.ftc.teamcode.util.VoltageService;
+
+import java.util.Random;
+
+/**
+ * A robot that exists only in memory, for running {@link RealRobot} and everything above it (the
+ * trajectory runner, the localizers, the command scheduler) off the robot and faster than real
+ * time.
+ * <p>
+ * The simulated hardware is put in a {@link HardwareMap} under the names RealRobot looks up, so
+ * RealRobot is constructed exactly as on the robot, only with the {@link SimulationClock} in
+ * place of the system clock. Time passes only while the code waits for its next loop; then the
+ * drive is stepped in {@link SimulationParameters#physicsStep} increments:
+ * <ul>
+ * <li>each wheel follows the drive feedforward model, kV and kA with kStatic as friction, driven
+ * by what its motor is commanded at the present battery voltage</li>
+ * <li>the wheel speeds are projected onto what a rigid mecanum base can do and integrated into
+ * the field pose</li>
+ * <li>the tracking wheels measure the base's motion, optionally slipping</li>
+ * <li>the battery sags with the current the drive draws</li>
+ * <li>encoders and the IMU return what they measured a latency ago, with noise</li>
+ * <li>the control loop wakes up late by a random jitter</li>
+ * </ul>
+ * Mechanisms aren't modeled: the intake, lift and hookSp ports carry the tracking wheels'
+ * encoders, the hook's encoder stays at 0 and the servos reach their positions instantly.
+ * <p>
+ * A simulation isn't thread safe, but separate instances share no state of their own and can run
+ * on separate threads.
+ */
+public class SimulatedRobot {
+    private static final int LF = 0, LR = 1, RR = 2, RF = 3;
+    private static final int LEFT = 0, RIGHT = 1, FRONT = 2;
+    // below this a wheel counts as stopped, so static friction holds it
+    private static final double STOPPED_SPEED = 1e-3; // in/s
+
+    private final SimulationParameters parameters;
+    private final SimulationClock clock;
+    private final HardwareMap hardwareMap;
+    private final Random random;
+
+    private final SimulatedMotor[] driveMotors;
+    private final SimulatedMotor[] trackingPorts;
+    private final SimulatedImu imu;
+    private final SimulatedVoltageSensor voltageSensor;
+
+    // true state; field frame for the pose, robot frame for the velocity
+    private double x, y, heading;
+    private double vx, vy, omega;
+    private final double[] wheelSpeeds = new double[4]; // in/s
+    private final double[] wheelDistances = new double[4]; // in
+    private final double[] trackingDistances = new double[3]; // in
+    private final double[] trackingSpeeds = new double[3]; // in/s
+    private double voltage;
+    private double imuZero, imuBias;
+
+    // drive positions, drive velocities, tracking positions, tracking velocities; raw ticks
+    private final DelayLine encoders;
+    private final double[] encoderSample = new double[14];
+    private final DelayLine imuReadings;
+    private final double[] imuSample = new double[2];
+
+    public SimulatedRobot() {
+        this(new SimulationParameters());
+    }
+
+    public SimulatedRobot(SimulationParameters parameters) {
+        this.parameters = parameters.copy();
+        parameters = this.parameters;
+        clock = new SimulationClock(this::advance);
+        random = new Random(parameters.seed);
+        voltage = parameters.batteryVoltage;
+
+        hardwareMap = new HardwareMap(null, null);
+        String[] driveNames = {"lf", "lr", "rr", "rf"};
+        driveMotors = new SimulatedMotor[4];
+        for (int i = 0; i < 4; i++) {
+            driveMotors[i] = new SimulatedMotor(driveNames[i], i, parameters.driveTicksPerRev, parameters.driveMaxRpm);
+            hardwareMap.dcMotor.put(driveNames[i], driveMotors[i]);
+        }
+        String[] trackingNames = {"intake", "lift", "hookSp"};
+        trackingPorts = new SimulatedMotor[3];
+        for (int i = 0; i < 3; i++) {
+            trackingPorts[i] = new SimulatedMotor(trackingNames[i], i, parameters.driveTicksPerRev, parameters.driveMaxRpm);
+            hardwareMap.dcMotor.put(trackingNames[i], trackingPorts[i]);
+        }
+        hardwareMap.dcMotor.put("hook", new SimulatedMotor("hook", 3, parameters.driveTicksPerRev, parameters.driveMaxRpm));
+        hardwareMap.servo.put("dropper", new SimulatedServo("dropper", 0));
+        hardwareMap.servo.put("launcher", new SimulatedServo("launcher", 1));
+
+        imu = new SimulatedImu(clock);
+        hardwareMap.put("imu", imu);
+        voltageSensor = new SimulatedVoltageSensor(voltage);
+        hardwareMap.voltageSensor.put("Control Hub", voltageSensor);
+
+        encoders = new DelayLine(encoderSample.length, parameters.encoderLatency, parameters.physicsStep);
+        imuReadings = new DelayLine(imuSample.length, parameters.imuLatency, parameters.physicsStep);
+        latchReadings();
+    }
+
+    /**
+     * @return a RealRobot driving this simulation; telemetry may be null
+     */
+    public RealRobot createRobot(Telemetry telemetry) {
+        return new RealRobot(hardwareMap, telemetry, clock);
+    }
+
+    /**
+     * @return a RealRobot driving this simulation with its own gains instead of the tunables
+     */
+    public RealRobot createRobot(Telemetry telemetry, DriveGains gains) {
+        return new RealRobot(hardwareMap, telemetry, clock, gains);
+    }
+
+    public HardwareMap getHardwareMap() {
+        return hardwareMap;
+    }
+
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return a copy of the parameters this simulation was created with
+     */
+    public SimulationParameters getParameters() {
+        return parameters.copy();
+    }
+
+    /**
+     * @return where the robot really is, as opposed to where its localizer thinks it is
+     */
+    public Pose2d getPose() {
+        return new Pose2d(x, y, heading);
+    }
+
+    /**
+     * @return the robot's true velocity in its own frame
+     */
+    public Pose2d getPoseVelocity() {
+        return new Pose2d(vx, vy, omega);
+    }
+
+    public double getBatteryVoltage() {
+        return voltage;
+    }
+
+    /**
+     * Puts the robot down at rest at {@code pose}, as at the start of a match: the IMU reads 0 there
+     * and the sensors forget what they measured before. The encoders keep their counts.
+     */
+    public void setPose(Pose2d pose) {
+        x = pose.getX();
+        y = pose.getY();
+        heading = pose.getHeading();
+        vx = vy = omega = 0;
+        for (int i = 0; i < 4; i++) {
+            wheelSpeeds[i] = 0;
+        }
+        imuZero = heading;
+        imuBias = 0;
+
+        encoders.clear();
+        imuReadings.clear();
+        latchReadings();
+    }
+
+    private void advance(long nanos) {
+        if (parameters.loopJitter > 0) {
+            nanos += Math.round(Math.abs(random.nextGaussian()) * parameters.loopJitter * 1e9);
+        }
+        long step = Math.max(1, Math.round(parameters.physicsStep * 1e9));
+        while (nanos > 0) {
+            long dt = Math.min(step, nanos);
+            step(dt / 1e9);
+            clock.advance(dt);
+            nanos -= dt;
+            latchReadings();
+        }
+    }
+
+    private void step(double dt) {
+        SimulationParameters p = parameters;
+        double timeConstant = Math.max(p.kA, p.kV * p.minTimeConstant);
+        double totalCurrent = 0;
+
+        for (int i = 0; i < 4; i++) {
+            SimulatedMotor motor = driveMotors[i];
+            double command = motor.command(voltage);
+            // in the feedforward's units, where 1 is full power at the nominal voltage
+            double u = p.driveMounting[i] * command * voltage / VoltageService.NOMINAL_VOLTAGE;
+            double v = wheelSpeeds[i];
+
+            double acceleration;
+            if (command == 0 && motor.getZeroPowerBehavior() == DcMotor.ZeroPowerBehavior.FLOAT) {
+                acceleration = -v / p.floatTimeConstant;
+            } else {
+                double effort = u - p.kV * v;
+                if (Math.abs(v) > STOPPED_SPEED) {
+                    effort -= p.kStatic * Math.signum(v);
+                } else if (Math.abs(u) <= p.kStatic) {
+                    effort = 0;
+                    wheelSpeeds[i] = v = 0;
+                } else {
+                    effort -= p.kStatic * Math.signum(u);
+                }
+                acceleration = effort / timeConstant;
+            }
+            double next = v + acceleration * dt;
+            // friction stops a wheel, it doesn't reverse it
+            if (command == 0 && Math.signum(next) != Math.signum(v)) {
+                next = 0;
+            }
+            wheelSpeeds[i] = next;
+
+            motor.current = p.stallCurrent * Math.abs(u - p.kV * next);
+            totalCurrent += motor.current;
+        }
+        voltage = Math.max(0, p.batteryVoltage - p.batteryResistance * totalCurrent);
+        voltageSensor.voltage = voltage;
+
+        // the base is rigid, so the wheels only get to move in ways a mecanum base can
+        double k = (p.trackWidth + p.wheelBase) / 2;
+        double lat = p.lateralMultiplier;
+        vx = (wheelSpeeds[LF] + wheelSpeeds[LR] + wheelSpeeds[RR] + wheelSpeeds[RF]) / 4;
+        vy = (-wheelSpeeds[LF] + wheelSpeeds[LR] - wheelSpeeds[RR] + wheelSpeeds[RF]) / (4 * lat);
+        omega = (-wheelSpeeds[LF] - wheelSpeeds[LR] + wheelSpeeds[RR] + wheelSpeeds[RF]) / (4 * k);
+        wheelSpeeds[LF] = vx - lat * vy - k * omega;
+        wheelSpeeds[LR] = vx + lat * vy - k * omega;
+        wheelSpeeds[RR] = vx - lat * vy + k * omega;
+        wheelSpeeds[RF] = vx + lat * vy + k * omega;
+        for (int i = 0; i < 4; i++) {
+            wheelDistances[i] += wheelSpeeds[i] * dt;
+        }
+
+        double midHeading = heading + omega * dt / 2;
+        double cos = Math.cos(midHeading), sin = Math.sin(midHeading);
+        x += (vx * cos - vy * sin) * dt;
+        y += (vx * sin + vy * cos) * dt;
+        heading = normalize(heading + omega * dt);
+
+        trackingSpeeds[LEFT] = vx - omega * p.lateralDistance / 2;
+        trackingSpeeds[RIGHT] = vx + omega * p.lateralDistance / 2;
+        trackingSpeeds[FRONT] = vy + omega * p.forwardOffset;
+        for (int i = 0; i < 3; i++) {
+            double slip = p.trackingSlip > 0 ? 1 + p.trackingSlip * random.nextGaussian() : 1;
+            trackingDistances[i] += trackingSpeeds[i] * dt * slip;
+        }
+
+        imuBias += p.imuDrift * dt;
+    }
+
+    private void latchReadings() {
+        SimulationParameters p = parameters;
+        long now = clock.nanoTime();
+
+        double driveTicks = p.driveTicksPerInch();
+        double trackingTicks = p.trackingTicksPerInch();
+        for (int i = 0; i < 4; i++) {
+            // the raw encoder counts the motor's own shaft, which turns against the wheel where mounted reversed
+            encoderSample[i] = wheelDistances[i] * driveTicks * p.driveMounting[i];
+            encoderSample[4 + i] = wheelSpeeds[i] * driveTicks * p.driveMounting[i];
+        }
+        for (int i = 0; i < 3; i++) {
+            encoderSample[8 + i] = trackingDistances[i] * trackingTicks;
+            encoderSample[11 + i] = trackingSpeeds[i] * trackingTicks;
+        }
+        if (p.encoderNoise > 0) {
+            for (int i = 0; i < 4; i++) {
+                encoderSample[i] += p.encoderNoise * random.nextGaussian();
+            }
+            for (int i = 8; i < 11; i++) {
+                encoderSample[i] += p.encoderNoise * random.nextGaussian();
+            }
+        }
+        encoders.record(now, encoderSample);
+
+        double noise = p.imuNoise > 0 ? p.imuNoise * random.nextGaussian() : 0;
+        imuSample[0] = heading - imuZero + imuBias + noise;
+        imuSample[1] = omega + p.imuDrift;
+        imuReadings.record(now, imuSample);
+
+        encoders.read(now - Math.round(p.encoderLatency * 1e9), encoderSample);
+        for (int i = 0; i < 4; i++) {
+            driveMotors[i].setEncoder(encoderSample[i], encoderSample[4 + i]);
+        }
+        for (int i = 0; i < 3; i++) {
+            trackingPorts[i].setEncoder(encoderSample[8 + i], encoderSample[11 + i]);
+        }
+
+        imuReadings.read(now - Math.round(p.imuLatency * 1e9), imuSample);
+        imu.setMeasurement(imuSample[0], imuSample[1]);
+    }
+
+    private static double normalize(double angle) {
+        return Math.atan2(Math.sin(angle), Math.cos(angle));
+    }
+}
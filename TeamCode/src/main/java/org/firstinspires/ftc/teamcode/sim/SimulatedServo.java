@@ -0,0 +1,105 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.qualcomm.robotcore.hardware.Servo;
+import com.qualcomm.robotcore.hardware.ServoController;
+
+/**
+ * A servo port of a simulated hub. The servo is assumed to reach every commanded position
+ * instantly.
+ */
+public class SimulatedServo implements Servo {
+    private final String name;
+    private final int port;
+
+    private Direction direction = Direction.FORWARD;
+    private double position;
+    private double min = MIN_POSITION, max = MAX_POSITION;
+
+    public SimulatedServo(String name, int port) {
+        this.name = name;
+        this.port = port;
+    }
+
+    /**
+     * @return where the servo is, with the direction and range applied
+     */
+    public double getOutputPosition() {
+        double p = direction == Direction.FORWARD ? position : MAX_POSITION - position;
+        return min + p * (max - min);
+    }
+
+    @Override
+    public Manufacturer getManufacturer() {
+        return Manufacturer.Other;
+    }
+
+    @Override
+    public String getDeviceName() {
+        return "Simulated Servo";
+    }
+
+    @Override
+    public String getConnectionInfo() {
+        return "simulation; port " + port;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void resetDeviceConfigurationForOpMode() {
+        direction = Direction.FORWARD;
+        min = MIN_POSITION;
+        max = MAX_POSITION;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return null; there is no controller behind a simulated port
+     */
+    @Override
+    public ServoController getController() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return port;
+    }
+
+    @Override
+    public void setDirection(Direction direction) {
+        this.direction = direction;
+    }
+
+    @Override
+    public Direction getDirection() {
+        return direction;
+    }
+
+    @Override
+    public void setPosition(double position) {
+        this.position = Math.max(MIN_POSITION, Math.min(MAX_POSITION, position));
+    }
+
+    @Override
+    public double getPosition() {
+        return position;
+    }
+
+    @Override
+    public void scaleRange(double min, double max) {
+        this.min = Math.max(MIN_POSITION, Math.min(min, max));
+        this.max = Math.min(MAX_POSITION, Math.max(min, max));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
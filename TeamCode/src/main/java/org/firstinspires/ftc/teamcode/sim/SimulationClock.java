@@ -0,0 +1,43 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Virtual time of a {@link SimulatedRobot}. It only moves when the code under simulation waits,
+ * through {@link #sleep(long)}, which steps the physics over the waited time; the work done
+ * between waits takes no simulated time at all. That is what lets a simulation run faster than
+ * real time.
+ */
+public class SimulationClock extends NanoClock {
+    private final LongConsumer stepper;
+    // starts at a second, so nothing mistakes the first timestamps for an unset 0
+    private long nanos = 1_000_000_000L;
+
+    SimulationClock(LongConsumer stepper) {
+        this.stepper = stepper;
+    }
+
+    @Override
+    public double seconds() {
+        return nanos / 1e9;
+    }
+
+    public long nanoTime() {
+        return nanos;
+    }
+
+    void advance(long nanos) {
+        this.nanos += nanos;
+    }
+
+    /**
+     * Lets {@code nanos} of simulated time pass.
+     */
+    public void sleep(long nanos) {
+        if (nanos > 0) {
+            stepper.accept(nanos);
+        }
+    }
+}
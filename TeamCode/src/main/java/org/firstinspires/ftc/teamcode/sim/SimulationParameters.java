@@ -0,0 +1,104 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import org.firstinspires.ftc.teamcode.RealRobot;
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+import org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer;
+
+/**
+ * Physical model of the robot used by {@link SimulatedRobot}. Defaults come from the tuning
+ * constants, so the simulated robot is the one the code believes it drives; change fields on a
+ * copy to see how the code copes with a robot that differs from its tuning.
+ * <p>
+ * These are per-instance fields rather than dashboard tunables, so several simulations with
+ * different parameters can run side by side.
+ */
+public class SimulationParameters {
+    // drive wheels, in the units of the drive feedforward: power per in/s and per in/s^2
+    public double kV = DriveConstants.kV;
+    public double kA = DriveConstants.kA;
+    public double kStatic = DriveConstants.kStatic;
+    // a tuned kA of 0 would mean infinite acceleration; the wheels' time constant is at least this
+    public double minTimeConstant = 0.05; // s
+    // time constant of a wheel coasting with FLOAT zero power behavior
+    public double floatTimeConstant = 0.5; // s
+    public double stallCurrent = 9.2; // A at full power
+
+    public double trackWidth = DriveConstants.TRACK_WIDTH;
+    public double wheelBase = DriveConstants.TRACK_WIDTH;
+    public double lateralMultiplier = RealRobot.LATERAL_MULTIPLIER;
+    public double driveTicksPerRev = DriveConstants.TICKS_PER_REV;
+    public double driveMaxRpm = DriveConstants.MAX_RPM;
+    public double driveWheelRadius = DriveConstants.WHEEL_RADIUS; // in
+    public double driveGearRatio = DriveConstants.GEAR_RATIO;
+    // lf, lr, rr, rf: +1 where positive power on the motor's own shaft drives the wheel forward.
+    // The default matches RealRobot's motor directions, i.e. it assumes they are configured right
+    public double[] driveMounting = {1, -1, 1, -1};
+
+    // tracking wheels: left, right, front, read through the intake, lift and hookSp encoder ports
+    public double trackingTicksPerRev = StandardTrackingWheelLocalizer.TICKS_PER_REV;
+    public double trackingWheelRadius = StandardTrackingWheelLocalizer.WHEEL_RADIUS; // in
+    public double trackingGearRatio = StandardTrackingWheelLocalizer.GEAR_RATIO;
+    public double lateralDistance = StandardTrackingWheelLocalizer.LATERAL_DISTANCE; // in
+    public double forwardOffset = StandardTrackingWheelLocalizer.FORWARD_OFFSET; // in
+    // standard deviation of the fraction of each step's travel a tracking wheel slips
+    public double trackingSlip = 0;
+
+    public double batteryVoltage = 13.0; // V, open circuit
+    public double batteryResistance = 0.02; // ohm
+
+    // age of the values a read returns
+    public double encoderLatency = 0.002; // s
+    public double encoderNoise = 0; // ticks, standard deviation of each position reading
+    public double imuLatency = 0.01; // s
+    public double imuNoise = 0.001; // rad, standard deviation
+    public double imuDrift = 0; // rad/s
+
+    // standard deviation of how late the control loop wakes up for its next tick
+    public double loopJitter = 0; // s
+
+    public double physicsStep = 0.001; // s
+    public long seed = 0;
+
+    public SimulationParameters copy() {
+        SimulationParameters copy = new SimulationParameters();
+        copy.kV = kV;
+        copy.kA = kA;
+        copy.kStatic = kStatic;
+        copy.minTimeConstant = minTimeConstant;
+        copy.floatTimeConstant = floatTimeConstant;
+        copy.stallCurrent = stallCurrent;
+        copy.trackWidth = trackWidth;
+        copy.wheelBase = wheelBase;
+        copy.lateralMultiplier = lateralMultiplier;
+        copy.driveTicksPerRev = driveTicksPerRev;
+        copy.driveMaxRpm = driveMaxRpm;
+        copy.driveWheelRadius = driveWheelRadius;
+        copy.driveGearRatio = driveGearRatio;
+        copy.driveMounting = driveMounting.clone();
+        copy.trackingTicksPerRev = trackingTicksPerRev;
+        copy.trackingWheelRadius = trackingWheelRadius;
+        copy.trackingGearRatio = trackingGearRatio;
+        copy.lateralDistance = lateralDistance;
+        copy.forwardOffset = forwardOffset;
+        copy.trackingSlip = trackingSlip;
+        copy.batteryVoltage = batteryVoltage;
+        copy.batteryResistance = batteryResistance;
+        copy.encoderLatency = encoderLatency;
+        copy.encoderNoise = encoderNoise;
+        copy.imuLatency = imuLatency;
+        copy.imuNoise = imuNoise;
+        copy.imuDrift = imuDrift;
+        copy.loopJitter = loopJitter;
+        copy.physicsStep = physicsStep;
+        copy.seed = seed;
+        return copy;
+    }
+
+    double driveTicksPerInch() {
+        return driveTicksPerRev / (2 * Math.PI * driveWheelRadius * driveGearRatio);
+    }
+
+    double trackingTicksPerInch() {
+        return trackingTicksPerRev / (2 * Math.PI * trackingWheelRadius * trackingGearRatio);
+    }
+}
@@ -552,20 +552,25 @@ public class TrajectorySequenceBuilder {
 
         markers.sort(Comparator.comparingDouble(TrajectoryMarker::getTime));
 
+        // collect the local markers of each segment first so every segment is rebuilt at most once
+        List<List<TrajectoryMarker>> localMarkers = new ArrayList<>(sequenceSegments.size());
+        for (int i = 0; i < sequenceSegments.size(); i++) {
+            localMarkers.add(null);
+        }
+
         int segmentIndex = 0;
         double currentTime = 0;
 
         for (TrajectoryMarker marker : markers) {
-            SequenceSegment segment = null;
-
             double markerTime = marker.getTime();
             double segmentOffsetTime = 0;
+            int markerSegmentIndex = -1;
 
             while (segmentIndex < sequenceSegments.size()) {
                 SequenceSegment seg = sequenceSegments.get(segmentIndex);
 
                 if (currentTime + seg.getDuration() >= markerTime) {
-                    segment = seg;
+                    markerSegmentIndex = segmentIndex;
                     segmentOffsetTime = markerTime - currentTime;
                     break;
                 } else {
@@ -574,36 +579,41 @@ public class TrajectorySequenceBuilder {
                 }
             }
             if (segmentIndex >= sequenceSegments.size()) {
-                segment = sequenceSegments.get(sequenceSegments.size()-1);
-                segmentOffsetTime = segment.getDuration();
+                markerSegmentIndex = sequenceSegments.size() - 1;
+                segmentOffsetTime = sequenceSegments.get(markerSegmentIndex).getDuration();
+            }
+
+            List<TrajectoryMarker> segmentMarkers = localMarkers.get(markerSegmentIndex);
+            if (segmentMarkers == null) {
+                SequenceSegment segment = sequenceSegments.get(markerSegmentIndex);
+                segmentMarkers = new ArrayList<>(segment instanceof TrajectorySegment
+                        ? ((TrajectorySegment) segment).getTrajectory().getMarkers()
+                        : segment.getMarkers());
+                localMarkers.set(markerSegmentIndex, segmentMarkers);
             }
+            segmentMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
+        }
+
+        for (int i = 0; i < sequenceSegments.size(); i++) {
+            List<TrajectoryMarker> newMarkers = localMarkers.get(i);
+            if (newMarkers == null) continue;
 
+            SequenceSegment segment = sequenceSegments.get(i);
             SequenceSegment newSegment = null;
 
             if (segment instanceof WaitSegment) {
-                WaitSegment thisSegment = (WaitSegment) segment;
-                
-                List<TrajectoryMarker> newMarkers = new ArrayList<>(thisSegment.getMarkers());
-                newMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
-
-                newSegment = new WaitSegment(thisSegment.getStartPose(), thisSegment.getDuration(), newMarkers);
+                newSegment = new WaitSegment(segment.getStartPose(), segment.getDuration(), newMarkers);
             } else if (segment instanceof TurnSegment) {
                 TurnSegment thisSegment = (TurnSegment) segment;
-                
-                List<TrajectoryMarker> newMarkers = new ArrayList<>(thisSegment.getMarkers());
-                newMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
 
                 newSegment = new TurnSegment(thisSegment.getStartPose(), thisSegment.getTotalRotation(), thisSegment.getMotionProfile(), newMarkers);
             } else if (segment instanceof TrajectorySegment) {
-                TrajectorySegment thisSegment = (TrajectorySegment) segment;
-
-                List<TrajectoryMarker> newMarkers = new ArrayList<>(thisSegment.getTrajectory().getMarkers());
-                newMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
+                Trajectory trajectory = ((TrajectorySegment) segment).getTrajectory();
 
-                newSegment = new TrajectorySegment(new Trajectory(thisSegment.getTrajectory().getPath(), thisSegment.getTrajectory().getProfile(), newMarkers));
+                newSegment = new TrajectorySegment(new Trajectory(trajectory.getPath(), trajectory.getProfile(), newMarkers));
             }
 
-            sequenceSegments.set(segmentIndex, newSegment);
+            sequenceSegments.set(i, newSegment);
         }
 
         return sequenceSegments;
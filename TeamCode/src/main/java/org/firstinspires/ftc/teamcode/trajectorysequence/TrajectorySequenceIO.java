@@ -0,0 +1,366 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.path.LineSegment;
+import com.acmerobotics.roadrunner.path.ParametricCurve;
+import com.acmerobotics.roadrunner.path.Path;
+import com.acmerobotics.roadrunner.path.PathSegment;
+import com.acmerobotics.roadrunner.path.QuinticPolynomial;
+import com.acmerobotics.roadrunner.path.QuinticSpline;
+import com.acmerobotics.roadrunner.path.heading.ConstantInterpolator;
+import com.acmerobotics.roadrunner.path.heading.HeadingInterpolator;
+import com.acmerobotics.roadrunner.path.heading.LinearInterpolator;
+import com.acmerobotics.roadrunner.path.heading.SplineInterpolator;
+import com.acmerobotics.roadrunner.path.heading.TangentInterpolator;
+import com.acmerobotics.roadrunner.profile.MotionProfile;
+import com.acmerobotics.roadrunner.profile.MotionSegment;
+import com.acmerobotics.roadrunner.profile.MotionState;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.WaitSegment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of a built {@link TrajectorySequence}.
+ * <p>
+ * Building a sequence is dominated by motion profile generation, so the profiles are stored
+ * verbatim (segment start states and durations) and paths are stored as their defining knots and
+ * heading interpolator parameters. Loading only re-creates those objects; no profile is
+ * regenerated.
+ * <p>
+ * Marker callbacks are code and can't be stored. Marker times are kept per segment and callbacks
+ * are re-attached on load, in the order the markers fire.
+ */
+public class TrajectorySequenceIO {
+    private static final int MAGIC = 0x52525351; // "RRSQ"
+    private static final int VERSION = 1;
+
+    private static final byte SEGMENT_TRAJECTORY = 1;
+    private static final byte SEGMENT_TURN = 2;
+    private static final byte SEGMENT_WAIT = 3;
+
+    private static final byte CURVE_LINE = 1;
+    private static final byte CURVE_QUINTIC = 2;
+
+    private static final byte HEADING_TANGENT = 1;
+    private static final byte HEADING_CONSTANT = 2;
+    private static final byte HEADING_LINEAR = 3;
+    private static final byte HEADING_SPLINE = 4;
+
+    private static final MarkerCallback NO_OP = () -> { };
+
+    public static void write(TrajectorySequence sequence, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sequence.size());
+
+        for (int i = 0; i < sequence.size(); i++) {
+            SequenceSegment segment = sequence.get(i);
+
+            if (segment instanceof TrajectorySegment) {
+                Trajectory trajectory = ((TrajectorySegment) segment).getTrajectory();
+
+                out.writeByte(SEGMENT_TRAJECTORY);
+                writePath(trajectory.getPath(), out);
+                writeProfile(trajectory.getProfile(), out);
+                writeMarkers(trajectory.getMarkers(), out);
+            } else if (segment instanceof TurnSegment) {
+                TurnSegment turn = (TurnSegment) segment;
+
+                out.writeByte(SEGMENT_TURN);
+                writePose(turn.getStartPose(), out);
+                out.writeDouble(turn.getTotalRotation());
+                writeProfile(turn.getMotionProfile(), out);
+                writeMarkers(turn.getMarkers(), out);
+            } else if (segment instanceof WaitSegment) {
+                out.writeByte(SEGMENT_WAIT);
+                writePose(segment.getStartPose(), out);
+                out.writeDouble(segment.getDuration());
+                writeMarkers(segment.getMarkers(), out);
+            } else {
+                throw new IOException("unsupported segment " + segment.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * @param callbacks marker callbacks in firing order; markers without one do nothing
+     */
+    public static TrajectorySequence read(DataInputStream in, MarkerCallback... callbacks) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a serialized trajectory sequence");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported trajectory sequence version " + version);
+        }
+
+        int[] nextCallback = {0};
+        int n = in.readInt();
+        List<SequenceSegment> segments = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            byte type = in.readByte();
+            if (type == SEGMENT_TRAJECTORY) {
+                Path path = readPath(in);
+                MotionProfile profile = readProfile(in);
+                List<TrajectoryMarker> markers = readMarkers(in, callbacks, nextCallback);
+                segments.add(new TrajectorySegment(new Trajectory(path, profile, markers)));
+            } else if (type == SEGMENT_TURN) {
+                Pose2d startPose = readPose(in);
+                double totalRotation = in.readDouble();
+                MotionProfile profile = readProfile(in);
+                List<TrajectoryMarker> markers = readMarkers(in, callbacks, nextCallback);
+                segments.add(new TurnSegment(startPose, totalRotation, profile, markers));
+            } else if (type == SEGMENT_WAIT) {
+                Pose2d pose = readPose(in);
+                double seconds = in.readDouble();
+                List<TrajectoryMarker> markers = readMarkers(in, callbacks, nextCallback);
+                segments.add(new WaitSegment(pose, seconds, markers));
+            } else {
+                throw new IOException("unknown segment type " + type);
+            }
+        }
+
+        return new TrajectorySequence(segments);
+    }
+
+    /**
+     * Samples both sequences every {@code dt} seconds and returns the largest position or heading
+     * difference seen, or infinity if their segment layouts differ. Used to check a round trip.
+     */
+    public static double maxDeviation(TrajectorySequence a, TrajectorySequence b, double dt) {
+        if (a.size() != b.size()) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double max = 0;
+        for (int i = 0; i < a.size(); i++) {
+            SequenceSegment sa = a.get(i);
+            SequenceSegment sb = b.get(i);
+            if (sa.getClass() != sb.getClass() || markerCount(sa) != markerCount(sb)) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            double duration = Math.max(sa.getDuration(), sb.getDuration());
+            for (double t = 0; t <= duration + dt / 2; t += dt) {
+                Pose2d pa = sample(sa, Math.min(t, duration));
+                Pose2d pb = sample(sb, Math.min(t, duration));
+                max = Math.max(max, pa.vec().distTo(pb.vec()));
+                max = Math.max(max, Math.abs(pa.getHeading() - pb.getHeading()));
+            }
+        }
+        return max;
+    }
+
+    private static int markerCount(SequenceSegment segment) {
+        if (segment instanceof TrajectorySegment) {
+            return ((TrajectorySegment) segment).getTrajectory().getMarkers().size();
+        }
+        return segment.getMarkers().size();
+    }
+
+    private static Pose2d sample(SequenceSegment segment, double t) {
+        if (segment instanceof TrajectorySegment) {
+            return ((TrajectorySegment) segment).getTrajectory().get(t);
+        } else if (segment instanceof TurnSegment) {
+            Pose2d start = segment.getStartPose();
+            return new Pose2d(start.getX(), start.getY(), ((TurnSegment) segment).getMotionProfile().get(t).getX());
+        }
+        return segment.getStartPose();
+    }
+
+    private static void writePose(Pose2d pose, DataOutputStream out) throws IOException {
+        out.writeDouble(pose.getX());
+        out.writeDouble(pose.getY());
+        out.writeDouble(pose.getHeading());
+    }
+
+    private static Pose2d readPose(DataInputStream in) throws IOException {
+        return new Pose2d(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private static void writeProfile(MotionProfile profile, DataOutputStream out) throws IOException {
+        List<MotionSegment> segments = profile.getSegments();
+        out.writeInt(segments.size());
+        for (MotionSegment segment : segments) {
+            MotionState start = segment.getStart();
+            out.writeDouble(start.getX());
+            out.writeDouble(start.getV());
+            out.writeDouble(start.getA());
+            out.writeDouble(start.getJ());
+            out.writeDouble(segment.getDt());
+        }
+    }
+
+    private static MotionProfile readProfile(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<MotionSegment> segments = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            MotionState start = new MotionState(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            segments.add(new MotionSegment(start, in.readDouble()));
+        }
+        return new MotionProfile(segments);
+    }
+
+    private static void writeMarkers(List<TrajectoryMarker> markers, DataOutputStream out) throws IOException {
+        out.writeInt(markers.size());
+        for (TrajectoryMarker marker : markers) {
+            out.writeDouble(marker.getTime());
+        }
+    }
+
+    private static List<TrajectoryMarker> readMarkers(
+            DataInputStream in, MarkerCallback[] callbacks, int[] nextCallback
+    ) throws IOException {
+        int n = in.readInt();
+        List<TrajectoryMarker> markers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double time = in.readDouble();
+            MarkerCallback callback = nextCallback[0] < callbacks.length ? callbacks[nextCallback[0]] : NO_OP;
+            nextCallback[0]++;
+            markers.add(new TrajectoryMarker(time, callback));
+        }
+        return markers;
+    }
+
+    private static void writePath(Path path, DataOutputStream out) throws IOException {
+        List<PathSegment> segments = path.getSegments();
+        out.writeInt(segments.size());
+        for (PathSegment segment : segments) {
+            writeCurve(segment.getCurve(), out);
+            writeHeading(segment, out);
+        }
+    }
+
+    private static Path readPath(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        List<PathSegment> segments = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ParametricCurve curve = readCurve(in);
+            segments.add(new PathSegment(curve, readHeading(in)));
+        }
+        return new Path(segments);
+    }
+
+    private static void writeCurve(ParametricCurve curve, DataOutputStream out) throws IOException {
+        if (curve instanceof LineSegment) {
+            Vector2d start = curve.get(0.0, 0.0);
+            Vector2d end = curve.get(curve.length(), 1.0);
+
+            out.writeByte(CURVE_LINE);
+            out.writeDouble(start.getX());
+            out.writeDouble(start.getY());
+            out.writeDouble(end.getX());
+            out.writeDouble(end.getY());
+        } else if (curve instanceof QuinticSpline) {
+            QuinticSpline spline = (QuinticSpline) curve;
+
+            out.writeByte(CURVE_QUINTIC);
+            // the knots are recovered from the polynomials at their internal parameter ends
+            writeKnot(spline.getX(), spline.getY(), 0.0, out);
+            writeKnot(spline.getX(), spline.getY(), 1.0, out);
+        } else {
+            throw new IOException("unsupported curve " + curve.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeKnot(QuinticPolynomial x, QuinticPolynomial y, double t, DataOutputStream out) throws IOException {
+        out.writeDouble(x.get(t));
+        out.writeDouble(y.get(t));
+        out.writeDouble(x.deriv(t));
+        out.writeDouble(y.deriv(t));
+        out.writeDouble(x.secondDeriv(t));
+        out.writeDouble(y.secondDeriv(t));
+    }
+
+    private static QuinticSpline.Knot readKnot(DataInputStream in) throws IOException {
+        return new QuinticSpline.Knot(
+                in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readDouble()
+        );
+    }
+
+    private static ParametricCurve readCurve(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type == CURVE_LINE) {
+            Vector2d start = new Vector2d(in.readDouble(), in.readDouble());
+            Vector2d end = new Vector2d(in.readDouble(), in.readDouble());
+            return new LineSegment(start, end);
+        } else if (type == CURVE_QUINTIC) {
+            QuinticSpline.Knot start = readKnot(in);
+            QuinticSpline.Knot end = readKnot(in);
+            return new QuinticSpline(start, end);
+        }
+        throw new IOException("unknown curve type " + type);
+    }
+
+    private static void writeHeading(PathSegment segment, DataOutputStream out) throws IOException {
+        HeadingInterpolator interpolator = segment.getInterpolator();
+        double length = segment.length();
+
+        // interpolator parameters are private, so they are recovered from the headings and
+        // heading derivatives (per inch of displacement) at the ends of the segment
+        Pose2d start = segment.get(0.0, 0.0);
+        Pose2d end = segment.get(length, 1.0);
+        Pose2d startDeriv = segment.deriv(0.0, 0.0);
+        Pose2d endDeriv = segment.deriv(length, 1.0);
+
+        if (interpolator instanceof TangentInterpolator) {
+            out.writeByte(HEADING_TANGENT);
+            out.writeDouble(start.getHeading() - segment.tangentAngle(0.0, 0.0));
+        } else if (interpolator instanceof ConstantInterpolator) {
+            out.writeByte(HEADING_CONSTANT);
+            out.writeDouble(start.getHeading());
+        } else if (interpolator instanceof LinearInterpolator) {
+            out.writeByte(HEADING_LINEAR);
+            out.writeDouble(start.getHeading());
+            out.writeDouble(startDeriv.getHeading() * length);
+        } else if (interpolator instanceof SplineInterpolator) {
+            Pose2d startSecondDeriv = segment.secondDeriv(0.0, 0.0);
+            Pose2d endSecondDeriv = segment.secondDeriv(length, 1.0);
+
+            out.writeByte(HEADING_SPLINE);
+            out.writeDouble(start.getHeading());
+            out.writeDouble(end.getHeading());
+            out.writeDouble(startDeriv.getHeading());
+            out.writeDouble(startSecondDeriv.getHeading());
+            out.writeDouble(endDeriv.getHeading());
+            out.writeDouble(endSecondDeriv.getHeading());
+        } else {
+            throw new IOException("unsupported heading interpolator " + interpolator.getClass().getSimpleName());
+        }
+    }
+
+    private static HeadingInterpolator readHeading(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case HEADING_TANGENT:
+                return new TangentInterpolator(in.readDouble());
+            case HEADING_CONSTANT:
+                return new ConstantInterpolator(in.readDouble());
+            case HEADING_LINEAR:
+                return new LinearInterpolator(in.readDouble(), in.readDouble());
+            case HEADING_SPLINE:
+                return new SplineInterpolator(
+                        in.readDouble(), in.readDouble(),
+                        in.readDouble(), in.readDouble(),
+                        in.readDouble(), in.readDouble()
+                );
+            default:
+                throw new IOException("unknown heading interpolator " + type);
+        }
+    }
+}
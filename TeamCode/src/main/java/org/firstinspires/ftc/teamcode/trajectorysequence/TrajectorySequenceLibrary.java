@@ -0,0 +1,193 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Named, precompiled trajectory sequences.
+ * <p>
+ * Sequences are stored with {@link TrajectorySequenceIO} as {@code <name>.rrseq}, either in the
+ * {@code trajectory/} assets next to the {@link org.firstinspires.ftc.teamcode.util.AssetsTrajectoryManager}
+ * configs (shipped with the app) or under {@link #ROOT} on the robot (written by
+ * {@link #getOrBuild} the first time a sequence is built). Construction only lists the names;
+ * each file is read the first time its sequence is asked for.
+ * <p>
+ * Every file carries a fingerprint of the drive constraints it was built with, so changing
+ * {@link DriveConstants} (or the caller's version number) causes a rebuild instead of following
+ * a stale profile.
+ */
+public class TrajectorySequenceLibrary {
+    public static final String EXTENSION = ".rrseq";
+    public static final File ROOT = new File(AppUtil.ROOT_FOLDER + "/RoadRunner/sequences/");
+
+    private static final String ASSET_DIR = "trajectory";
+    private static final double ROUND_TRIP_DT = 0.01;
+    private static final double ROUND_TRIP_TOLERANCE = 1e-6;
+
+    private final Map<String, TrajectorySequence> loaded = new HashMap<>();
+    private final Set<String> available = new TreeSet<>();
+
+    public TrajectorySequenceLibrary() {
+        try {
+            String[] assets = AppUtil.getDefContext().getAssets().list(ASSET_DIR);
+            if (assets != null) {
+                addNames(assets);
+            }
+        } catch (IOException ignored) {
+        }
+
+        String[] files = ROOT.list();
+        if (files != null) {
+            addNames(files);
+        }
+    }
+
+    private void addNames(String[] files) {
+        for (String file : files) {
+            if (file.endsWith(EXTENSION)) {
+                available.add(file.substring(0, file.length() - EXTENSION.length()));
+            }
+        }
+    }
+
+    /**
+     * @return names of all stored sequences, whether or not they've been loaded yet
+     */
+    public synchronized Set<String> names() {
+        return new TreeSet<>(available);
+    }
+
+    /**
+     * Loads a stored sequence.
+     *
+     * @param version   bump whenever the code that builds the sequence changes
+     * @param callbacks marker callbacks in firing order
+     * @return the sequence, or null if none is stored or the stored one is out of date
+     */
+    public synchronized @Nullable TrajectorySequence get(String name, int version, MarkerCallback... callbacks) {
+        TrajectorySequence sequence = loaded.get(name);
+        if (sequence != null || !available.contains(name)) {
+            return sequence;
+        }
+
+        long fingerprint = fingerprint(version);
+        // a sequence saved on the robot is newer than the one shipped in assets
+        sequence = read(new File(ROOT, name + EXTENSION), fingerprint, callbacks);
+        if (sequence == null) {
+            sequence = readAsset(name, fingerprint, callbacks);
+        }
+
+        if (sequence != null) {
+            loaded.put(name, sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * Loads a stored sequence, or builds and stores it if there isn't an up-to-date one.
+     */
+    public TrajectorySequence getOrBuild(
+            String name, int version, Supplier<TrajectorySequence> builder, MarkerCallback... callbacks
+    ) {
+        TrajectorySequence sequence = get(name, version, callbacks);
+        if (sequence != null) {
+            return sequence;
+        }
+
+        sequence = builder.get();
+        try {
+            save(name, version, sequence);
+        } catch (IOException e) {
+            RobotLog.ee("TrajectorySequenceLibrary", e, "Unable to save sequence " + name);
+        }
+
+        synchronized (this) {
+            loaded.put(name, sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * Writes a built sequence to {@link #ROOT}, after checking that it reads back unchanged.
+     */
+    public synchronized void save(String name, int version, TrajectorySequence sequence) throws IOException {
+        long fingerprint = fingerprint(version);
+        File file = new File(ROOT, name + EXTENSION);
+
+        //noinspection ResultOfMethodCallIgnored
+        ROOT.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(fingerprint);
+            TrajectorySequenceIO.write(sequence, out);
+        }
+
+        TrajectorySequence readBack = read(file, fingerprint);
+        double deviation = readBack == null ? Double.POSITIVE_INFINITY
+                : TrajectorySequenceIO.maxDeviation(sequence, readBack, ROUND_TRIP_DT);
+        if (deviation > ROUND_TRIP_TOLERANCE) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw new IOException("sequence " + name + " doesn't survive a round trip (max deviation " + deviation + ")");
+        }
+
+        available.add(name);
+    }
+
+    private static @Nullable TrajectorySequence read(File file, long fingerprint, MarkerCallback... callbacks) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in, fingerprint, callbacks);
+        } catch (IOException e) {
+            RobotLog.ee("TrajectorySequenceLibrary", e, "Unable to read " + file);
+            return null;
+        }
+    }
+
+    private static @Nullable TrajectorySequence readAsset(String name, long fingerprint, MarkerCallback... callbacks) {
+        try (InputStream in = AppUtil.getDefContext().getAssets().open(ASSET_DIR + "/" + name + EXTENSION)) {
+            return read(in, fingerprint, callbacks);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable TrajectorySequence read(InputStream stream, long fingerprint, MarkerCallback... callbacks) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readLong() != fingerprint) {
+            return null;
+        }
+        return TrajectorySequenceIO.read(in, callbacks);
+    }
+
+    private static long fingerprint(int version) {
+        return Arrays.hashCode(new double[]{
+                version,
+                DriveConstants.MAX_VEL, DriveConstants.MAX_ACCEL,
+                DriveConstants.MAX_ANG_VEL, DriveConstants.MAX_ANG_ACCEL,
+                DriveConstants.TRACK_WIDTH
+        });
+    }
+}
@@ -0,0 +1,171 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Builds several named trajectory sequences concurrently, typically during init while the
+ * camera is still looking for the game element, so that whichever route detection picks is
+ * already built at start.
+ * <p>
+ * Each recipe must create its own {@link TrajectorySequenceBuilder}; builders aren't thread safe,
+ * but the constraints they share are. If a {@link TrajectorySequenceLibrary} is given, a stored
+ * sequence is loaded instead of being rebuilt and newly built ones are saved.
+ */
+@Config
+public class TrajectorySequencePrecompiler {
+    // the Control Hub has four cores; leave one for the op mode and one for the SDK
+    public static int MAX_THREADS = 2;
+
+    private final ExecutorService executor;
+    private final @Nullable TrajectorySequenceLibrary library;
+    private final int version;
+
+    private final Map<String, Future<TrajectorySequence>> futures = new LinkedHashMap<>();
+    private final Map<String, Long> buildNanos = new LinkedHashMap<>();
+    private long firstSubmit;
+    private long lastFinish;
+
+    public TrajectorySequencePrecompiler() {
+        this(null, 0);
+    }
+
+    /**
+     * @param version passed to the library; bump whenever a recipe changes
+     */
+    public TrajectorySequencePrecompiler(@Nullable TrajectorySequenceLibrary library, int version) {
+        this.library = library;
+        this.version = version;
+        executor = Executors.newFixedThreadPool(Math.max(1, MAX_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "TrajectorySequencePrecompiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues one recipe. Returns immediately.
+     */
+    public synchronized Future<TrajectorySequence> submit(String name, Supplier<TrajectorySequence> recipe) {
+        if (futures.isEmpty()) {
+            firstSubmit = System.nanoTime();
+        }
+
+        Future<TrajectorySequence> future = executor.submit(() -> {
+            long start = System.nanoTime();
+            TrajectorySequence sequence = library == null ? recipe.get()
+                    : library.getOrBuild(name, version, recipe);
+            long end = System.nanoTime();
+
+            synchronized (this) {
+                buildNanos.put(name, end - start);
+                lastFinish = Math.max(lastFinish, end);
+            }
+            return sequence;
+        });
+        futures.put(name, future);
+        return future;
+    }
+
+    /**
+     * Queues every recipe in the map, keyed by sequence name.
+     */
+    public void submitAll(Map<String, Supplier<TrajectorySequence>> recipes) {
+        for (Map.Entry<String, Supplier<TrajectorySequence>> recipe : recipes.entrySet()) {
+            submit(recipe.getKey(), recipe.getValue());
+        }
+    }
+
+    public synchronized @Nullable Future<TrajectorySequence> getFuture(String name) {
+        return futures.get(name);
+    }
+
+    /**
+     * Returns the named sequence, waiting for it to finish building if it hasn't yet.
+     */
+    public TrajectorySequence get(String name) throws InterruptedException {
+        Future<TrajectorySequence> future = getFuture(name);
+        if (future == null) {
+            throw new IllegalArgumentException("no sequence named " + name + " was submitted");
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("building " + name + " failed", cause);
+        }
+    }
+
+    public synchronized boolean isDone() {
+        for (Future<TrajectorySequence> future : futures.values()) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return build (or load) time of the named sequence, or NaN if it isn't done
+     */
+    public synchronized double getBuildTimeMs(String name) {
+        Long nanos = buildNanos.get(name);
+        return nanos == null ? Double.NaN : nanos / 1e6;
+    }
+
+    /**
+     * @return time from the first submission until the last sequence finished
+     */
+    public synchronized double getWallTimeMs() {
+        return lastFinish == 0 ? 0 : (lastFinish - firstSubmit) / 1e6;
+    }
+
+    /**
+     * @return how much longer building the finished sequences one after another would have taken
+     */
+    public synchronized double getSavedMs() {
+        long total = 0;
+        for (long nanos : buildNanos.values()) {
+            total += nanos;
+        }
+        return Math.max(0, total / 1e6 - getWallTimeMs());
+    }
+
+    /**
+     * Adds the per-sequence build times and the time saved to the telemetry and the robot log.
+     */
+    public synchronized void report(Telemetry telemetry) {
+        for (String name : futures.keySet()) {
+            double ms = getBuildTimeMs(name);
+            telemetry.addData("Build " + name + " (ms)", Double.isNaN(ms) ? "pending" : String.format("%.1f", ms));
+        }
+        telemetry.addData("Precompile wall time (ms)", "%.1f", getWallTimeMs());
+        telemetry.addData("Precompile saved (ms)", "%.1f", getSavedMs());
+
+        RobotLog.ii("TrajectorySequencePrecompiler", "built %s in %.1f ms wall time, saving %.1f ms",
+                buildNanos.keySet(), getWallTimeMs(), getSavedMs());
+    }
+
+    /**
+     * Stops the worker threads once the queued sequences are built.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -7,15 +7,10 @@ import com.acmerobotics.dashboard.canvas.Canvas;
 import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
 import com.acmerobotics.roadrunner.control.PIDCoefficients;
-import com.acmerobotics.roadrunner.control.PIDFController;
 import com.acmerobotics.roadrunner.drive.DriveSignal;
 import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
-import com.acmerobotics.roadrunner.profile.MotionState;
-import com.acmerobotics.roadrunner.trajectory.Trajectory;
-import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
 import com.acmerobotics.roadrunner.util.NanoClock;
-import com.qualcomm.robotcore.hardware.VoltageSensor;
 
 import org.firstinspires.ftc.teamcode.drive.DriveConstants;
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
@@ -24,11 +19,10 @@ import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSeg
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.WaitSegment;
 import org.firstinspires.ftc.teamcode.util.DashboardUtil;
 import org.firstinspires.ftc.teamcode.util.LogFiles;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import org.firstinspires.ftc.teamcode.util.LoopProfiler;
+import org.firstinspires.ftc.teamcode.util.PathPolyline;
+import org.firstinspires.ftc.teamcode.util.PoseHistory;
+import org.firstinspires.ftc.teamcode.util.VoltageService;
 
 @Config
 public class TrajectorySequenceRunner {
@@ -41,203 +35,145 @@ public class TrajectorySequenceRunner {
     public static String COLOR_ACTIVE_WAIT = "#dd2c00";
 
     public static int POSE_HISTORY_LIMIT = 100;
+    // inches between recorded poses; 0 records one every update
+    public static double POSE_HISTORY_MIN_SPACING = 0;
 
-    private final TrajectoryFollower follower;
-
-    private final PIDFController turnController;
-
-    private final NanoClock clock;
+    private static final int TRANSMISSION_INTERVAL_MS = 25;
 
-    private TrajectorySequence currentTrajectorySequence;
-    private double currentSegmentStartTime;
-    private int currentSegmentIndex;
-    private int lastSegmentIndex;
+    private final TrajectorySequenceStepper stepper;
 
-    private Pose2d lastPoseError = new Pose2d();
+    private final FtcDashboard dashboard;
+    private final PoseHistory poseHistory = new PoseHistory(POSE_HISTORY_LIMIT);
+    private long lastPacketNanos;
 
-    List<TrajectoryMarker> remainingMarkers = new ArrayList<>();
+    // paths never change while they're followed, so each sequence is only sampled once
+    private TrajectorySequence sampledSequence;
+    private PathPolyline[] polylines;
 
-    private final FtcDashboard dashboard;
-    private final LinkedList<Pose2d> poseHistory = new LinkedList<>();
+    private final VoltageService voltageService;
+    private double voltageScale = 1;
+    private boolean logging = true;
 
-    private VoltageSensor voltageSensor;
+    // Pose2d is immutable, so the error pose is only rebuilt when the error has changed
+    private Pose2d lastPoseError = new Pose2d();
 
-    private List<Integer> lastDriveEncPositions, lastDriveEncVels, lastTrackingEncPositions, lastTrackingEncVels;
+    private int[] lastDriveEncPositions, lastDriveEncVels, lastTrackingEncPositions, lastTrackingEncVels;
 
     public TrajectorySequenceRunner(
-            TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients, VoltageSensor voltageSensor,
-            List<Integer> lastDriveEncPositions, List<Integer> lastDriveEncVels, List<Integer> lastTrackingEncPositions, List<Integer> lastTrackingEncVels
+            TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients, VoltageService voltageService,
+            int[] lastDriveEncPositions, int[] lastDriveEncVels, int[] lastTrackingEncPositions, int[] lastTrackingEncVels
     ) {
-        this.follower = follower;
+        this(follower, headingPIDCoefficients, voltageService,
+                lastDriveEncPositions, lastDriveEncVels, lastTrackingEncPositions, lastTrackingEncVels,
+                NanoClock.system());
+    }
 
-        turnController = new PIDFController(headingPIDCoefficients);
-        turnController.setInputBounds(0, 2 * Math.PI);
+    /**
+     * @param clock time base for following; a simulation passes its virtual clock
+     */
+    public TrajectorySequenceRunner(
+            TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients, VoltageService voltageService,
+            int[] lastDriveEncPositions, int[] lastDriveEncVels, int[] lastTrackingEncPositions, int[] lastTrackingEncVels,
+            NanoClock clock
+    ) {
+        stepper = new TrajectorySequenceStepper(follower, headingPIDCoefficients, clock);
 
-        this.voltageSensor = voltageSensor;
+        this.voltageService = voltageService;
 
         this.lastDriveEncPositions = lastDriveEncPositions;
         this.lastDriveEncVels = lastDriveEncVels;
         this.lastTrackingEncPositions = lastTrackingEncPositions;
         this.lastTrackingEncVels = lastTrackingEncVels;
 
-        clock = NanoClock.system();
-
+        // null off the robot, e.g. in the simulator
         dashboard = FtcDashboard.getInstance();
-        dashboard.setTelemetryTransmissionInterval(25);
+        if (dashboard != null) {
+            dashboard.setTelemetryTransmissionInterval(TRANSMISSION_INTERVAL_MS);
+        }
     }
 
     public void followTrajectorySequenceAsync(TrajectorySequence trajectorySequence) {
-        currentTrajectorySequence = trajectorySequence;
-        currentSegmentStartTime = clock.seconds();
-        currentSegmentIndex = 0;
-        lastSegmentIndex = -1;
+        stepper.follow(trajectorySequence);
+        samplePaths(trajectorySequence);
     }
 
+    /**
+     * @return the follower's drive signal, not yet compensated for battery voltage (see
+     * {@link #getVoltageScale()}); null when there's nothing to follow
+     */
     public @Nullable
     DriveSignal update(Pose2d poseEstimate, Pose2d poseVelocity) {
-        Pose2d targetPose = null;
-        DriveSignal driveSignal = null;
-
-        TelemetryPacket packet = new TelemetryPacket();
-        Canvas fieldOverlay = packet.fieldOverlay();
-
-        SequenceSegment currentSegment = null;
-
-        if (currentTrajectorySequence != null) {
-            if (currentSegmentIndex >= currentTrajectorySequence.size()) {
-                for (TrajectoryMarker marker : remainingMarkers) {
-                    marker.getCallback().onMarkerReached();
-                }
-
-                remainingMarkers.clear();
-
-                currentTrajectorySequence = null;
-            }
-
-            if (currentTrajectorySequence == null)
-                return new DriveSignal();
-
-            double now = clock.seconds();
-            boolean isNewTransition = currentSegmentIndex != lastSegmentIndex;
-
-            currentSegment = currentTrajectorySequence.get(currentSegmentIndex);
-
-            if (isNewTransition) {
-                currentSegmentStartTime = now;
-                lastSegmentIndex = currentSegmentIndex;
-
-                for (TrajectoryMarker marker : remainingMarkers) {
-                    marker.getCallback().onMarkerReached();
-                }
-
-                remainingMarkers.clear();
-
-                remainingMarkers.addAll(currentSegment.getMarkers());
-                Collections.sort(remainingMarkers, (t1, t2) -> Double.compare(t1.getTime(), t2.getTime()));
-            }
-
-            double deltaTime = now - currentSegmentStartTime;
-
-            if (currentSegment instanceof TrajectorySegment) {
-                Trajectory currentTrajectory = ((TrajectorySegment) currentSegment).getTrajectory();
-
-                if (isNewTransition)
-                    follower.followTrajectory(currentTrajectory);
-
-                if (!follower.isFollowing()) {
-                    currentSegmentIndex++;
-
-                    driveSignal = new DriveSignal();
-                } else {
-                    driveSignal = follower.update(poseEstimate, poseVelocity);
-                    lastPoseError = follower.getLastError();
-                }
-
-                targetPose = currentTrajectory.get(deltaTime);
-            } else if (currentSegment instanceof TurnSegment) {
-                MotionState targetState = ((TurnSegment) currentSegment).getMotionProfile().get(deltaTime);
-
-                turnController.setTargetPosition(targetState.getX());
-
-                double correction = turnController.update(poseEstimate.getHeading());
+        boolean wasBusy = stepper.isBusy();
+        DriveSignal driveSignal = stepper.update(poseEstimate, poseVelocity);
+        if (wasBusy && !stepper.isBusy())
+            return driveSignal;
 
-                double targetOmega = targetState.getV();
-                double targetAlpha = targetState.getA();
-
-                lastPoseError = new Pose2d(0, 0, turnController.getLastError());
-
-                Pose2d startPose = currentSegment.getStartPose();
-                targetPose = startPose.copy(startPose.getX(), startPose.getY(), targetState.getX());
-
-                driveSignal = new DriveSignal(
-                        new Pose2d(0, 0, targetOmega + correction),
-                        new Pose2d(0, 0, targetAlpha)
-                );
-
-                if (deltaTime >= currentSegment.getDuration()) {
-                    currentSegmentIndex++;
-                    driveSignal = new DriveSignal();
-                }
-            } else if (currentSegment instanceof WaitSegment) {
-                lastPoseError = new Pose2d();
-
-                targetPose = currentSegment.getStartPose();
-                driveSignal = new DriveSignal();
-
-                if (deltaTime >= currentSegment.getDuration()) {
-                    currentSegmentIndex++;
-                }
-            }
-
-            while (remainingMarkers.size() > 0 && deltaTime > remainingMarkers.get(0).getTime()) {
-                remainingMarkers.get(0).getCallback().onMarkerReached();
-                remainingMarkers.remove(0);
-            }
-        }
+        Pose2d targetPose = stepper.getTargetPose();
 
+        // a negative limit used to mean unbounded; cap it at the length of a logged op mode
+        poseHistory.setCapacity(POSE_HISTORY_LIMIT > -1 ? POSE_HISTORY_LIMIT : LogFiles.MAX_SAMPLES);
+        poseHistory.setMinSpacing(POSE_HISTORY_MIN_SPACING);
         poseHistory.add(poseEstimate);
 
-        if (POSE_HISTORY_LIMIT > -1 && poseHistory.size() > POSE_HISTORY_LIMIT) {
-            poseHistory.removeFirst();
-        }
+        // filtered and sampled in the background, so this doesn't cost a hub transaction
+        double voltage = voltageService.getVoltage();
+        voltageScale = DriveConstants.RUN_USING_ENCODER ? 1 : VoltageService.NOMINAL_VOLTAGE / voltage;
 
-        final double NOMINAL_VOLTAGE = 12.0;
-        double voltage = voltageSensor.getVoltage();
-        if (driveSignal != null && !DriveConstants.RUN_USING_ENCODER) {
-            driveSignal = new DriveSignal(
-                    driveSignal.getVel().times(NOMINAL_VOLTAGE / voltage),
-                    driveSignal.getAccel().times(NOMINAL_VOLTAGE / voltage)
-            );
-        }
-
-        if (targetPose != null) {
+        if (logging && targetPose != null) {
             LogFiles.record(
                     targetPose, poseEstimate, voltage,
                     lastDriveEncPositions, lastDriveEncVels, lastTrackingEncPositions, lastTrackingEncVels
             );
         }
 
-        packet.put("x", poseEstimate.getX());
-        packet.put("y", poseEstimate.getY());
-        packet.put("heading (deg)", Math.toDegrees(poseEstimate.getHeading()));
+        // the dashboard holds on to every packet until it transmits, so a packet can't be reused;
+        // instead only build one as often as the dashboard actually sends
+        long nanos = System.nanoTime();
+        if (dashboard != null && nanos - lastPacketNanos >= TRANSMISSION_INTERVAL_MS * 1_000_000L) {
+            lastPacketNanos = nanos;
+
+            TelemetryPacket packet = new TelemetryPacket();
 
-        packet.put("xError", getLastPoseError().getX());
-        packet.put("yError", getLastPoseError().getY());
-        packet.put("headingError (deg)", Math.toDegrees(getLastPoseError().getHeading()));
+            packet.put("x", poseEstimate.getX());
+            packet.put("y", poseEstimate.getY());
+            packet.put("heading (deg)", Math.toDegrees(poseEstimate.getHeading()));
 
-        draw(fieldOverlay, currentTrajectorySequence, currentSegment, targetPose, poseEstimate);
+            packet.put("xError", stepper.getLastErrorX());
+            packet.put("yError", stepper.getLastErrorY());
+            packet.put("headingError (deg)", Math.toDegrees(stepper.getLastErrorHeading()));
 
-        dashboard.sendTelemetryPacket(packet);
+            long span = logging ? LoopProfiler.start() : 0;
+            draw(packet.fieldOverlay(), stepper.getSequence(), stepper.getCurrentSegment(), stepper.getCurrentSegmentIndex(), targetPose, poseEstimate);
+            LoopProfiler.end(LoopProfiler.DRAW, span);
+
+            dashboard.sendTelemetryPacket(packet);
+        }
 
         return driveSignal;
     }
 
+    private void samplePaths(TrajectorySequence sequence) {
+        if (sequence == sampledSequence) {
+            return;
+        }
+        polylines = new PathPolyline[sequence.size()];
+        for (int i = 0; i < sequence.size(); i++) {
+            SequenceSegment segment = sequence.get(i);
+            if (segment instanceof TrajectorySegment) {
+                polylines[i] = PathPolyline.sample(((TrajectorySegment) segment).getTrajectory().getPath());
+            }
+        }
+        sampledSequence = sequence;
+    }
+
     private void draw(
             Canvas fieldOverlay,
-            TrajectorySequence sequence, SequenceSegment currentSegment,
+            TrajectorySequence sequence, SequenceSegment currentSegment, int currentIndex,
             Pose2d targetPose, Pose2d poseEstimate
     ) {
         if (sequence != null) {
+            samplePaths(sequence);
+
             for (int i = 0; i < sequence.size(); i++) {
                 SequenceSegment segment = sequence.get(i);
 
@@ -245,7 +181,7 @@ public class TrajectorySequenceRunner {
                     fieldOverlay.setStrokeWidth(1);
                     fieldOverlay.setStroke(COLOR_INACTIVE_TRAJECTORY);
 
-                    DashboardUtil.drawSampledPath(fieldOverlay, ((TrajectorySegment) segment).getTrajectory().getPath());
+                    DashboardUtil.drawPolyline(fieldOverlay, polylines[i]);
                 } else if (segment instanceof TurnSegment) {
                     Pose2d pose = segment.getStartPose();
 
@@ -263,12 +199,10 @@ public class TrajectorySequenceRunner {
 
         if (currentSegment != null) {
             if (currentSegment instanceof TrajectorySegment) {
-                Trajectory currentTrajectory = ((TrajectorySegment) currentSegment).getTrajectory();
-
                 fieldOverlay.setStrokeWidth(1);
                 fieldOverlay.setStroke(COLOR_ACTIVE_TRAJECTORY);
 
-                DashboardUtil.drawSampledPath(fieldOverlay, currentTrajectory.getPath());
+                DashboardUtil.drawPolyline(fieldOverlay, polylines[currentIndex]);
             } else if (currentSegment instanceof TurnSegment) {
                 Pose2d pose = currentSegment.getStartPose();
 
@@ -296,11 +230,51 @@ public class TrajectorySequenceRunner {
         DashboardUtil.drawRobot(fieldOverlay, poseEstimate);
     }
 
+    /**
+     * Turns recording into {@link LogFiles} and {@link LoopProfiler} on or off. Both are global,
+     * so runners that don't drive the actual robot (simulations) keep out of them.
+     */
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+    }
+
+    /**
+     * @return factor the velocity and acceleration of the last drive signal have to be scaled by to
+     * make up for the battery voltage; 1 when the motors run their own velocity PID
+     */
+    public double getVoltageScale() {
+        return voltageScale;
+    }
+
+    /**
+     * @return the drive signal scaled by {@code voltageScale}, for drives that hand it to Road
+     * Runner's own feedforward
+     */
+    public static DriveSignal compensate(DriveSignal driveSignal, double voltageScale) {
+        if (voltageScale == 1) {
+            return driveSignal;
+        }
+        return new DriveSignal(driveSignal.getVel().times(voltageScale), driveSignal.getAccel().times(voltageScale));
+    }
+
     public Pose2d getLastPoseError() {
+        double x = stepper.getLastErrorX();
+        double y = stepper.getLastErrorY();
+        double heading = stepper.getLastErrorHeading();
+        if (x != lastPoseError.getX() || y != lastPoseError.getY() || heading != lastPoseError.getHeading()) {
+            lastPoseError = new Pose2d(x, y, heading);
+        }
         return lastPoseError;
     }
 
     public boolean isBusy() {
-        return currentTrajectorySequence != null;
+        return stepper.isBusy();
+    }
+
+    /**
+     * Stops following the current sequence without firing its remaining markers.
+     */
+    public void breakFollowing() {
+        stepper.breakFollowing();
     }
 }
@@ -0,0 +1,236 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.control.PIDCoefficients;
+import com.acmerobotics.roadrunner.control.PIDFController;
+import com.acmerobotics.roadrunner.drive.DriveSignal;
+import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.profile.MotionState;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.WaitSegment;
+
+/**
+ * Steps through a {@link TrajectorySequence}: advances segments, runs the trajectory follower and
+ * the turn controller, and fires markers. This is the part of {@link TrajectorySequenceRunner}
+ * that only needs Road Runner and a clock, so it also runs off the robot; the runner adds voltage
+ * compensation, logging and the dashboard on top.
+ */
+public class TrajectorySequenceStepper {
+    public static final DriveSignal IDLE = new DriveSignal();
+
+    // markers of the current segment, pre-sorted by SequenceSegment; markerIndex is the next to fire
+    private static final double[] NO_MARKER_TIMES = new double[0];
+    private static final MarkerCallback[] NO_MARKER_CALLBACKS = new MarkerCallback[0];
+
+    private final TrajectoryFollower follower;
+    private final PIDFController turnController;
+    private final NanoClock clock;
+
+    private TrajectorySequence currentTrajectorySequence;
+    private double currentSegmentStartTime;
+    private int currentSegmentIndex;
+    private int lastSegmentIndex;
+
+    private SequenceSegment currentSegment;
+    private Pose2d targetPose;
+
+    // kept as primitives so turns and waits don't allocate an error pose every tick
+    private double lastErrorX, lastErrorY, lastErrorHeading;
+
+    private double[] markerTimes = NO_MARKER_TIMES;
+    private MarkerCallback[] markerCallbacks = NO_MARKER_CALLBACKS;
+    private int markerIndex;
+
+    /**
+     * @param clock time base for following; the follower has to be on the same one
+     */
+    public TrajectorySequenceStepper(TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients, NanoClock clock) {
+        this.follower = follower;
+
+        // the controller differentiates on its own clock, so it has to be the same one
+        turnController = new PIDFController(headingPIDCoefficients, 0, 0, 0, (x, v) -> 0.0, clock);
+        turnController.setInputBounds(0, 2 * Math.PI);
+
+        this.clock = clock;
+    }
+
+    public void follow(TrajectorySequence trajectorySequence) {
+        currentTrajectorySequence = trajectorySequence;
+        currentSegmentStartTime = clock.seconds();
+        currentSegmentIndex = 0;
+        lastSegmentIndex = -1;
+    }
+
+    /**
+     * @return the drive signal for this tick; {@link #IDLE} on the tick the sequence finishes and
+     * between segments, null when there's nothing to follow
+     */
+    public @Nullable
+    DriveSignal update(Pose2d poseEstimate, Pose2d poseVelocity) {
+        targetPose = null;
+        currentSegment = null;
+        DriveSignal driveSignal = null;
+
+        if (currentTrajectorySequence != null) {
+            if (currentSegmentIndex >= currentTrajectorySequence.size()) {
+                fireRemainingMarkers();
+
+                currentTrajectorySequence = null;
+            }
+
+            if (currentTrajectorySequence == null)
+                return IDLE;
+
+            double now = clock.seconds();
+            boolean isNewTransition = currentSegmentIndex != lastSegmentIndex;
+
+            currentSegment = currentTrajectorySequence.get(currentSegmentIndex);
+
+            if (isNewTransition) {
+                currentSegmentStartTime = now;
+                lastSegmentIndex = currentSegmentIndex;
+
+                fireRemainingMarkers();
+
+                markerTimes = currentSegment.getMarkerTimes();
+                markerCallbacks = currentSegment.getMarkerCallbacks();
+                markerIndex = 0;
+            }
+
+            double deltaTime = now - currentSegmentStartTime;
+
+            if (currentSegment instanceof TrajectorySegment) {
+                Trajectory currentTrajectory = ((TrajectorySegment) currentSegment).getTrajectory();
+
+                if (isNewTransition)
+                    follower.followTrajectory(currentTrajectory);
+
+                if (!follower.isFollowing()) {
+                    currentSegmentIndex++;
+
+                    driveSignal = IDLE;
+                } else {
+                    driveSignal = follower.update(poseEstimate, poseVelocity);
+                    Pose2d error = follower.getLastError();
+                    lastErrorX = error.getX();
+                    lastErrorY = error.getY();
+                    lastErrorHeading = error.getHeading();
+                }
+
+                targetPose = currentTrajectory.get(deltaTime);
+            } else if (currentSegment instanceof TurnSegment) {
+                MotionState targetState = ((TurnSegment) currentSegment).getMotionProfile().get(deltaTime);
+
+                turnController.setTargetPosition(targetState.getX());
+
+                double correction = turnController.update(poseEstimate.getHeading());
+
+                double targetOmega = targetState.getV();
+                double targetAlpha = targetState.getA();
+
+                lastErrorX = 0;
+                lastErrorY = 0;
+                lastErrorHeading = turnController.getLastError();
+
+                Pose2d startPose = currentSegment.getStartPose();
+                targetPose = startPose.copy(startPose.getX(), startPose.getY(), targetState.getX());
+
+                driveSignal = new DriveSignal(
+                        new Pose2d(0, 0, targetOmega + correction),
+                        new Pose2d(0, 0, targetAlpha)
+                );
+
+                if (deltaTime >= currentSegment.getDuration()) {
+                    currentSegmentIndex++;
+                    driveSignal = IDLE;
+                }
+            } else if (currentSegment instanceof WaitSegment) {
+                lastErrorX = 0;
+                lastErrorY = 0;
+                lastErrorHeading = 0;
+
+                targetPose = currentSegment.getStartPose();
+                driveSignal = IDLE;
+
+                if (deltaTime >= currentSegment.getDuration()) {
+                    currentSegmentIndex++;
+                }
+            }
+
+            while (markerIndex < markerTimes.length && deltaTime > markerTimes[markerIndex]) {
+                markerCallbacks[markerIndex++].onMarkerReached();
+            }
+        }
+
+        return driveSignal;
+    }
+
+    private void fireRemainingMarkers() {
+        while (markerIndex < markerTimes.length) {
+            markerCallbacks[markerIndex++].onMarkerReached();
+        }
+
+        markerTimes = NO_MARKER_TIMES;
+        markerCallbacks = NO_MARKER_CALLBACKS;
+        markerIndex = 0;
+    }
+
+    public @Nullable TrajectorySequence getSequence() {
+        return currentTrajectorySequence;
+    }
+
+    /**
+     * @return the segment the last update followed, or null
+     */
+    public @Nullable SequenceSegment getCurrentSegment() {
+        return currentSegment;
+    }
+
+    /**
+     * @return index of {@link #getCurrentSegment()}
+     */
+    public int getCurrentSegmentIndex() {
+        return lastSegmentIndex;
+    }
+
+    /**
+     * @return where the last update wanted the robot to be, or null
+     */
+    public @Nullable Pose2d getTargetPose() {
+        return targetPose;
+    }
+
+    public double getLastErrorX() {
+        return lastErrorX;
+    }
+
+    public double getLastErrorY() {
+        return lastErrorY;
+    }
+
+    public double getLastErrorHeading() {
+        return lastErrorHeading;
+    }
+
+    public boolean isBusy() {
+        return currentTrajectorySequence != null;
+    }
+
+    /**
+     * Stops following the current sequence without firing its remaining markers.
+     */
+    public void breakFollowing() {
+        currentTrajectorySequence = null;
+        markerTimes = NO_MARKER_TIMES;
+        markerCallbacks = NO_MARKER_CALLBACKS;
+        markerIndex = 0;
+    }
+}
@@ -1,6 +1,7 @@
 package org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment;
 
 import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
 import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
 
 import java.util.List;
@@ -11,6 +12,10 @@ public abstract class SequenceSegment {
     private final Pose2d endPose;
     private final List<TrajectoryMarker> markers;
 
+    // markers sorted by time, so the runner can dispatch them with a cursor
+    private final double[] markerTimes;
+    private final MarkerCallback[] markerCallbacks;
+
     protected SequenceSegment(
             double duration,
             Pose2d startPose, Pose2d endPose,
@@ -20,6 +25,24 @@ public abstract class SequenceSegment {
         this.startPose = startPose;
         this.endPose = endPose;
         this.markers = markers;
+
+        int n = markers.size();
+        markerTimes = new double[n];
+        markerCallbacks = new MarkerCallback[n];
+        for (int i = 0; i < n; i++) {
+            TrajectoryMarker marker = markers.get(i);
+            double time = marker.getTime();
+
+            // insertion sort: stable, and linear for the already sorted lists build() produces
+            int j = i;
+            while (j > 0 && markerTimes[j - 1] > time) {
+                markerTimes[j] = markerTimes[j - 1];
+                markerCallbacks[j] = markerCallbacks[j - 1];
+                j--;
+            }
+            markerTimes[j] = time;
+            markerCallbacks[j] = marker.getCallback();
+        }
     }
 
     public double getDuration() {
@@ -37,4 +60,18 @@ public abstract class SequenceSegment {
     public List<TrajectoryMarker> getMarkers() {
         return markers;
     }
+
+    /**
+     * @return marker times in ascending order; don't modify
+     */
+    public double[] getMarkerTimes() {
+        return markerTimes;
+    }
+
+    /**
+     * @return marker callbacks in the same order as {@link #getMarkerTimes()}; don't modify
+     */
+    public MarkerCallback[] getMarkerCallbacks() {
+        return markerCallbacks;
+    }
 }
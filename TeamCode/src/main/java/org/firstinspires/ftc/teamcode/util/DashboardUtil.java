@@ -26,6 +26,14 @@ public class DashboardUtil {
         canvas.strokePolyline(xPoints, yPoints);
     }
 
+    public static void drawPoseHistory(Canvas canvas, PoseHistory poseHistory) {
+        // the canvas keeps the arrays until the packet is sent, so it gets a copy rather than the ring
+        double[] xPoints = new double[poseHistory.size()];
+        double[] yPoints = new double[poseHistory.size()];
+        poseHistory.copyTo(xPoints, yPoints);
+        canvas.strokePolyline(xPoints, yPoints);
+    }
+
     public static void drawSampledPath(Canvas canvas, Path path, double resolution) {
         int samples = (int) Math.ceil(path.length() / resolution);
         double[] xPoints = new double[samples];
@@ -44,6 +52,11 @@ public class DashboardUtil {
         drawSampledPath(canvas, path, DEFAULT_RESOLUTION);
     }
 
+    public static void drawPolyline(Canvas canvas, PathPolyline polyline) {
+        // the arrays are never modified, so the canvas can hold on to them without a copy
+        canvas.strokePolyline(polyline.xs, polyline.ys);
+    }
+
     public static void drawRobot(Canvas canvas, Pose2d pose) {
         canvas.strokeCircle(pose.getX(), pose.getY(), ROBOT_RADIUS);
         Vector2d v = pose.headingVec().times(ROBOT_RADIUS);
@@ -9,17 +9,8 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple;
  * slot's motor direction
  */
 public class Encoder {
-    private final static int CPS_STEP = 0x10000;
-
-    private static double inverseOverflow(double input, double estimate) {
-        // convert to uint16
-        int real = (int) input & 0xffff;
-        // initial, modulo-based correction: it can recover the remainder of 5 of the upper 16 bits
-        // because the velocity is always a multiple of 20 cps due to Expansion Hub's 50ms measurement window
-        real += ((real % 20) / 4) * CPS_STEP;
-        // estimate-based correction: it finds the nearest multiple of 5 to correct the upper bits by
-        real += Math.round((estimate - real) / (5 * CPS_STEP)) * 5 * CPS_STEP;
-        return real;
+    public static double inverseOverflow(double input, double estimate) {
+        return VelocityEstimator.inverseOverflow(input, estimate);
     }
 
     public enum Direction {
@@ -42,10 +33,12 @@ public class Encoder {
 
     private Direction direction;
 
+    // repeated reads of the same bulk cached position closer together than this aren't new samples
+    private static final long MIN_REPEAT_SAMPLE_NANOS = 5_000_000;
+
+    private final VelocityEstimator velocityEstimator = new VelocityEstimator(1);
     private int lastPosition;
-    private int velocityEstimateIdx;
-    private double[] velocityEstimates;
-    private double lastUpdateTime;
+    private long lastSampleNanos;
 
     public Encoder(DcMotorEx motor, NanoClock clock) {
         this.motor = motor;
@@ -53,9 +46,6 @@ public class Encoder {
 
         this.direction = Direction.FORWARD;
 
-        this.lastPosition = 0;
-        this.velocityEstimates = new double[3];
-        this.lastUpdateTime = clock.seconds();
     }
 
     public Encoder(DcMotorEx motor) {
@@ -80,20 +70,19 @@ public class Encoder {
 
     /**
      * Gets the position from the underlying motor and adjusts for the set direction.
-     * Additionally, this method updates the velocity estimates used for compensated velocity
+     * Additionally, this method adds a sample to the velocity fit used for compensated velocity
      *
      * @return encoder position
      */
     public int getCurrentPosition() {
         int multiplier = getMultiplier();
         int currentPosition = motor.getCurrentPosition() * multiplier;
-        if (currentPosition != lastPosition) {
-            double currentTime = clock.seconds();
-            double dt = currentTime - lastUpdateTime;
-            velocityEstimates[velocityEstimateIdx] = (currentPosition - lastPosition) / dt;
-            velocityEstimateIdx = (velocityEstimateIdx + 1) % 3;
+        long nanos = (long) (clock.seconds() * 1e9);
+        if (currentPosition != lastPosition || nanos - lastSampleNanos >= MIN_REPEAT_SAMPLE_NANOS) {
+            VelocityEstimatorConfig.apply(velocityEstimator);
+            velocityEstimator.add(nanos, currentPosition);
             lastPosition = currentPosition;
-            lastUpdateTime = currentTime;
+            lastSampleNanos = nanos;
         }
         return currentPosition;
     }
@@ -110,16 +99,30 @@ public class Encoder {
     }
 
     /**
-     * Uses velocity estimates gathered in {@link #getCurrentPosition} to estimate the upper bits of velocity
-     * that are lost in overflow due to velocity being transmitted as 16 bits.
+     * Uses the least-squares velocity fitted to the positions from {@link #getCurrentPosition} to estimate the
+     * upper bits of velocity that are lost in overflow due to velocity being transmitted as 16 bits.
      * CAVEAT: must regularly call {@link #getCurrentPosition} for the compensation to work correctly.
      *
      * @return corrected velocity
      */
     public double getCorrectedVelocity() {
-        double median = velocityEstimates[0] > velocityEstimates[1]
-                ? Math.max(velocityEstimates[1], Math.min(velocityEstimates[0], velocityEstimates[2]))
-                : Math.max(velocityEstimates[0], Math.min(velocityEstimates[1], velocityEstimates[2]));
-        return inverseOverflow(getRawVelocity(), median);
+        return velocityEstimator.correct(0, getRawVelocity());
+    }
+
+    /**
+     * @return velocity fitted to recent positions alone, without the hub's velocity measurement
+     */
+    public double getEstimatedVelocity() {
+        return velocityEstimator.getVelocity(0);
+    }
+
+    /**
+     * Velocity for the localizers: the fit, or the corrected hub velocity, as configured in
+     * {@link VelocityEstimatorConfig}. Same caveat as {@link #getCorrectedVelocity}.
+     *
+     * @return velocity
+     */
+    public double getVelocity() {
+        return velocityEstimator.getVelocity(0, getRawVelocity());
     }
 }
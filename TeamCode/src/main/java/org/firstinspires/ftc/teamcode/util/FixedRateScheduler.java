@@ -0,0 +1,159 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Paces a control loop at a fixed frequency so controller gains see the same loop period from
+ * run to run, regardless of how fast the hub, telemetry or GC happen to be on a given cycle.
+ * <p>
+ * Call {@link #awaitNextTick()} once at the end of every iteration. If an iteration takes longer
+ * than the period it is counted as an overrun and the schedule restarts from now instead of
+ * firing a burst of catch-up iterations.
+ * <p>
+ * Time is read from a {@link NanoClock} and waiting goes through a sleeper, so a simulation can
+ * run the same loop on virtual time, where waiting for the next tick just advances the clock.
+ */
+@Config
+public class FixedRateScheduler {
+    public static double TARGET_HZ = 50;
+    public static double REPORT_INTERVAL_MS = 500;
+
+    private static final double HISTOGRAM_RANGE_MS = 100;
+
+    private final TimingHistogram periods = new TimingHistogram(HISTOGRAM_RANGE_MS);
+    private final TimingHistogram workTimes = new TimingHistogram(HISTOGRAM_RANGE_MS);
+
+    private final NanoClock clock;
+    private final LongConsumer sleeper;
+
+    private long tickStart;
+    private long nextTick;
+    private long lastReport;
+    private int overruns;
+    private boolean logging = true;
+
+    public FixedRateScheduler() {
+        this(NanoClock.system(), LockSupport::parkNanos);
+    }
+
+    /**
+     * @param sleeper waits for the given number of nanoseconds of {@code clock} time; may return
+     *                early
+     */
+    public FixedRateScheduler(NanoClock clock, LongConsumer sleeper) {
+        this.clock = clock;
+        this.sleeper = sleeper;
+        reset();
+    }
+
+    private long nanoTime() {
+        return (long) (clock.seconds() * 1e9);
+    }
+
+    /**
+     * Starts a new schedule and clears the statistics.
+     */
+    public void reset() {
+        tickStart = nanoTime();
+        nextTick = tickStart + periodNanos();
+        lastReport = tickStart;
+        overruns = 0;
+        periods.reset();
+        workTimes.reset();
+    }
+
+    private static long periodNanos() {
+        return (long) (1e9 / TARGET_HZ);
+    }
+
+    /**
+     * Blocks until the start of the next period.
+     */
+    public void awaitNextTick() {
+        if (logging) {
+            LoopProfiler.endLoop();
+        }
+
+        long now = nanoTime();
+        workTimes.recordNanos(now - tickStart);
+
+        long wait = nextTick - now;
+        if (wait > 0) {
+            // parkNanos may return early, so keep parking until the tick is reached
+            while (wait > 0) {
+                sleeper.accept(wait);
+                wait = nextTick - nanoTime();
+            }
+            nextTick += periodNanos();
+        } else {
+            overruns++;
+            nextTick = now + periodNanos();
+        }
+
+        now = nanoTime();
+        periods.recordNanos(now - tickStart);
+        tickStart = now;
+
+        if (now - lastReport >= REPORT_INTERVAL_MS * 1e6) {
+            lastReport = now;
+            publish();
+        }
+    }
+
+    /**
+     * Sends the current statistics to the dashboard and copies them into the log file. Called
+     * periodically by {@link #awaitNextTick()}; call it once more when the loop exits. Does
+     * nothing with logging off.
+     */
+    public void publish() {
+        if (!logging) {
+            return;
+        }
+
+        TelemetryPacket packet = new TelemetryPacket();
+        packet.put("loop period p50 (ms)", periods.percentile(0.50));
+        packet.put("loop period p95 (ms)", periods.percentile(0.95));
+        packet.put("loop period p99 (ms)", periods.percentile(0.99));
+        packet.put("loop period max (ms)", periods.getMaxMs());
+        packet.put("loop work p95 (ms)", workTimes.percentile(0.95));
+        packet.put("loop overruns", overruns);
+        // there's no dashboard off the robot, e.g. in the simulator
+        FtcDashboard dashboard = FtcDashboard.getInstance();
+        if (dashboard != null) {
+            dashboard.sendTelemetryPacket(packet);
+        }
+
+        LogFiles.log.loopPeriodP50Ms = periods.percentile(0.50);
+        LogFiles.log.loopPeriodP95Ms = periods.percentile(0.95);
+        LogFiles.log.loopPeriodP99Ms = periods.percentile(0.99);
+        LogFiles.log.loopPeriodMaxMs = periods.getMaxMs();
+        LogFiles.log.loopOverruns = overruns;
+    }
+
+    /**
+     * Turns publishing to the dashboard and {@link LogFiles}, and marking loops for
+     * {@link LoopProfiler}, on or off. All three are global, so schedulers that don't pace the
+     * actual robot (simulations) keep out of them; their statistics are still kept.
+     */
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+    }
+
+    public TimingHistogram getPeriods() {
+        return periods;
+    }
+
+    public TimingHistogram getWorkTimes() {
+        return workTimes;
+    }
+
+    public int getOverruns() {
+        return overruns;
+    }
+}
@@ -0,0 +1,168 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import java.util.List;
+
+/**
+ * Per-loop sample of the robot's sensors.
+ * <p>
+ * Hubs are switched to MANUAL bulk caching and each update clears every hub's cache exactly once,
+ * so the first encoder read afterwards issues one bulk read per hub and every other read in the
+ * same cycle (including ones made through {@link Encoder} or directly on the motors) is served
+ * from that cache. The values read are also kept in primitive fields so consumers in the cycle
+ * can share them without touching the hardware at all.
+ */
+@Config
+public class HardwareSnapshot {
+    // set to false to fall back to AUTO caching, e.g. to compare loop times
+    public static boolean MANUAL_CACHING = true;
+
+    private final List<LynxModule> modules;
+    private final DcMotorEx[] motors;
+    private final VoltageService voltageService;
+    private final ImuPoller imu;
+
+    public final int[] positions;
+    public final double[] velocities;
+    public double voltage;
+    public double heading; // raw IMU yaw in radians
+    public long timestampNanos;
+
+    private MotorOutputCache output;
+    private long lastWritesSent, lastWritesSkipped;
+    private int commandsLastCycle, uncachedCommandsLastCycle;
+
+    private long cycles;
+    private long lastCycleNanos;
+    private double loopTimeMs;
+    private boolean profiling = true;
+
+    public HardwareSnapshot(HardwareMap hardwareMap, VoltageService voltageService, ImuPoller imu, DcMotorEx... motors) {
+        this.modules = hardwareMap.getAll(LynxModule.class);
+        this.motors = motors;
+        this.voltageService = voltageService;
+        this.imu = imu;
+
+        positions = new int[motors.length];
+        velocities = new double[motors.length];
+
+        for (LynxModule module : modules) {
+            module.setBulkCachingMode(MANUAL_CACHING
+                    ? LynxModule.BulkCachingMode.MANUAL
+                    : LynxModule.BulkCachingMode.AUTO);
+        }
+    }
+
+    /**
+     * Refreshes the encoders only; cheap enough for the trajectory following loop.
+     */
+    public void updateEncoders() {
+        long now = System.nanoTime();
+        if (lastCycleNanos != 0) {
+            // exponential moving average so a single slow cycle doesn't swamp the reading
+            loopTimeMs += 0.1 * ((now - lastCycleNanos) / 1e6 - loopTimeMs);
+        }
+        lastCycleNanos = now;
+        timestampNanos = now;
+        if (cycles > 0) {
+            countCommands();
+        }
+        cycles++;
+
+        long span = profiling ? LoopProfiler.start() : 0;
+        if (MANUAL_CACHING) {
+            for (LynxModule module : modules) {
+                module.clearBulkCache();
+            }
+        }
+
+        for (int i = 0; i < motors.length; i++) {
+            positions[i] = motors[i].getCurrentPosition();
+            velocities[i] = motors[i].getVelocity();
+        }
+        LoopProfiler.end(LoopProfiler.HUB_READ, span);
+    }
+
+    /**
+     * Refreshes the encoders and picks up the latest battery voltage and IMU heading.
+     */
+    public void update() {
+        updateEncoders();
+
+        if (voltageService != null) {
+            // filtered value from the background sampler; doesn't touch the bus
+            voltage = voltageService.getVoltage();
+        }
+        if (imu != null) {
+            // latest sample from the background poller; doesn't touch the bus
+            long span = profiling ? LoopProfiler.start() : 0;
+            heading = imu.getHeading();
+            LoopProfiler.end(LoopProfiler.IMU, span);
+        }
+    }
+
+    /**
+     * Counts the writes sent through this cache towards {@link #getCommandsLastCycle()}.
+     */
+    public void setOutputCache(MotorOutputCache output) {
+        this.output = output;
+        if (output != null) {
+            lastWritesSent = output.getWritesSent();
+            lastWritesSkipped = output.getWritesSkipped();
+        }
+    }
+
+    private void countCommands() {
+        // the previous cycle's bulk reads: one per hub with MANUAL caching; with AUTO it's at least
+        // that, plus one for every value some other consumer read twice, which can't be seen here
+        int commands = modules.size();
+        int uncached = commands;
+        if (output != null) {
+            long sent = output.getWritesSent();
+            long skipped = output.getWritesSkipped();
+            commands += (int) (sent - lastWritesSent);
+            uncached += (int) (sent - lastWritesSent + skipped - lastWritesSkipped);
+            lastWritesSent = sent;
+            lastWritesSkipped = skipped;
+        }
+        commandsLastCycle = commands;
+        uncachedCommandsLastCycle = uncached;
+    }
+
+    /**
+     * @return hub transactions issued between the last two updates: the bulk reads made for the
+     * snapshot and the motor writes sent through the output cache. IMU reads happen on the
+     * poller's own thread and aren't included.
+     */
+    public int getCommandsLastCycle() {
+        return commandsLastCycle;
+    }
+
+    /**
+     * @return what {@link #getCommandsLastCycle()} would have been if the output cache had sent
+     * every write it skipped
+     */
+    public int getUncachedCommandsLastCycle() {
+        return uncachedCommandsLastCycle;
+    }
+
+    /**
+     * Turns timing into {@link LoopProfiler} on or off. The profiler is global, so snapshots of
+     * simulated hardware, which may be updated on other threads, keep out of it.
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    public double getLoopTimeMs() {
+        return loopTimeMs;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+}
@@ -0,0 +1,232 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.util.NanoClock;
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManagerImpl;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManagerNotifier;
+import com.qualcomm.robotcore.hardware.IMU;
+
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
+import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads the IMU heading and yaw rate on a background thread so the control loop never waits on
+ * the I2C bus.
+ * <p>
+ * The latest sample and its timestamp are published with a sequence lock, so {@link #getHeading}
+ * and {@link #getHeadingVelocity} are a couple of volatile reads. If the latest sample is older than {@link #MAX_SAMPLE_AGE_MS}
+ * (the poller stalled or hasn't started yet) the read falls back to a blocking IMU read on the
+ * caller's thread, except {@link #readLatest}, which never blocks and reports the sample as stale
+ * instead. A reader gives up on the sequence lock after {@link #MAX_READ_ATTEMPTS} tries rather
+ * than spin on a poller that died mid-write. The poller stops itself when the op mode stops.
+ * <p>
+ * Constructed with a {@link NanoClock} there is no background thread and every read goes straight
+ * to the IMU, stamped with that clock; the simulator uses this, since its time isn't wall time.
+ */
+@Config
+public class ImuPoller {
+    public static double SAMPLE_RATE_HZ = 100;
+    public static double MAX_SAMPLE_AGE_MS = 50;
+
+    private static final int MAX_READ_ATTEMPTS = 100;
+
+    private final IMU imu;
+    // null when reading on the caller's thread
+    private final Thread thread;
+    private final NanoClock clock;
+    private volatile boolean running = true;
+
+    // odd while the poller is writing heading/yawRate/timestamp
+    private volatile int sequence;
+    private volatile double heading;
+    private volatile double yawRate;
+    private volatile long timestampNanos;
+
+    // the last consistent sample a reader saw; op mode thread only
+    private double readHeading, readYawRate;
+    private long readStamp;
+
+    private long staleReads;
+
+    private final OpModeManagerNotifier.Notifications stopListener = new OpModeManagerNotifier.Notifications() {
+        @Override
+        public void onOpModePreInit(OpMode opMode) {
+        }
+
+        @Override
+        public void onOpModePreStart(OpMode opMode) {
+        }
+
+        @Override
+        public void onOpModePostStop(OpMode opMode) {
+            stop();
+        }
+    };
+
+    public ImuPoller(IMU imu) {
+        this.imu = imu;
+        this.clock = null;
+
+        publish(readImu(), readYawRate(), System.nanoTime());
+
+        OpModeManagerImpl manager = OpModeManagerImpl.getOpModeManagerOfActivity(AppUtil.getInstance().getActivity());
+        if (manager != null) {
+            manager.registerListener(stopListener);
+        }
+
+        thread = new Thread(this::run, "ImuPoller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads on the caller's thread, with samples stamped by {@code clock}.
+     */
+    public ImuPoller(IMU imu, NanoClock clock) {
+        this.imu = imu;
+        this.clock = clock;
+        thread = null;
+        running = false;
+    }
+
+    private double readImu() {
+        return imu.getRobotOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.RADIANS).firstAngle;
+    }
+
+    private double readYawRate() {
+        return imu.getRobotAngularVelocity(AngleUnit.RADIANS).zRotationRate;
+    }
+
+    private void publish(double heading, double yawRate, long timestampNanos) {
+        sequence++;
+        this.heading = heading;
+        this.yawRate = yawRate;
+        this.timestampNanos = timestampNanos;
+        sequence++;
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running && !Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+            double value = readImu();
+            publish(value, readYawRate(), now);
+
+            next += (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(1, SAMPLE_RATE_HZ));
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                // fell behind; don't try to catch up with a burst of reads
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Copies the latest published sample into {@link #readHeading}, {@link #readYawRate} and
+     * {@link #readStamp}, which keep the last consistent sample if the poller is caught mid-write
+     * on every attempt.
+     */
+    private void readSample() {
+        for (int i = 0; i < MAX_READ_ATTEMPTS; i++) {
+            int seq = sequence;
+            double heading = this.heading;
+            double yawRate = this.yawRate;
+            long stamp = timestampNanos;
+            if ((seq & 1) == 0 && seq == sequence) {
+                readHeading = heading;
+                readYawRate = yawRate;
+                readStamp = stamp;
+                return;
+            }
+        }
+    }
+
+    private boolean isFresh(long stamp) {
+        return System.nanoTime() - stamp <= MAX_SAMPLE_AGE_MS * 1e6;
+    }
+
+    /**
+     * @return the latest raw IMU yaw in radians
+     */
+    public double getHeading() {
+        if (thread == null) {
+            return readImu();
+        }
+        readSample();
+        if (isFresh(readStamp)) {
+            return readHeading;
+        }
+
+        staleReads++;
+        return readImu();
+    }
+
+    /**
+     * @return the yaw rate sampled with the latest heading, in radians per second
+     */
+    public double getHeadingVelocity() {
+        if (thread == null) {
+            return readYawRate();
+        }
+        readSample();
+        if (isFresh(readStamp)) {
+            return readYawRate;
+        }
+
+        staleReads++;
+        return readYawRate();
+    }
+
+    /**
+     * Reads the latest published sample without ever blocking on the IMU.
+     *
+     * @param out receives the raw yaw in radians at index 0
+     * @return {@link System#nanoTime()} at which the sample was taken, or 0 if it's older than
+     * {@link #MAX_SAMPLE_AGE_MS} (out still gets the last good yaw)
+     */
+    public long readLatest(double[] out) {
+        if (thread == null) {
+            out[0] = readImu();
+            return (long) (clock.seconds() * 1e9);
+        }
+        readSample();
+        out[0] = readHeading;
+        if (isFresh(readStamp)) {
+            return readStamp;
+        }
+
+        staleReads++;
+        return 0;
+    }
+
+    /**
+     * @return age of the latest published sample in milliseconds
+     */
+    public double getSampleAgeMs() {
+        if (thread == null) {
+            return 0;
+        }
+        return (System.nanoTime() - timestampNanos) / 1e6;
+    }
+
+    /**
+     * @return number of reads whose sample was too stale to use, and so fell back to a blocking IMU
+     * read or, from {@link #readLatest}, were reported stale
+     */
+    public long getStaleReads() {
+        return staleReads;
+    }
+
+    public void stop() {
+        // the op mode manager only holds the listener weakly, so it goes away with this poller
+        running = false;
+    }
+}
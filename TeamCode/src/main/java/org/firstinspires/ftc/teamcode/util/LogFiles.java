@@ -4,7 +4,9 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 
 import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.fasterxml.jackson.annotation.JsonView;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.qualcomm.hardware.rev.RevHubOrientationOnRobot;
@@ -17,6 +19,8 @@ import com.qualcomm.robotcore.util.WebHandlerManager;
 import org.firstinspires.ftc.ftccommon.external.WebHandlerRegistrar;
 import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
 import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+import org.firstinspires.ftc.teamcode.drive.FusionEvaluation;
+import org.firstinspires.ftc.teamcode.drive.HeadingFusionLocalizer;
 import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
 import org.firstinspires.ftc.teamcode.drive.SampleTankDrive;
 import org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer;
@@ -31,6 +35,7 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import fi.iki.elonen.NanoHTTPD;
 
@@ -38,8 +43,33 @@ public final class LogFiles {
     private static final File ROOT =
             new File(AppUtil.ROOT_FOLDER + "/RoadRunner/logs/");
 
+    // enough for the 3 minute recording window at a 200 Hz control loop; only allocated when the
+    // log can't be streamed and has to be kept in memory until stop
+    public static int MAX_SAMPLES = 3 * 60 * 200;
+
+    static final int MAX_ENCODERS = 4;
+
     public static LogFile log = new LogFile("uninitialized");
 
+    private static LogStreamWriter stream;
+
+    // latest IMU field heading and when the IMU took it, recorded with every sample; NaN and 0
+    // when nothing reports one
+    private static double imuHeading = Double.NaN;
+    private static long imuNsTime;
+
+    /**
+     * Jackson views: {@link Views.Metadata} leaves out the sample columns, which is what the
+     * streamed log header and trailer need.
+     */
+    public static class Views {
+        public static class Metadata {
+        }
+
+        public static class Samples extends Metadata {
+        }
+    }
+
     public static class LogFile {
         public String version = "quickstart1 v2";
 
@@ -90,89 +120,319 @@ public final class LogFiles {
         public double trackingLateralDistance = StandardTrackingWheelLocalizer.LATERAL_DISTANCE;
         public double trackingForwardOffset = StandardTrackingWheelLocalizer.FORWARD_OFFSET;
 
+        public double imuGain = HeadingFusionLocalizer.IMU_GAIN;
+        public double imuLatencyMs = HeadingFusionLocalizer.IMU_LATENCY_MS;
+
         public RevHubOrientationOnRobot.LogoFacingDirection LOGO_FACING_DIR = DriveConstants.LOGO_FACING_DIR;
         public RevHubOrientationOnRobot.UsbFacingDirection USB_FACING_DIR = DriveConstants.USB_FACING_DIR;
 
-        public List<Long> nsTimes = new ArrayList<>();
+        public double loopPeriodP50Ms, loopPeriodP95Ms, loopPeriodP99Ms, loopPeriodMaxMs;
+        public int loopOverruns;
+
+        public long streamDroppedSamples;
+        // samples that didn't fit in the in-memory log's MAX_SAMPLES
+        public long truncatedSamples;
+
+        // every time voltage compensated gains were re-applied; rare, so a list is fine here
+        public final List<VoltageCompensation> voltageCompensations = new ArrayList<>();
+
+        // one row per LoopProfiler span and window; empty unless LoopProfiler.ENABLED. Copy on
+        // write, as the log is serialized on the op mode manager's thread while rows may still
+        // come in from the loop; a row a second is cheap to copy
+        public final List<LoopProfileRow> loopProfile = new CopyOnWriteArrayList<>();
+
+        // Samples are stored column-wise in primitive arrays that are allocated once per op mode,
+        // so recording a sample from the control loop never boxes or grows a collection.
+        private final int capacity;
+        private int size;
+
+        private final long[] nsTimes;
+
+        private final double[] targetXs;
+        private final double[] targetYs;
+        private final double[] targetHeadings;
 
-        public List<Double> targetXs = new ArrayList<>();
-        public List<Double> targetYs = new ArrayList<>();
-        public List<Double> targetHeadings = new ArrayList<>();
+        private final double[] xs;
+        private final double[] ys;
+        private final double[] headings;
 
-        public List<Double> xs = new ArrayList<>();
-        public List<Double> ys = new ArrayList<>();
-        public List<Double> headings = new ArrayList<>();
+        private final double[] voltages;
 
-        public List<Double> voltages = new ArrayList<>();
+        private final double[] imuHeadings;
+        private final long[] imuNsTimes;
 
-        public List<List<Integer>> driveEncPositions = new ArrayList<>();
-        public List<List<Integer>> driveEncVels = new ArrayList<>();
-        public List<List<Integer>> trackingEncPositions = new ArrayList<>();
-        public List<List<Integer>> trackingEncVels = new ArrayList<>();
+        private final EncoderColumns driveEncPositions;
+        private final EncoderColumns driveEncVels;
+        private final EncoderColumns trackingEncPositions;
+        private final EncoderColumns trackingEncVels;
 
         public LogFile(String opModeName) {
+            this(opModeName, 0);
+        }
+
+        public LogFile(String opModeName, int capacity) {
             this.opModeName = opModeName;
+            this.capacity = capacity;
+
+            nsTimes = new long[capacity];
+
+            targetXs = new double[capacity];
+            targetYs = new double[capacity];
+            targetHeadings = new double[capacity];
+
+            xs = new double[capacity];
+            ys = new double[capacity];
+            headings = new double[capacity];
+
+            voltages = new double[capacity];
+
+            imuHeadings = new double[capacity];
+            imuNsTimes = new long[capacity];
+
+            driveEncPositions = new EncoderColumns(capacity);
+            driveEncVels = new EncoderColumns(capacity);
+            trackingEncPositions = new EncoderColumns(capacity);
+            trackingEncVels = new EncoderColumns(capacity);
         }
-    }
 
-    public static void record(
-            Pose2d targetPose, Pose2d pose, double voltage,
-            List<Integer> lastDriveEncPositions, List<Integer> lastDriveEncVels, List<Integer> lastTrackingEncPositions, List<Integer> lastTrackingEncVels
-    ) {
-        long nsTime = System.nanoTime();
-        if (nsTime - log.nsStart > 3 * 60 * 1_000_000_000L) {
-            return;
+        public int size() {
+            return size;
         }
 
-        log.nsTimes.add(nsTime);
+        @JsonView(Views.Samples.class)
+        public long[] getNsTimes() {
+            return Arrays.copyOf(nsTimes, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getTargetXs() {
+            return Arrays.copyOf(targetXs, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getTargetYs() {
+            return Arrays.copyOf(targetYs, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getTargetHeadings() {
+            return Arrays.copyOf(targetHeadings, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getXs() {
+            return Arrays.copyOf(xs, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getYs() {
+            return Arrays.copyOf(ys, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getHeadings() {
+            return Arrays.copyOf(headings, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public double[] getVoltages() {
+            return Arrays.copyOf(voltages, size);
+        }
 
-        log.targetXs.add(targetPose.getX());
-        log.targetYs.add(targetPose.getY());
-        log.targetHeadings.add(targetPose.getHeading());
+        @JsonView(Views.Samples.class)
+        public double[] getImuHeadings() {
+            return Arrays.copyOf(imuHeadings, size);
+        }
+
+        @JsonView(Views.Samples.class)
+        public long[] getImuNsTimes() {
+            return Arrays.copyOf(imuNsTimes, size);
+        }
 
-        log.xs.add(pose.getX());
-        log.ys.add(pose.getY());
-        log.headings.add(pose.getHeading());
+        @JsonView(Views.Samples.class)
+        public int[][] getDriveEncPositions() {
+            return driveEncPositions.toArrays(size);
+        }
 
-        log.voltages.add(voltage);
+        @JsonView(Views.Samples.class)
+        public int[][] getDriveEncVels() {
+            return driveEncVels.toArrays(size);
+        }
 
-        while (log.driveEncPositions.size() < lastDriveEncPositions.size()) {
-            log.driveEncPositions.add(new ArrayList<>());
+        @JsonView(Views.Samples.class)
+        public int[][] getTrackingEncPositions() {
+            return trackingEncPositions.toArrays(size);
         }
-        while (log.driveEncVels.size() < lastDriveEncVels.size()) {
-            log.driveEncVels.add(new ArrayList<>());
+
+        @JsonView(Views.Samples.class)
+        public int[][] getTrackingEncVels() {
+            return trackingEncVels.toArrays(size);
         }
-        while (log.trackingEncPositions.size() < lastTrackingEncPositions.size()) {
-            log.trackingEncPositions.add(new ArrayList<>());
+    }
+
+    public static class VoltageCompensation {
+        public long nsTime;
+        public double voltage;
+        public double motorF;
+
+        VoltageCompensation(long nsTime, double voltage, double motorF) {
+            this.nsTime = nsTime;
+            this.voltage = voltage;
+            this.motorF = motorF;
+        }
+    }
+
+    public static class LoopProfileRow {
+        public long nsTime;
+        public String span;
+        public int count;
+        public double minMs, meanMs, p95Ms, maxMs;
+
+        LoopProfileRow(long nsTime, String span, int count, double minMs, double meanMs, double p95Ms, double maxMs) {
+            this.nsTime = nsTime;
+            this.span = span;
+            this.count = count;
+            this.minMs = minMs;
+            this.meanMs = meanMs;
+            this.p95Ms = p95Ms;
+            this.maxMs = maxMs;
+        }
+    }
+
+    /**
+     * Fixed set of per-encoder columns. Serializes the same as the {@code List<List<Integer>>}
+     * it replaces: one array per encoder, each holding one entry per sample.
+     */
+    private static class EncoderColumns {
+        private final int[][] columns;
+        private int width;
+
+        EncoderColumns(int capacity) {
+            columns = new int[MAX_ENCODERS][capacity];
         }
-        while (log.trackingEncVels.size() < lastTrackingEncVels.size()) {
-            log.trackingEncVels.add(new ArrayList<>());
+
+        void set(int row, int[] values) {
+            int n = Math.min(values.length, MAX_ENCODERS);
+            if (n > width) {
+                width = n;
+            }
+            for (int i = 0; i < n; i++) {
+                columns[i][row] = values[i];
+            }
         }
 
-        for (int i = 0; i < lastDriveEncPositions.size(); i++) {
-            log.driveEncPositions.get(i).add(lastDriveEncPositions.get(i));
+        int[][] toArrays(int size) {
+            int[][] out = new int[width][];
+            for (int i = 0; i < width; i++) {
+                out[i] = Arrays.copyOf(columns[i], size);
+            }
+            return out;
         }
-        for (int i = 0; i < lastDriveEncVels.size(); i++) {
-            log.driveEncVels.get(i).add(lastDriveEncVels.get(i));
+    }
+
+    /**
+     * Notes that voltage compensated gains were (re-)applied for the given voltage.
+     */
+    public static void recordVoltageCompensation(double voltage, double motorF) {
+        log.voltageCompensations.add(new VoltageCompensation(System.nanoTime(), voltage, motorF));
+    }
+
+    /**
+     * Notes a span's statistics over a {@link LoopProfiler} window ending at {@code nsTime}. Safe
+     * to call from any thread.
+     */
+    public static void recordLoopProfile(long nsTime, String span, int count,
+                                         double minMs, double meanMs, double p95Ms, double maxMs) {
+        log.loopProfile.add(new LoopProfileRow(nsTime, span, count, minMs, meanMs, p95Ms, maxMs));
+    }
+
+    /**
+     * Sets the IMU heading stored with the following samples.
+     *
+     * @param sampleNsTime {@link System#nanoTime()} at which the IMU sample was taken; it repeats
+     *                     while the IMU has nothing newer
+     */
+    public static void recordImuHeading(double heading, long sampleNsTime) {
+        imuHeading = heading;
+        imuNsTime = sampleNsTime;
+    }
+
+    /**
+     * Adds a sample. The encoder arrays are copied, so callers keep one set and overwrite it every
+     * loop; an empty array leaves its columns out.
+     */
+    public static void record(
+            Pose2d targetPose, Pose2d pose, double voltage,
+            int[] lastDriveEncPositions, int[] lastDriveEncVels, int[] lastTrackingEncPositions, int[] lastTrackingEncVels
+    ) {
+        long nsTime = System.nanoTime();
+        if (nsTime - log.nsStart > 3 * 60 * 1_000_000_000L) {
+            return;
         }
-        for (int i = 0; i < lastTrackingEncPositions.size(); i++) {
-            log.trackingEncPositions.get(i).add(lastTrackingEncPositions.get(i));
+
+        LogStreamWriter s = stream;
+        if (s != null) {
+            s.offer(
+                    nsTime, targetPose, pose, voltage, imuHeading, imuNsTime,
+                    lastDriveEncPositions, lastDriveEncVels, lastTrackingEncPositions, lastTrackingEncVels
+            );
         }
-        for (int i = 0; i < lastTrackingEncVels.size(); i++) {
-            log.trackingEncVels.get(i).add(lastTrackingEncVels.get(i));
+
+        if (log.size >= log.capacity) {
+            // a streamed log keeps no samples in memory, so only a full in-memory log truncates
+            if (log.capacity > 0 && log.truncatedSamples++ == 0) {
+                RobotLog.ww("LogFiles", "log full at %d samples, dropping the rest", log.capacity);
+            }
+            return;
         }
+
+        int i = log.size;
+
+        log.nsTimes[i] = nsTime;
+
+        log.targetXs[i] = targetPose.getX();
+        log.targetYs[i] = targetPose.getY();
+        log.targetHeadings[i] = targetPose.getHeading();
+
+        log.xs[i] = pose.getX();
+        log.ys[i] = pose.getY();
+        log.headings[i] = pose.getHeading();
+
+        log.voltages[i] = voltage;
+
+        log.imuHeadings[i] = imuHeading;
+        log.imuNsTimes[i] = imuNsTime;
+
+        log.driveEncPositions.set(i, lastDriveEncPositions);
+        log.driveEncVels.set(i, lastDriveEncVels);
+        log.trackingEncPositions.set(i, lastTrackingEncPositions);
+        log.trackingEncVels.set(i, lastTrackingEncVels);
+
+        log.size = i + 1;
+    }
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper(new JsonFactory());
+
+    private static byte[] metadataJson() throws IOException {
+        return JSON_MAPPER.writerWithView(Views.Metadata.class).writeValueAsBytes(log);
     }
 
     private static final OpModeManagerNotifier.Notifications notifHandler = new OpModeManagerNotifier.Notifications() {
         @SuppressLint("SimpleDateFormat")
         final DateFormat dateFormat = new SimpleDateFormat("yyyy_MM_dd__HH_mm_ss_SSS");
 
-        final ObjectWriter jsonWriter = new ObjectMapper(new JsonFactory())
-                .writerWithDefaultPrettyPrinter();
+        final ObjectWriter jsonWriter = JSON_MAPPER.writerWithDefaultPrettyPrinter();
+
+        String baseName(OpMode opMode) {
+            return dateFormat.format(new Date(log.msInit)) + "__" + opMode.getClass().getSimpleName();
+        }
 
         @Override
         public void onOpModePreInit(OpMode opMode) {
+            // no sample columns until we know whether the samples go to a stream or stay in memory
             log = new LogFile(opMode.getClass().getCanonicalName());
+            imuHeading = Double.NaN;
+            imuNsTime = 0;
 
             // clean up old files
             File[] fs = Objects.requireNonNull(ROOT.listFiles());
@@ -190,6 +450,19 @@ public final class LogFiles {
                 }
                 ++i;
             }
+
+            if (!(opMode instanceof OpModeManagerImpl.DefaultOpMode)) {
+                File file = new File(ROOT, baseName(opMode) + LogStreamWriter.EXTENSION);
+                try {
+                    stream = new LogStreamWriter(file, metadataJson());
+                } catch (IOException e) {
+                    // fall back to writing the in-memory log at stop
+                    stream = null;
+                    log = new LogFile(opMode.getClass().getCanonicalName(), MAX_SAMPLES);
+                    RobotLog.setGlobalErrorMsg(new RuntimeException(e),
+                            "Unable to open log stream " + file.getAbsolutePath());
+                }
+            }
         }
 
         @Override
@@ -201,11 +474,23 @@ public final class LogFiles {
         public void onOpModePostStop(OpMode opMode) {
             log.nsStop = System.nanoTime();
 
+            LogStreamWriter s = stream;
+            if (s != null) {
+                stream = null;
+                log.streamDroppedSamples = s.getDropped();
+                try {
+                    s.close(metadataJson());
+                } catch (IOException e) {
+                    RobotLog.setGlobalErrorMsg(new RuntimeException(e), "Unable to finish log stream");
+                }
+                return;
+            }
+
             if (!(opMode instanceof OpModeManagerImpl.DefaultOpMode)) {
                 //noinspection ResultOfMethodCallIgnored
                 ROOT.mkdirs();
 
-                String filename = dateFormat.format(new Date(log.msInit)) + "__" + opMode.getClass().getSimpleName() + ".json";
+                String filename = baseName(opMode) + ".json";
                 File file = new File(ROOT, filename);
                 try {
                     jsonWriter.writeValue(file, log);
@@ -234,12 +519,17 @@ public final class LogFiles {
             File[] fs = Objects.requireNonNull(ROOT.listFiles());
             Arrays.sort(fs, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
             for (File f : fs) {
+                // streamed logs are offered under their converted JSON name
+                String name = f.getName();
+                if (name.endsWith(LogStreamWriter.EXTENSION)) {
+                    name = name.substring(0, name.length() - LogStreamWriter.EXTENSION.length()) + ".json";
+                }
                 sb.append("<li><a href=\"/logs/download?file=");
-                sb.append(f.getName());
+                sb.append(name);
                 sb.append("\" download=\"");
-                sb.append(f.getName());
+                sb.append(name);
                 sb.append("\">");
-                sb.append(f.getName());
+                sb.append(name);
                 sb.append("</a></li>");
             }
             sb.append("</ul></body></html>");
@@ -261,6 +551,15 @@ public final class LogFiles {
             }
 
             File f = new File(ROOT, parts[1]);
+            if (!f.exists() && parts[1].endsWith(".json")) {
+                File streamed = new File(ROOT, parts[1].substring(0, parts[1].length() - ".json".length())
+                        + LogStreamWriter.EXTENSION);
+                if (streamed.exists()) {
+                    return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK,
+                            "application/json", LogStreamWriter.toJson(streamed, JSON_MAPPER));
+                }
+            }
+
             if (!f.exists()) {
                 return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_FOUND,
                         NanoHTTPD.MIME_PLAINTEXT, "file " + f + " doesn't exist");
@@ -269,5 +568,36 @@ public final class LogFiles {
             return NanoHTTPD.newChunkedResponse(NanoHTTPD.Response.Status.OK,
                     "application/json", new FileInputStream(f));
         });
+
+        manager.register("/logs/fusion", session -> {
+            List<String> files = session.getParameters().get("file");
+            if (files == null || files.size() != 1) {
+                return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.BAD_REQUEST,
+                        NanoHTTPD.MIME_PLAINTEXT, "expected one file query parameter");
+            }
+            List<String> gains = session.getParameters().get("gain");
+            double gain = gains == null ? HeadingFusionLocalizer.IMU_GAIN : Double.parseDouble(gains.get(0));
+            List<String> latencies = session.getParameters().get("latency");
+            double latencyMs = latencies == null ? Double.NaN : Double.parseDouble(latencies.get(0));
+            List<String> finalHeadings = session.getParameters().get("finalHeading");
+            double finalHeading = finalHeadings == null
+                    ? Double.NaN : Math.toRadians(Double.parseDouble(finalHeadings.get(0)));
+
+            String name = files.get(0);
+            File f = new File(ROOT, name);
+            File streamed = new File(ROOT, name.replaceFirst("\\.json$", "") + LogStreamWriter.EXTENSION);
+            JsonNode trace;
+            if (f.exists()) {
+                trace = JSON_MAPPER.readTree(f);
+            } else if (streamed.exists()) {
+                trace = JSON_MAPPER.readTree(LogStreamWriter.toJson(streamed, JSON_MAPPER));
+            } else {
+                return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_FOUND,
+                        NanoHTTPD.MIME_PLAINTEXT, "file " + f + " doesn't exist");
+            }
+
+            return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK,
+                    NanoHTTPD.MIME_PLAINTEXT, FusionEvaluation.evaluate(trace, gain, latencyMs, finalHeading));
+        });
     }
 }
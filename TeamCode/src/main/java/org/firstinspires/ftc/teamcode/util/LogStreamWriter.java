@@ -0,0 +1,284 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams {@link LogFiles} samples to disk from a background thread, so stopping an op mode
+ * doesn't wait on one large JSON dump and a crash mid-match only loses the last few samples.
+ * <p>
+ * The control loop hands samples over through a single-producer/single-consumer ring of
+ * preallocated primitive slots. {@link #offer} never blocks or allocates; if the writer falls a
+ * full ring behind, the sample is dropped and counted.
+ * <p>
+ * File layout (big-endian): magic, length-prefixed UTF-8 JSON header holding the
+ * {@link LogFiles.LogFile} metadata, then a sequence of sample records, then an optional trailer
+ * with the metadata as it stood at stop (start/stop times, loop statistics and so on), which
+ * overrides the header. {@link #toJson} converts a file back into the quickstart1 v2 JSON.
+ */
+public class LogStreamWriter {
+    public static final String EXTENSION = ".rrlog";
+
+    private static final int MAGIC = 0x52524C33; // "RRL3"
+    private static final byte RECORD_SAMPLE = 1;
+    private static final byte RECORD_TRAILER = 2;
+
+    private static final int RING_SIZE = 1024; // must be a power of two
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int POSE_FIELDS = 8;
+    private static final int ENC_GROUPS = 4;
+    private static final int ENC_STRIDE = ENC_GROUPS * LogFiles.MAX_ENCODERS;
+
+    private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long CLOSE_TIMEOUT_MS = 500;
+
+    private final long[] nsTimes = new long[RING_SIZE];
+    private final long[] imuNsTimes = new long[RING_SIZE];
+    private final double[] values = new double[RING_SIZE * POSE_FIELDS];
+    private final int[] encCounts = new int[RING_SIZE * ENC_GROUPS];
+    private final int[] encValues = new int[RING_SIZE * ENC_STRIDE];
+
+    // head: next slot the writer reads; tail: next slot the producer fills
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // owned by the writer thread once it starts; it writes the trailer and closes the file
+    private final DataOutputStream out;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile byte[] trailer;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LogStreamWriter(File file, byte[] header) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(header.length);
+        out.write(header);
+        out.flush();
+
+        thread = new Thread(this::run, "LogStreamWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues one sample. Must only be called from a single thread (the control loop).
+     */
+    public void offer(
+            long nsTime, Pose2d targetPose, Pose2d pose, double voltage, double imuHeading, long imuNsTime,
+            int[] driveEncPositions, int[] driveEncVels,
+            int[] trackingEncPositions, int[] trackingEncVels
+    ) {
+        long t = tail.get();
+        if (t - head.get() >= RING_SIZE) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        int slot = (int) (t & RING_MASK);
+        nsTimes[slot] = nsTime;
+        imuNsTimes[slot] = imuNsTime;
+
+        int v = slot * POSE_FIELDS;
+        values[v] = targetPose.getX();
+        values[v + 1] = targetPose.getY();
+        values[v + 2] = targetPose.getHeading();
+        values[v + 3] = pose.getX();
+        values[v + 4] = pose.getY();
+        values[v + 5] = pose.getHeading();
+        values[v + 6] = voltage;
+        values[v + 7] = imuHeading;
+
+        putEncoders(slot, 0, driveEncPositions);
+        putEncoders(slot, 1, driveEncVels);
+        putEncoders(slot, 2, trackingEncPositions);
+        putEncoders(slot, 3, trackingEncVels);
+
+        tail.lazySet(t + 1);
+    }
+
+    private void putEncoders(int slot, int group, int[] encoders) {
+        int n = Math.min(encoders.length, LogFiles.MAX_ENCODERS);
+        encCounts[slot * ENC_GROUPS + group] = n;
+        System.arraycopy(encoders, 0, encValues, slot * ENC_STRIDE + group * LogFiles.MAX_ENCODERS, n);
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        try {
+            while (running || head.get() != tail.get()) {
+                long h = head.get();
+                long t = tail.get();
+                if (h == t) {
+                    LockSupport.parkNanos(IDLE_PARK_NS);
+                    continue;
+                }
+
+                for (; h < t; h++) {
+                    writeSample((int) (h & RING_MASK));
+                }
+                head.lazySet(h);
+
+                out.flush();
+            }
+
+            byte[] t = trailer;
+            if (t != null) {
+                out.writeByte(RECORD_TRAILER);
+                out.writeInt(t.length);
+                out.write(t);
+            }
+        } catch (IOException e) {
+            RobotLog.ee("LogStreamWriter", e, "log stream write failed");
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                RobotLog.ee("LogStreamWriter", e, "log stream close failed");
+            }
+        }
+    }
+
+    private void writeSample(int slot) throws IOException {
+        out.writeByte(RECORD_SAMPLE);
+        out.writeLong(nsTimes[slot]);
+        out.writeLong(imuNsTimes[slot]);
+
+        int v = slot * POSE_FIELDS;
+        for (int i = 0; i < POSE_FIELDS; i++) {
+            out.writeDouble(values[v + i]);
+        }
+
+        for (int group = 0; group < ENC_GROUPS; group++) {
+            int n = encCounts[slot * ENC_GROUPS + group];
+            int base = slot * ENC_STRIDE + group * LogFiles.MAX_ENCODERS;
+            out.writeByte(n);
+            for (int i = 0; i < n; i++) {
+                out.writeInt(encValues[base + i]);
+            }
+        }
+    }
+
+    /**
+     * Has the writer thread drain the remaining samples, write the trailer and close the file,
+     * and waits up to {@link #CLOSE_TIMEOUT_MS} for it. A writer stuck on slow storage finishes
+     * the file on its own after this returns.
+     */
+    public void close(byte[] trailer) {
+        this.trailer = trailer;
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            RobotLog.ww("LogStreamWriter", "log stream still writing after %d ms", CLOSE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Converts a streamed log into the same JSON document the op mode used to write at stop.
+     * A file cut short by a crash converts up to its last complete sample.
+     */
+    public static String toJson(File file, ObjectMapper mapper) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a log stream: " + file);
+            }
+
+            byte[] header = new byte[in.readInt()];
+            in.readFully(header);
+            ObjectNode root = (ObjectNode) mapper.readTree(header);
+
+            ArrayNode nsTimes = root.putArray("nsTimes");
+            ArrayNode imuNsTimes = root.putArray("imuNsTimes");
+            ArrayNode[] columns = {
+                    root.putArray("targetXs"), root.putArray("targetYs"), root.putArray("targetHeadings"),
+                    root.putArray("xs"), root.putArray("ys"), root.putArray("headings"),
+                    root.putArray("voltages"), root.putArray("imuHeadings")
+            };
+            ArrayNode[] encGroups = {
+                    root.putArray("driveEncPositions"), root.putArray("driveEncVels"),
+                    root.putArray("trackingEncPositions"), root.putArray("trackingEncVels")
+            };
+
+            double[] sample = new double[POSE_FIELDS];
+            int[][] enc = new int[ENC_GROUPS][LogFiles.MAX_ENCODERS];
+            int[] encN = new int[ENC_GROUPS];
+
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == RECORD_TRAILER) {
+                        byte[] trailer = new byte[in.readInt()];
+                        in.readFully(trailer);
+                        root.setAll((ObjectNode) mapper.readTree(trailer));
+                        break;
+                    } else if (type != RECORD_SAMPLE) {
+                        throw new IOException("unknown record type " + type + " in " + file);
+                    }
+
+                    // read the whole record before appending so a truncated tail is skipped cleanly
+                    long nsTime = in.readLong();
+                    long imuNsTime = in.readLong();
+                    for (int i = 0; i < POSE_FIELDS; i++) {
+                        sample[i] = in.readDouble();
+                    }
+                    for (int group = 0; group < ENC_GROUPS; group++) {
+                        encN[group] = in.readUnsignedByte();
+                        for (int i = 0; i < encN[group]; i++) {
+                            enc[group][i] = in.readInt();
+                        }
+                    }
+
+                    nsTimes.add(nsTime);
+                    imuNsTimes.add(imuNsTime);
+                    for (int i = 0; i < POSE_FIELDS; i++) {
+                        columns[i].add(sample[i]);
+                    }
+                    for (int group = 0; group < ENC_GROUPS; group++) {
+                        ArrayNode encoders = encGroups[group];
+                        while (encoders.size() < encN[group]) {
+                            encoders.addArray();
+                        }
+                        for (int i = 0; i < encN[group]; i++) {
+                            ((ArrayNode) encoders.get(i)).add(enc[group][i]);
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // no trailer: the op mode didn't stop cleanly
+                JsonNode first = nsTimes.get(0);
+                if (first != null && root.path("nsStart").asLong() == 0) {
+                    root.put("nsStart", first.asLong());
+                }
+            }
+
+            return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+        }
+    }
+}
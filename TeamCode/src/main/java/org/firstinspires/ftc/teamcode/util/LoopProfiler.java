@@ -0,0 +1,158 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+
+/**
+ * Breaks the control loop's time down by phase. A phase is a named span, registered once for a
+ * fixed slot; timing it is
+ * <pre>
+ *     long span = LoopProfiler.start();
+ *     ...
+ *     LoopProfiler.end(LoopProfiler.HUB_READ, span);
+ * </pre>
+ * which records into the slot's {@link TimingHistogram} and allocates nothing. Every
+ * {@link #WINDOW_MS} the min/mean/p95/max of each span over the window go to the dashboard and
+ * into {@link LogFiles}, and the window starts over. {@link #endLoop()} marks the end of an
+ * iteration, which is also where windows are closed; the time between iterations is the
+ * {@link #LOOP} span.
+ * <p>
+ * Disabled, {@link #start()} is a field read and {@link #end} a comparison, so the calls stay in
+ * the code for good. Spans are recorded unsynchronized, so only time the control loop's thread;
+ * code that also runs in simulations, which may be on any thread, skips the calls when simulated.
+ */
+@Config
+public final class LoopProfiler {
+    public static boolean ENABLED = false;
+    public static double WINDOW_MS = 1000;
+
+    private static final int MAX_SPANS = 16;
+    private static final double HISTOGRAM_RANGE_MS = 100;
+
+    private static final String[] names = new String[MAX_SPANS];
+    private static final TimingHistogram[] histograms = new TimingHistogram[MAX_SPANS];
+    // dashboard keys, built once per span instead of once per window
+    private static final String[][] keys = new String[MAX_SPANS][];
+    private static int spanCount;
+
+    private static long windowStart;
+    private static long lastLoopEnd;
+
+    public static final int LOOP = register("loop");
+    public static final int HUB_READ = register("hub read");
+    public static final int IMU = register("imu");
+    public static final int LOCALIZER = register("localizer");
+    public static final int FOLLOWER = register("follower");
+    public static final int DRAW = register("draw");
+    public static final int CONTROLLER = register("controller");
+    public static final int TELEMETRY = register("telemetry");
+
+    private LoopProfiler() {
+    }
+
+    /**
+     * Gets the slot for a span, adding it the first time the name is seen. Call it once, e.g. in
+     * a static initializer or an op mode's init, and keep the slot.
+     */
+    public static synchronized int register(String name) {
+        for (int i = 0; i < spanCount; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        if (spanCount == MAX_SPANS) {
+            throw new IllegalStateException("no free profiler slot for " + name);
+        }
+
+        int span = spanCount++;
+        names[span] = name;
+        histograms[span] = new TimingHistogram(HISTOGRAM_RANGE_MS);
+        keys[span] = new String[]{
+                name + " min (ms)", name + " mean (ms)", name + " p95 (ms)", name + " max (ms)", name + " count"
+        };
+        return span;
+    }
+
+    /**
+     * @return the start of a span, or 0 when disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @param startNanos what {@link #start()} returned
+     */
+    public static void end(int span, long startNanos) {
+        if (startNanos != 0) {
+            histograms[span].recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Call once per iteration of the control loop.
+     */
+    public static void endLoop() {
+        if (!ENABLED) {
+            // so the first loop after enabling isn't measured from whenever it was disabled
+            lastLoopEnd = 0;
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (lastLoopEnd == 0) {
+            windowStart = now;
+            reset();
+        } else {
+            histograms[LOOP].recordNanos(now - lastLoopEnd);
+        }
+        lastLoopEnd = now;
+
+        if (now - windowStart >= WINDOW_MS * 1e6) {
+            publish(now);
+            windowStart = now;
+            reset();
+        }
+    }
+
+    private static void reset() {
+        for (int i = 0; i < spanCount; i++) {
+            histograms[i].reset();
+        }
+    }
+
+    private static void publish(long now) {
+        TelemetryPacket packet = new TelemetryPacket();
+        for (int i = 0; i < spanCount; i++) {
+            TimingHistogram histogram = histograms[i];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+
+            double p95 = histogram.percentile(0.95);
+            String[] spanKeys = keys[i];
+            packet.put(spanKeys[0], histogram.getMinMs());
+            packet.put(spanKeys[1], histogram.getMeanMs());
+            packet.put(spanKeys[2], p95);
+            packet.put(spanKeys[3], histogram.getMaxMs());
+            packet.put(spanKeys[4], histogram.getCount());
+
+            LogFiles.recordLoopProfile(now, names[i], histogram.getCount(),
+                    histogram.getMinMs(), histogram.getMeanMs(), p95, histogram.getMaxMs());
+        }
+
+        // there's no dashboard off the robot, e.g. in the simulator
+        FtcDashboard dashboard = FtcDashboard.getInstance();
+        if (dashboard != null) {
+            dashboard.sendTelemetryPacket(packet);
+        }
+    }
+
+    /**
+     * @return the span's statistics over the current window
+     */
+    public static TimingHistogram getHistogram(int span) {
+        return histograms[span];
+    }
+}
@@ -0,0 +1,185 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+/**
+ * Write-through cache in front of a fixed set of motors that drops power, mode and target
+ * position writes which wouldn't change anything. Every write that does reach a motor is a
+ * blocking hub transaction, so skipping the redundant ones in tight loops is a direct loop time
+ * win. The SDK has no way to combine writes, so each one that is sent still costs a transaction
+ * of its own.
+ * <p>
+ * Anything that writes to the motors without going through the cache must call
+ * {@link #invalidate()} afterwards, otherwise a later write could be wrongly skipped.
+ */
+@Config
+public class MotorOutputCache {
+    // power changes smaller than this are not sent, except a change to exactly zero
+    public static double POWER_EPSILON = 0.005;
+
+    private static final long WINDOW_NS = 1_000_000_000L;
+
+    private final DcMotor[] motors;
+    private final double[] lastPowers;
+    private final DcMotor.RunMode[] lastModes;
+    // NO_TARGET until a target position has been written through the cache
+    private final long[] lastTargets;
+    private static final long NO_TARGET = Long.MIN_VALUE;
+
+    private long writesSent, writesSkipped;
+    private long windowStart = System.nanoTime();
+    private int windowWrites, windowSkipped;
+    private double writesPerSecond, savedWritesPerSecond;
+
+    public MotorOutputCache(DcMotor... motors) {
+        this.motors = motors;
+        lastPowers = new double[motors.length];
+        lastModes = new DcMotor.RunMode[motors.length];
+        lastTargets = new long[motors.length];
+        invalidate();
+    }
+
+    /**
+     * Forgets every cached value so the next write to each motor is always sent.
+     */
+    public void invalidate() {
+        for (int i = 0; i < motors.length; i++) {
+            lastPowers[i] = Double.NaN;
+            lastModes[i] = null;
+            lastTargets[i] = NO_TARGET;
+        }
+    }
+
+    private int indexOf(DcMotor motor) {
+        for (int i = 0; i < motors.length; i++) {
+            if (motors[i] == motor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void setPower(DcMotor motor, double power) {
+        int i = indexOf(motor);
+        if (i < 0) {
+            motor.setPower(power);
+            return;
+        }
+        setPower(i, power);
+    }
+
+    public void setPower(int i, double power) {
+        double last = lastPowers[i];
+        boolean unchanged = power == 0.0
+                ? last == 0.0
+                : Math.abs(power - last) < POWER_EPSILON;
+        if (unchanged) {
+            count(false);
+            return;
+        }
+
+        motors[i].setPower(power);
+        lastPowers[i] = power;
+        count(true);
+    }
+
+    /**
+     * Writes the first four motors, in the order they were passed to the constructor. This is a
+     * shorthand for four {@link #setPower(int, double)} calls: each power that changed is still
+     * its own hub transaction.
+     */
+    public void setPowers(double p0, double p1, double p2, double p3) {
+        setPower(0, p0);
+        setPower(1, p1);
+        setPower(2, p2);
+        setPower(3, p3);
+    }
+
+    public void setMode(DcMotor motor, DcMotor.RunMode mode) {
+        int i = indexOf(motor);
+        if (i < 0) {
+            motor.setMode(mode);
+            return;
+        }
+
+        if (lastModes[i] == mode) {
+            count(false);
+            return;
+        }
+
+        motor.setMode(mode);
+        // the SDK zeroes the power when resetting the encoder
+        lastModes[i] = mode == DcMotor.RunMode.STOP_AND_RESET_ENCODER ? null : mode;
+        if (mode == DcMotor.RunMode.STOP_AND_RESET_ENCODER) {
+            lastPowers[i] = 0.0;
+        }
+        count(true);
+    }
+
+    public void setTargetPosition(DcMotor motor, int position) {
+        int i = indexOf(motor);
+        if (i < 0) {
+            motor.setTargetPosition(position);
+            return;
+        }
+
+        if (lastTargets[i] == position) {
+            count(false);
+            return;
+        }
+
+        motor.setTargetPosition(position);
+        lastTargets[i] = position;
+        count(true);
+    }
+
+    private void count(boolean written) {
+        if (written) {
+            windowWrites++;
+            writesSent++;
+        } else {
+            windowSkipped++;
+            writesSkipped++;
+        }
+
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_NS) {
+            double seconds = elapsed / 1e9;
+            writesPerSecond = windowWrites / seconds;
+            savedWritesPerSecond = windowSkipped / seconds;
+            windowWrites = 0;
+            windowSkipped = 0;
+            windowStart = now;
+        }
+    }
+
+    /**
+     * @return hub writes sent since construction
+     */
+    public long getWritesSent() {
+        return writesSent;
+    }
+
+    /**
+     * @return hub writes skipped since construction
+     */
+    public long getWritesSkipped() {
+        return writesSkipped;
+    }
+
+    /**
+     * @return hub writes actually sent per second, averaged over the last full second
+     */
+    public double getWritesPerSecond() {
+        return writesPerSecond;
+    }
+
+    /**
+     * @return hub writes skipped per second, averaged over the last full second
+     */
+    public double getSavedWritesPerSecond() {
+        return savedWritesPerSecond;
+    }
+}
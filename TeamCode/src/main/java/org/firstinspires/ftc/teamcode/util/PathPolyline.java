@@ -0,0 +1,100 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.path.Path;
+
+import java.util.Arrays;
+
+/**
+ * A path sampled into a polyline for drawing. Sampling adapts to the curvature: an interval is
+ * split until its midpoint lies within {@link #TOLERANCE} of the chord, so straights take a couple
+ * of points and tight curves get as many as they need.
+ * <p>
+ * The arrays are never modified after sampling, which is what lets every dashboard packet draw the
+ * same ones instead of copying them.
+ */
+public class PathPolyline {
+    private static final double TOLERANCE = 0.25; // in
+    // bounds the interval so an S-bend whose midpoint happens to sit on the chord is still split
+    private static final double MAX_STEP = 12; // in
+    private static final double MIN_STEP = 0.5; // in
+    private static final int MAX_DEPTH = 16;
+
+    public final double[] xs;
+    public final double[] ys;
+
+    private PathPolyline(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public static PathPolyline sample(Path path) {
+        double length = path.length();
+        int steps = Math.max(1, (int) Math.ceil(length / MAX_STEP));
+        double step = length / steps;
+
+        Builder builder = new Builder();
+        Pose2d start = path.get(0);
+        builder.add(start.getX(), start.getY());
+        for (int i = 0; i < steps; i++) {
+            double s0 = i * step;
+            double s1 = i == steps - 1 ? length : s0 + step;
+            Pose2d end = path.get(s1);
+            subdivide(path, builder, s0, start, s1, end, 0);
+            start = end;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adds the points after {@code start} up to and including {@code end}.
+     */
+    private static void subdivide(Path path, Builder builder, double s0, Pose2d start, double s1, Pose2d end, int depth) {
+        if (s1 - s0 > MIN_STEP && depth < MAX_DEPTH) {
+            double sm = (s0 + s1) / 2;
+            Pose2d mid = path.get(sm);
+            if (distanceToChord(mid, start, end) > TOLERANCE) {
+                subdivide(path, builder, s0, start, sm, mid, depth + 1);
+                subdivide(path, builder, sm, mid, s1, end, depth + 1);
+                return;
+            }
+        }
+        builder.add(end.getX(), end.getY());
+    }
+
+    private static double distanceToChord(Pose2d p, Pose2d a, Pose2d b) {
+        double dx = b.getX() - a.getX();
+        double dy = b.getY() - a.getY();
+        double px = p.getX() - a.getX();
+        double py = p.getY() - a.getY();
+        double chord = Math.hypot(dx, dy);
+        if (chord < 1e-9) {
+            return Math.hypot(px, py);
+        }
+        return Math.abs(dx * py - dy * px) / chord;
+    }
+
+    private static class Builder {
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private int size;
+
+        void add(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        PathPolyline build() {
+            return new PathPolyline(Arrays.copyOf(xs, size), Arrays.copyOf(ys, size));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+/**
+ * Recent robot positions in a fixed ring of primitives. Once the history holds
+ * {@link #capacity()} points, each new one overwrites the oldest, so adding never allocates.
+ * <p>
+ * With a minimum spacing set, a point closer than that to the previous one is skipped, so standing
+ * still doesn't use up the capacity and a whole match fits in a modest ring.
+ */
+public class PoseHistory {
+    /**
+     * Receives a run of consecutive points, oldest first, as a view into the ring.
+     */
+    public interface RunConsumer {
+        void accept(double[] xs, double[] ys, int from, int to);
+    }
+
+    private double[] xs, ys;
+    // index of the oldest point
+    private int head;
+    private int size;
+    private double minSpacing;
+
+    private double lastX, lastY;
+
+    public PoseHistory(int capacity) {
+        xs = new double[Math.max(1, capacity)];
+        ys = new double[xs.length];
+    }
+
+    public void add(Pose2d pose) {
+        add(pose.getX(), pose.getY());
+    }
+
+    public void add(double x, double y) {
+        if (size > 0 && minSpacing > 0 && Math.hypot(x - lastX, y - lastY) < minSpacing) {
+            return;
+        }
+
+        int capacity = xs.length;
+        int tail = head + size;
+        if (tail >= capacity) {
+            tail -= capacity;
+        }
+        xs[tail] = x;
+        ys[tail] = y;
+        if (size < capacity) {
+            size++;
+        } else if (++head == capacity) {
+            head = 0;
+        }
+        lastX = x;
+        lastY = y;
+    }
+
+    /**
+     * Changes how many points are kept, keeping the newest. Reallocates the ring, so it's a no-op
+     * unless the capacity actually changes.
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        if (capacity == xs.length) {
+            return;
+        }
+
+        int keep = Math.min(size, capacity);
+        double[] newXs = new double[capacity];
+        double[] newYs = new double[capacity];
+        copyNewest(keep, newXs, newYs);
+        xs = newXs;
+        ys = newYs;
+        head = 0;
+        size = keep;
+    }
+
+    public int capacity() {
+        return xs.length;
+    }
+
+    /**
+     * @param minSpacing distance a new point has to be from the previous one to be recorded; 0
+     *                   records every point
+     */
+    public void setMinSpacing(double minSpacing) {
+        this.minSpacing = minSpacing;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes the history to {@code consumer} without copying, as at most two runs of the ring.
+     * The arrays are overwritten by later adds, so the consumer must not hold on to them.
+     */
+    public void forEachRun(RunConsumer consumer) {
+        int end = head + size;
+        if (end <= xs.length) {
+            if (size > 0) {
+                consumer.accept(xs, ys, head, end);
+            }
+        } else {
+            consumer.accept(xs, ys, head, xs.length);
+            consumer.accept(xs, ys, 0, end - xs.length);
+        }
+    }
+
+    /**
+     * Copies the history, oldest first, into the start of {@code outXs} and {@code outYs}, which
+     * must hold at least {@link #size()} points.
+     */
+    public void copyTo(double[] outXs, double[] outYs) {
+        copyNewest(size, outXs, outYs);
+    }
+
+    private void copyNewest(int n, double[] outXs, double[] outYs) {
+        int from = head + size - n;
+        for (int i = 0; i < n; i++) {
+            int j = from + i;
+            if (j >= xs.length) {
+                j -= xs.length;
+            }
+            outXs[i] = xs[j];
+            outYs[i] = ys[j];
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,159 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Telemetry for loops that shouldn't pay for it every iteration. Items are registered once as
+ * suppliers; {@link #update()} only evaluates them every {@link #INTERVAL_MS}, and only sends them
+ * to the driver station and the dashboard when a displayed value changed (or
+ * {@link #KEEPALIVE_MS} passed, so dashboard graphs keep moving).
+ * <p>
+ * Changes are detected on the formatted text, so noise below the displayed precision doesn't
+ * count. The dashboard gets numbers as numbers, so they can be graphed.
+ */
+@Config
+public class TelemetryAggregator {
+    public static double INTERVAL_MS = 100;
+    public static double KEEPALIVE_MS = 1000;
+    public static boolean SEND_TO_DASHBOARD = true;
+
+    private static class Item {
+        final String caption;
+        final Supplier<?> value;
+        final String format;
+        final DoubleSupplier number;
+
+        String text;
+        Object packetValue;
+
+        Item(String caption, Supplier<?> value, String format, DoubleSupplier number) {
+            this.caption = caption;
+            this.value = value;
+            this.format = format;
+            this.number = number;
+        }
+
+        /**
+         * @return whether the displayed text changed
+         */
+        boolean evaluate() {
+            String previous = text;
+            if (number != null) {
+                double v = number.getAsDouble();
+                text = String.format(Locale.US, format, v);
+                packetValue = v;
+            } else {
+                Object v = value.get();
+                text = String.valueOf(v);
+                packetValue = v instanceof Number || v instanceof Boolean ? v : text;
+            }
+            return !text.equals(previous);
+        }
+    }
+
+    private final Telemetry telemetry;
+    private final List<Item> items = new ArrayList<>();
+
+    private long lastEvaluation;
+    private long lastSend;
+    private boolean dirty = true;
+
+    /**
+     * @param telemetry driver station telemetry; may be null, e.g. in the simulator
+     */
+    public TelemetryAggregator(Telemetry telemetry) {
+        this.telemetry = telemetry;
+        // the SDK drops user updates that come faster than its own interval (250ms by default)
+        if (telemetry != null && telemetry.getMsTransmissionInterval() > INTERVAL_MS) {
+            telemetry.setMsTransmissionInterval((int) INTERVAL_MS);
+        }
+    }
+
+    public TelemetryAggregator add(String caption, Supplier<?> value) {
+        items.add(new Item(caption, value, null, null));
+        dirty = true;
+        return this;
+    }
+
+    /**
+     * Adds a number shown with a {@link String#format} pattern, e.g. {@code "%.1f"}.
+     */
+    public TelemetryAggregator add(String caption, String format, DoubleSupplier value) {
+        items.add(new Item(caption, null, format, value));
+        dirty = true;
+        return this;
+    }
+
+    public void clear() {
+        items.clear();
+        dirty = true;
+    }
+
+    /**
+     * Makes the next {@link #update()} evaluate and send regardless of the interval.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Call once per loop iteration.
+     *
+     * @return whether anything was sent
+     */
+    public boolean update() {
+        long now = System.nanoTime();
+        if (!dirty && now - lastEvaluation < INTERVAL_MS * 1e6) {
+            return false;
+        }
+        lastEvaluation = now;
+        long span = LoopProfiler.start();
+
+        boolean changed = dirty;
+        for (int i = 0; i < items.size(); i++) {
+            // evaluate all of them, so the change check for the next interval starts from now
+            changed |= items.get(i).evaluate();
+        }
+        if (!changed && now - lastSend < KEEPALIVE_MS * 1e6) {
+            LoopProfiler.end(LoopProfiler.TELEMETRY, span);
+            return false;
+        }
+
+        send();
+        lastSend = now;
+        dirty = false;
+        LoopProfiler.end(LoopProfiler.TELEMETRY, span);
+        return true;
+    }
+
+    private void send() {
+        if (telemetry != null) {
+            for (int i = 0; i < items.size(); i++) {
+                Item item = items.get(i);
+                telemetry.addData(item.caption, item.text);
+            }
+            telemetry.update();
+        }
+
+        FtcDashboard dashboard = FtcDashboard.getInstance();
+        if (SEND_TO_DASHBOARD && dashboard != null) {
+            // the dashboard holds on to packets until it transmits, so build a new one every time
+            TelemetryPacket packet = new TelemetryPacket();
+            for (int i = 0; i < items.size(); i++) {
+                Item item = items.get(i);
+                packet.put(item.caption, item.packetValue);
+            }
+            dashboard.sendTelemetryPacket(packet);
+        }
+    }
+}
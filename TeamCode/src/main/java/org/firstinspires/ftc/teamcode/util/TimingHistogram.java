@@ -0,0 +1,91 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-resolution histogram of durations. Recording is a bounds check and an increment, so it
+ * can sit in the control loop; percentiles are computed by scanning the buckets when asked for.
+ */
+public class TimingHistogram {
+    private static final double BUCKET_MS = 0.1;
+
+    private final int[] buckets;
+    private int count;
+    private double sumMs;
+    private double minMs = Double.POSITIVE_INFINITY;
+    private double maxMs;
+
+    /**
+     * @param rangeMs durations at or above this land in the last bucket (but still count for max)
+     */
+    public TimingHistogram(double rangeMs) {
+        buckets = new int[(int) Math.ceil(rangeMs / BUCKET_MS) + 1];
+    }
+
+    public void record(double ms) {
+        int i = (int) (ms / BUCKET_MS);
+        if (i < 0) {
+            i = 0;
+        } else if (i >= buckets.length) {
+            i = buckets.length - 1;
+        }
+        buckets[i]++;
+
+        count++;
+        sumMs += ms;
+        if (ms < minMs) {
+            minMs = ms;
+        }
+        if (ms > maxMs) {
+            maxMs = ms;
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1e6);
+    }
+
+    public void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sumMs = 0;
+        minMs = Double.POSITIVE_INFINITY;
+        maxMs = 0;
+    }
+
+    /**
+     * @param p percentile in [0, 1]
+     * @return upper edge of the bucket holding the percentile, in milliseconds
+     */
+    public double percentile(double p) {
+        if (count == 0) {
+            return 0;
+        }
+
+        int target = (int) Math.ceil(p * count);
+        int seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return Math.min((i + 1) * BUCKET_MS, maxMs);
+            }
+        }
+        return maxMs;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMeanMs() {
+        return count == 0 ? 0 : sumMs / count;
+    }
+
+    public double getMinMs() {
+        return count == 0 ? 0 : minMs;
+    }
+
+    public double getMaxMs() {
+        return maxMs;
+    }
+}
@@ -0,0 +1,311 @@
+package org.firstinspires.ftc.teamcode.util;
+
+/**
+ * Estimates encoder velocities by least-squares fits over the last {@link #setWindow window}
+ * timestamped positions, for any number of encoders sampled together, with one glitched sample
+ * per window dropped. The fit's velocity is what the localizers report by default; it can instead
+ * just recover the upper bits of the hub's 16 bit velocity ({@link #setFitVelocity}).
+ * <p>
+ * The window is counted in samples: the default spans 140 ms at a 50 Hz loop, raise it to about
+ * 16 for loops near 200 Hz.
+ */
+public class VelocityEstimator {
+    public static final int DEFAULT_WINDOW = 8;
+    public static final double DEFAULT_OUTLIER_SIGMA = 3;
+    public static final boolean DEFAULT_QUADRATIC = true;
+    public static final boolean DEFAULT_FIT_VELOCITY = true;
+
+    private static final int CPS_STEP = 0x10000;
+
+    private static final int CAPACITY = 32; // largest usable window
+    private static final double MAD_TO_SIGMA = 1.4826;
+    private static final double MIN_OUTLIER_TICKS = 2;
+
+    private final int channels;
+    private final long[] times = new long[CAPACITY];
+    private final double[] positions;
+    private final double[] velocities;
+    private int newest = -1;
+    private int count;
+
+    // scratch, reused by every fit
+    private final double[] t = new double[CAPACITY];
+    private final double[] sorted = new double[CAPACITY];
+    private final boolean[] kept = new boolean[CAPACITY];
+    private double offset, slope, curvature;
+    private double inv00, inv01, inv02, inv11, inv12, inv22;
+
+    private int window = DEFAULT_WINDOW;
+    private double outlierSigma = DEFAULT_OUTLIER_SIGMA;
+    private boolean quadratic = DEFAULT_QUADRATIC;
+    private boolean fitVelocity = DEFAULT_FIT_VELOCITY;
+
+    public VelocityEstimator(int channels) {
+        this.channels = channels;
+        positions = new double[CAPACITY * channels];
+        velocities = new double[channels];
+    }
+
+    /**
+     * Recovers the upper bits of a 16 bit hub velocity from an estimate of it.
+     */
+    public static double inverseOverflow(double input, double estimate) {
+        // convert to uint16
+        int real = (int) input & 0xffff;
+        // initial, modulo-based correction: it can recover the remainder of 5 of the upper 16 bits
+        // because the velocity is always a multiple of 20 cps due to Expansion Hub's 50ms measurement window
+        real += ((real % 20) / 4) * CPS_STEP;
+        // estimate-based correction: it finds the nearest multiple of 5 to correct the upper bits by
+        real += Math.round((estimate - real) / (5 * CPS_STEP)) * 5 * CPS_STEP;
+        return real;
+    }
+
+    /**
+     * @param window number of samples fitted, clamped to [2, 32]
+     */
+    public void setWindow(int window) {
+        this.window = Math.min(Math.max(2, window), CAPACITY);
+    }
+
+    /**
+     * @param outlierSigma robust standard deviations off the fit beyond which a sample is dropped;
+     *                     0 disables outlier rejection
+     */
+    public void setOutlierSigma(double outlierSigma) {
+        this.outlierSigma = outlierSigma;
+    }
+
+    /**
+     * @param quadratic fit a parabola instead of a line, so the velocity at the newest sample
+     *                  doesn't lag under acceleration
+     */
+    public void setQuadratic(boolean quadratic) {
+        this.quadratic = quadratic;
+    }
+
+    /**
+     * @param fitVelocity report the fitted velocity from {@link #getVelocity(int, double)} rather
+     *                    than the hub's, which is only corrected for overflow and lags by half of
+     *                    its 50 ms measurement window
+     */
+    public void setFitVelocity(boolean fitVelocity) {
+        this.fitVelocity = fitVelocity;
+    }
+
+    /**
+     * Adds one sample for every channel. A sample with the same timestamp as the previous one
+     * (the same bulk read) is ignored.
+     */
+    public void add(long nanos, int[] values) {
+        if (!push(nanos)) {
+            return;
+        }
+        for (int c = 0; c < channels; c++) {
+            positions[newest * channels + c] = values[c];
+        }
+        fit();
+    }
+
+    /**
+     * Single channel version of {@link #add(long, int[])}.
+     */
+    public void add(long nanos, int value) {
+        if (!push(nanos)) {
+            return;
+        }
+        positions[newest * channels] = value;
+        fit();
+    }
+
+    private boolean push(long nanos) {
+        if (count > 0 && nanos == times[newest]) {
+            return false;
+        }
+        newest = (newest + 1) % CAPACITY;
+        times[newest] = nanos;
+        if (count < CAPACITY) {
+            count++;
+        }
+        return true;
+    }
+
+    private void fit() {
+        int n = Math.min(window, count);
+        if (n < 2) {
+            return;
+        }
+
+        // times relative to the newest sample, in seconds; k = 0 is the newest
+        for (int k = 0; k < n; k++) {
+            t[k] = (times[index(k)] - times[newest]) / 1e9;
+        }
+
+        for (int c = 0; c < channels; c++) {
+            if (!solve(n, c, false)) {
+                continue;
+            }
+
+            if (outlierSigma > 0 && n >= 5) {
+                rejectOutlier(n, c);
+            }
+            velocities[c] = slope;
+        }
+    }
+
+    /**
+     * Fits the channel's samples (optionally only those still marked as kept) and leaves the
+     * coefficients of {@code p - p(newest) = offset + slope * t + curvature * t^2} in the fields.
+     */
+    private boolean solve(int n, int c, boolean keptOnly) {
+        double base = position(0, c);
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double p0 = 0, p1 = 0, p2 = 0;
+        for (int k = 0; k < n; k++) {
+            if (keptOnly && !kept[k]) {
+                continue;
+            }
+            double tk = t[k];
+            double t2 = tk * tk;
+            double p = position(k, c) - base;
+            s0++;
+            s1 += tk;
+            s2 += t2;
+            s3 += t2 * tk;
+            s4 += t2 * t2;
+            p0 += p;
+            p1 += tk * p;
+            p2 += t2 * p;
+        }
+
+        if (quadratic && s0 >= 4) {
+            // inverse of the symmetric 3x3 normal matrix from its cofactors
+            double c00 = s2 * s4 - s3 * s3;
+            double c01 = s3 * s2 - s1 * s4;
+            double c02 = s1 * s3 - s2 * s2;
+            double det = s0 * c00 + s1 * c01 + s2 * c02;
+            if (Math.abs(det) > 1e-18) {
+                inv00 = c00 / det;
+                inv01 = c01 / det;
+                inv02 = c02 / det;
+                inv11 = (s0 * s4 - s2 * s2) / det;
+                inv12 = (s1 * s2 - s0 * s3) / det;
+                inv22 = (s0 * s2 - s1 * s1) / det;
+                offset = inv00 * p0 + inv01 * p1 + inv02 * p2;
+                slope = inv01 * p0 + inv11 * p1 + inv12 * p2;
+                curvature = inv02 * p0 + inv12 * p1 + inv22 * p2;
+                return true;
+            }
+        }
+
+        double det = s0 * s2 - s1 * s1;
+        if (det == 0) {
+            return false;
+        }
+        inv00 = s2 / det;
+        inv01 = -s1 / det;
+        inv11 = s0 / det;
+        inv02 = inv12 = inv22 = 0;
+        offset = inv00 * p0 + inv01 * p1;
+        slope = inv01 * p0 + inv11 * p1;
+        curvature = 0;
+        return true;
+    }
+
+    /**
+     * Refits without the sample with the largest deleted residual (the error predicting it from a
+     * fit without it, which unlike the plain residual isn't hidden by the fit bending towards it at
+     * the newest sample), and keeps that fit if the sample is more than {@link #setOutlierSigma outlierSigma}
+     * robust standard deviations off it. One glitch per window is all the hub produces.
+     */
+    private void rejectOutlier(int n, int c) {
+        double base = position(0, c);
+        int worst = 0;
+        double worstResidual = -1;
+        for (int k = 0; k < n; k++) {
+            double tk = t[k];
+            double leverage = inv00 + tk * (2 * inv01 + tk * (2 * inv02 + inv11 + tk * (2 * inv12 + tk * inv22)));
+            double residual = Math.abs(position(k, c) - base - model(tk)) / Math.sqrt(Math.max(1 - leverage, 1e-6));
+            if (residual > worstResidual) {
+                worstResidual = residual;
+                worst = k;
+            }
+            kept[k] = true;
+        }
+
+        double fullOffset = offset, fullSlope = slope, fullCurvature = curvature;
+        kept[worst] = false;
+        if (!solve(n, c, true)) {
+            restore(fullOffset, fullSlope, fullCurvature);
+            return;
+        }
+
+        // scale from the remaining samples' residuals; median by insertion sort, n is at most CAPACITY
+        int m = 0;
+        for (int k = 0; k < n; k++) {
+            if (k == worst) {
+                continue;
+            }
+            double v = Math.abs(position(k, c) - base - model(t[k]));
+            int j = m++;
+            while (j > 0 && sorted[j - 1] > v) {
+                sorted[j] = sorted[j - 1];
+                j--;
+            }
+            sorted[j] = v;
+        }
+        double median = (m % 2 == 1) ? sorted[m / 2] : (sorted[m / 2 - 1] + sorted[m / 2]) / 2;
+        double threshold = Math.max(outlierSigma * MAD_TO_SIGMA * median, MIN_OUTLIER_TICKS);
+
+        if (Math.abs(position(worst, c) - base - model(t[worst])) <= threshold) {
+            restore(fullOffset, fullSlope, fullCurvature);
+        }
+    }
+
+    private double model(double tk) {
+        return offset + slope * tk + curvature * tk * tk;
+    }
+
+    private void restore(double offset, double slope, double curvature) {
+        this.offset = offset;
+        this.slope = slope;
+        this.curvature = curvature;
+    }
+
+    private int index(int k) {
+        int i = newest - k;
+        return i < 0 ? i + CAPACITY : i;
+    }
+
+    private double position(int k, int c) {
+        return positions[index(k) * channels + c];
+    }
+
+    /**
+     * @return latest fitted velocity in ticks per second
+     */
+    public double getVelocity(int channel) {
+        return velocities[channel];
+    }
+
+    /**
+     * Recovers the upper bits of a 16 bit hub velocity using the fitted velocity.
+     */
+    public double correct(int channel, double rawVelocity) {
+        return inverseOverflow(rawVelocity, velocities[channel]);
+    }
+
+    /**
+     * @return the fitted velocity, or the hub's corrected one if {@link #setFitVelocity} is off
+     */
+    public double getVelocity(int channel, double rawVelocity) {
+        return fitVelocity ? velocities[channel] : correct(channel, rawVelocity);
+    }
+
+    public void clear() {
+        newest = -1;
+        count = 0;
+        for (int c = 0; c < channels; c++) {
+            velocities[c] = 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.config.Config;
+
+/**
+ * Dashboard tunables of the {@link VelocityEstimator}s on the robot. They live here rather than
+ * in the estimator so it stays free of the dashboard and runs on a plain JVM.
+ */
+@Config("VelocityEstimator")
+public class VelocityEstimatorConfig {
+    // samples, not time: raise to ~16 for loops much faster than 50 Hz (see VelocityEstimator)
+    public static int WINDOW = VelocityEstimator.DEFAULT_WINDOW;
+    public static double OUTLIER_SIGMA = VelocityEstimator.DEFAULT_OUTLIER_SIGMA; // 0 disables outlier rejection
+    // fit a parabola instead of a line, so the velocity at the newest sample doesn't lag under acceleration
+    public static boolean QUADRATIC = VelocityEstimator.DEFAULT_QUADRATIC;
+    // report the fitted velocity; false falls back to the hub's velocity, corrected for overflow
+    public static boolean FIT_VELOCITY = VelocityEstimator.DEFAULT_FIT_VELOCITY;
+
+    /**
+     * Copies the current tunables into an estimator; cheap enough to do before every sample.
+     */
+    public static void apply(VelocityEstimator estimator) {
+        estimator.setWindow(WINDOW);
+        estimator.setOutlierSigma(OUTLIER_SIGMA);
+        estimator.setQuadratic(QUADRATIC);
+        estimator.setFitVelocity(FIT_VELOCITY);
+    }
+}
@@ -0,0 +1,174 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.qualcomm.robotcore.eventloop.opmode.OpMode;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManagerImpl;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManagerNotifier;
+import com.qualcomm.robotcore.hardware.VoltageSensor;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples the battery voltage on a background thread at {@link #SAMPLE_RATE_HZ} and low-pass
+ * filters it, so the control loop reads the voltage from a field instead of paying a hub
+ * transaction every iteration, and a momentary sag under acceleration doesn't jerk the gains.
+ * <p>
+ * Voltage compensated gains (e.g. a velocity PIDF's F term) are computed for
+ * {@link #getCompensationVoltage()}. Once the filtered voltage drifts more than
+ * {@link #COMPENSATION_THRESHOLD_V} from it, {@link #needsCompensation()} turns true; the owner
+ * then re-applies its gains for {@link #compensate()}. The poller stops itself when the op mode
+ * stops.
+ * <p>
+ * Without a background thread (as in the simulator) the sensor is read, unfiltered, on every
+ * {@link #getVoltage()} call instead.
+ */
+@Config
+public class VoltageService {
+    public static double SAMPLE_RATE_HZ = 5;
+    public static double FILTER_TIME_CONSTANT_S = 1.0;
+    public static double COMPENSATION_THRESHOLD_V = 0.25;
+
+    public static final double NOMINAL_VOLTAGE = 12.0;
+
+    private final VoltageSensor sensor;
+    // null when reading on the caller's thread
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // written by the sampling thread only
+    private volatile double voltage;
+    private volatile double rawVoltage;
+
+    // op mode thread only
+    private double compensationVoltage;
+
+    private final OpModeManagerNotifier.Notifications stopListener = new OpModeManagerNotifier.Notifications() {
+        @Override
+        public void onOpModePreInit(OpMode opMode) {
+        }
+
+        @Override
+        public void onOpModePreStart(OpMode opMode) {
+        }
+
+        @Override
+        public void onOpModePostStop(OpMode opMode) {
+            stop();
+        }
+    };
+
+    public VoltageService(VoltageSensor sensor) {
+        this(sensor, true);
+    }
+
+    /**
+     * @param background sample on a background thread; otherwise read on the caller's thread
+     */
+    public VoltageService(VoltageSensor sensor, boolean background) {
+        this.sensor = sensor;
+
+        double initial = sensor.getVoltage();
+        if (!(initial > 0)) {
+            initial = NOMINAL_VOLTAGE;
+        }
+        voltage = initial;
+        rawVoltage = initial;
+        compensationVoltage = initial;
+
+        if (!background) {
+            thread = null;
+            running = false;
+            return;
+        }
+
+        OpModeManagerImpl manager = OpModeManagerImpl.getOpModeManagerOfActivity(AppUtil.getInstance().getActivity());
+        if (manager != null) {
+            manager.registerListener(stopListener);
+        }
+
+        thread = new Thread(this::run, "VoltageService");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        long last = next;
+        try {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                // a dashboard edit to 0 or below would make the period infinite and stop sampling
+                next += (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(1, SAMPLE_RATE_HZ));
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else {
+                    next = System.nanoTime();
+                }
+
+                double sample = sensor.getVoltage();
+                long now = System.nanoTime();
+                // the hub occasionally reports 0 while it's busy; skip those rather than filter them in
+                if (sample > 0) {
+                    double dt = (now - last) / 1e9;
+                    double alpha = FILTER_TIME_CONSTANT_S > 0 ? 1 - Math.exp(-dt / FILTER_TIME_CONSTANT_S) : 1;
+                    rawVoltage = sample;
+                    voltage += alpha * (sample - voltage);
+                }
+                last = now;
+            }
+        } catch (RuntimeException e) {
+            RobotLog.ee("VoltageService", e, "voltage sampling stopped");
+        }
+    }
+
+    /**
+     * @return filtered battery voltage
+     */
+    public double getVoltage() {
+        if (thread == null) {
+            double sample = sensor.getVoltage();
+            if (sample > 0) {
+                voltage = sample;
+                rawVoltage = sample;
+            }
+        }
+        return voltage;
+    }
+
+    /**
+     * @return latest unfiltered sample
+     */
+    public double getRawVoltage() {
+        return rawVoltage;
+    }
+
+    /**
+     * @return voltage the compensated gains were last computed for
+     */
+    public double getCompensationVoltage() {
+        return compensationVoltage;
+    }
+
+    public boolean needsCompensation() {
+        return Math.abs(voltage - compensationVoltage) > COMPENSATION_THRESHOLD_V;
+    }
+
+    /**
+     * Takes the current filtered voltage as the new compensation voltage.
+     *
+     * @return the voltage to compute compensated gains for
+     */
+    public double compensate() {
+        compensationVoltage = voltage;
+        return compensationVoltage;
+    }
+
+    public void stop() {
+        // the op mode manager only holds the listener weakly, so it goes away with this service
+        running = false;
+    }
+}
@@ -0,0 +1,180 @@
+package org.firstinspires.ftc.teamcode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.util.Angle;
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+import org.firstinspires.ftc.teamcode.command.Command;
+import org.firstinspires.ftc.teamcode.command.Subsystem;
+import org.firstinspires.ftc.teamcode.sim.SimulatedRobot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+/**
+ * Runs {@link RealRobot}'s commands through its scheduler on a {@link SimulatedRobot}'s hardware.
+ */
+public class RealRobotCommandsTest {
+    private static final Pose2d START = new Pose2d(0, 0, 0);
+    // the rotation commands stop within 4 degrees, and the robot coasts a little after that
+    private static final double HEADING_TOLERANCE = Math.toRadians(10);
+    // a lift target the simulation never reaches, since the lift port carries a tracking wheel
+    private static final int UNREACHABLE_LIFT_TARGET = 1_000_000;
+
+    /**
+     * Passes everything through to a command and counts its updates.
+     */
+    private static final class Probe implements Command {
+        final Command command;
+        int starts, updates;
+
+        Probe(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        public void start() {
+            starts++;
+            command.start();
+        }
+
+        @Override
+        public void update() {
+            updates++;
+            command.update();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return command.isFinished();
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            command.end(interrupted);
+        }
+
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return command.getRequirements();
+        }
+    }
+
+    private SimulatedRobot simulation;
+    private RealRobot robot;
+
+    @Before
+    public void setUp() {
+        simulation = new SimulatedRobot();
+        robot = simulation.createRobot(null);
+        simulation.setPose(START);
+        robot.setPoseEstimate(START);
+    }
+
+    private void assertHeading(double degrees) {
+        assertEquals(0, Angle.normDelta(simulation.getPose().getHeading() - Math.toRadians(degrees)), HEADING_TOLERANCE);
+    }
+
+    @Test(timeout = 60000)
+    public void commandsOnDifferentSubsystemsProgressInTheSameLoop() {
+        Probe lift = new Probe(robot.liftToCommand(UNREACHABLE_LIFT_TARGET, 0.5));
+        Probe rotation = new Probe(robot.rotateCommand(90, 0.5));
+        robot.scheduler.schedule(lift);
+        robot.runCommand(rotation);
+
+        assertHeading(90);
+        assertTrue(rotation.updates > 1);
+        // the lift was updated in every loop the rotation was, including the one it finished in
+        assertEquals(rotation.updates, lift.updates);
+        assertTrue(robot.scheduler.isScheduled(lift));
+        assertEquals(DcMotor.RunMode.RUN_TO_POSITION, robot.lift.getMode());
+        assertEquals(UNREACHABLE_LIFT_TARGET, robot.lift.getTargetPosition());
+        assertEquals(0.5, robot.lift.getPower(), 0);
+
+        robot.scheduler.cancel(lift);
+        assertFalse(robot.scheduler.isScheduled(lift));
+        assertEquals(0, robot.lift.getPower(), 0);
+    }
+
+    @Test(timeout = 60000)
+    public void commandOnSameSubsystemIsCancelled() {
+        Probe first = new Probe(robot.liftToCommand(UNREACHABLE_LIFT_TARGET, 0.5));
+        Probe second = new Probe(robot.liftToCommand(-UNREACHABLE_LIFT_TARGET, 0.3));
+        robot.scheduler.schedule(first);
+        robot.update();
+        robot.scheduler.schedule(second);
+        robot.update();
+
+        assertFalse(robot.scheduler.isScheduled(first));
+        assertTrue(robot.scheduler.isScheduled(second));
+        assertEquals(1, first.updates);
+        assertEquals(1, second.updates);
+        assertEquals(-UNREACHABLE_LIFT_TARGET, robot.lift.getTargetPosition());
+        robot.scheduler.cancelAll();
+    }
+
+    @Test(timeout = 60000)
+    public void restartingTheLiftOnlySendsThePower() {
+        Command lift = robot.liftToCommand(UNREACHABLE_LIFT_TARGET, 0.5);
+        robot.scheduler.schedule(lift);
+        robot.update();
+        robot.scheduler.cancel(lift);
+        assertEquals(0, robot.lift.getPower(), 0);
+
+        // same target, same mode: only the power from 0 back to 0.5 reaches the hub
+        long sent = robot.output.getWritesSent();
+        robot.scheduler.schedule(lift);
+        assertEquals(1, robot.output.getWritesSent() - sent);
+        assertEquals(0.5, robot.lift.getPower(), 0);
+        robot.scheduler.cancelAll();
+    }
+
+    @Test(timeout = 60000)
+    public void finishedRotationRunsAgain() {
+        Probe rotation = new Probe(robot.rotateCommand(90, 0.5));
+        robot.runCommand(rotation);
+        assertHeading(90);
+        int firstUpdates = rotation.updates;
+
+        // back to the start, where the IMU reads 0 again
+        simulation.setPose(START);
+        robot.setPoseEstimate(START);
+        robot.runCommand(rotation);
+
+        assertEquals(2, rotation.starts);
+        assertTrue(rotation.updates - firstUpdates > 1);
+        assertHeading(90);
+    }
+
+    @Test(timeout = 60000)
+    public void rotateToHeadingReachesTheHeading() {
+        Probe rotation = new Probe(robot.rotateToHeadingCommand(90, 0.5));
+        robot.runCommand(rotation);
+
+        assertFalse(robot.scheduler.isScheduled(rotation));
+        assertTrue(rotation.updates > 1);
+        assertHeading(90);
+    }
+
+    @Test(timeout = 60000)
+    public void finishedEncoderDriveRunsAgain() {
+        Probe drive = new Probe(robot.encoderDriveCommand(0.5, 6, 'F'));
+        robot.runCommand(drive);
+        double first = Math.hypot(simulation.getPose().getX(), simulation.getPose().getY());
+        assertTrue(first > 1);
+
+        Pose2d between = simulation.getPose();
+        robot.runCommand(drive);
+        double second = Math.hypot(simulation.getPose().getX() - between.getX(), simulation.getPose().getY() - between.getY());
+
+        assertEquals(2, drive.starts);
+        // a second run that ended at once would leave the robot where it was
+        assertEquals(first, second, first / 2);
+    }
+}
@@ -0,0 +1,249 @@
+package org.firstinspires.ftc.teamcode.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs commands and groups through a {@link CommandScheduler} on a clock that only moves when the
+ * test moves it.
+ */
+public class CommandSchedulerTest {
+    private static final class ManualClock extends NanoClock {
+        double time;
+
+        @Override
+        public double seconds() {
+            return time;
+        }
+    }
+
+    /**
+     * Finishes after a number of updates and records what happened to it in {@link #events}.
+     */
+    private static class Step implements Command {
+        final String name;
+        final int updatesToFinish;
+        final Set<Subsystem> requirements;
+        final List<String> events;
+        int updates;
+
+        Step(String name, int updatesToFinish, List<String> events, Subsystem... requirements) {
+            this.name = name;
+            this.updatesToFinish = updatesToFinish;
+            this.events = events;
+            this.requirements = requirements.length == 0
+                    ? Collections.emptySet()
+                    : new HashSet<>(Arrays.asList(requirements));
+        }
+
+        @Override
+        public void start() {
+            updates = 0;
+            events.add(name + " start");
+        }
+
+        @Override
+        public void update() {
+            updates++;
+            events.add(name + " update");
+        }
+
+        @Override
+        public boolean isFinished() {
+            return updates >= updatesToFinish;
+        }
+
+        @Override
+        public void end(boolean interrupted) {
+            events.add(name + (interrupted ? " interrupted" : " end"));
+        }
+
+        @Override
+        public Set<Subsystem> getRequirements() {
+            return requirements;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final ManualClock clock = new ManualClock();
+    private final CommandScheduler scheduler = new CommandScheduler(clock);
+    private final List<String> events = new ArrayList<>();
+
+    private void runUntilIdle(int maxLoops) {
+        for (int i = 0; i < maxLoops && !scheduler.isIdle(); i++) {
+            scheduler.run();
+        }
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void schedulingOnABusySubsystemInterruptsItsOwner() {
+        Subsystem lift = new Subsystem("lift");
+        Step first = new Step("first", 10, events, lift);
+        Step second = new Step("second", 1, events, lift);
+        Step other = new Step("other", 10, events);
+
+        scheduler.schedule(first);
+        scheduler.schedule(other);
+        scheduler.run();
+        scheduler.schedule(second);
+
+        assertFalse(scheduler.isScheduled(first));
+        assertTrue(scheduler.isScheduled(other));
+        scheduler.run();
+        assertFalse(scheduler.isScheduled(second));
+        assertTrue(events.contains("first interrupted"));
+        assertTrue(events.contains("second end"));
+        assertEquals(2, other.updates);
+    }
+
+    @Test
+    public void commandScheduledFromAnUpdateStartsAfterThePass() {
+        Step later = new Step("later", 1, events);
+        scheduler.schedule(new Step("driver", 1, events) {
+            @Override
+            public void update() {
+                super.update();
+                scheduler.schedule(later);
+            }
+        });
+        scheduler.run();
+
+        assertTrue(scheduler.isScheduled(later));
+        assertEquals(0, later.updates);
+        scheduler.run();
+        assertEquals(1, later.updates);
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void sequenceSkipsInstantMembersAndStartsTheNextInTheSameLoop() {
+        Step a = new Step("a", 2, events);
+        Step b = new Step("b", 1, events);
+        List<String> actions = new ArrayList<>();
+        scheduler.schedule(Commands.sequence(a, Commands.instant("servo", () -> actions.add("servo")), b));
+
+        scheduler.run();
+        scheduler.run();
+        // a finished in the second loop, the instant action ran, and b was started but not updated
+        assertEquals(1, actions.size());
+        assertEquals("b start", events.get(events.size() - 1));
+        assertEquals(0, b.updates);
+
+        scheduler.run();
+        assertEquals(1, b.updates);
+        assertTrue(scheduler.isIdle());
+    }
+
+    @Test
+    public void raceInterruptsTheSlowerMember() {
+        Step fast = new Step("fast", 2, events);
+        Step slow = new Step("slow", 10, events);
+        scheduler.schedule(Commands.race(fast, slow));
+        runUntilIdle(10);
+
+        assertEquals(2, slow.updates);
+        assertTrue(events.contains("fast end"));
+        assertTrue(events.contains("slow interrupted"));
+    }
+
+    @Test
+    public void deadlineEndsWithItsFirstMember() {
+        Step deadline = new Step("deadline", 3, events);
+        Step other = new Step("other", 1, events);
+        Step longer = new Step("longer", 10, events);
+        scheduler.schedule(Commands.deadline(deadline, other, longer));
+        runUntilIdle(10);
+
+        assertEquals(3, deadline.updates);
+        assertEquals(1, other.updates);
+        assertEquals(3, longer.updates);
+        assertTrue(events.contains("longer interrupted"));
+    }
+
+    @Test
+    public void cancellingAGroupInterruptsItsRunningMember() {
+        Subsystem drive = new Subsystem("drive");
+        Step a = new Step("a", 10, events, drive);
+        Command group = Commands.sequence(a, new Step("b", 1, events));
+        scheduler.schedule(group);
+        scheduler.run();
+        scheduler.schedule(new Step("takeover", 1, events, drive));
+
+        assertFalse(scheduler.isScheduled(group));
+        assertTrue(events.contains("a interrupted"));
+        assertFalse(events.contains("b start"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelMembersMayNotShareASubsystem() {
+        Subsystem lift = new Subsystem("lift");
+        Commands.parallel(new Step("a", 1, events, lift), new Step("b", 1, events, lift));
+    }
+
+    @Test
+    public void finishedGroupRunsAgain() {
+        Step a = new Step("a", 1, events);
+        Step b = new Step("b", 2, events);
+        Command group = Commands.sequence(a, b);
+
+        scheduler.schedule(group);
+        runUntilIdle(10);
+        scheduler.schedule(group);
+        assertTrue(scheduler.isScheduled(group));
+        runUntilIdle(10);
+
+        assertEquals(2, Collections.frequency(events, "b end"));
+    }
+
+    @Test
+    public void timelineReadsTheGivenClock() {
+        Step slow = new Step("slow", 1, events) {
+            @Override
+            public void update() {
+                super.update();
+                clock.time += 0.003;
+            }
+        };
+        clock.time = 10;
+        scheduler.timeline.clear();
+        clock.time = 10.5;
+        scheduler.schedule(Commands.sequence(Commands.waitMillis(250, clock), slow));
+
+        scheduler.run();
+        clock.time += 0.25;
+        scheduler.run();
+        scheduler.run();
+        assertTrue(scheduler.isIdle());
+
+        String[] lines = scheduler.timeline.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("Sequence @0.50s 0.25s (update 3.0ms)", lines[0]);
+        assertEquals("  Wait 250.0ms @0.50s 0.25s (update 0.0ms)", lines[1]);
+        assertEquals("  slow @0.75s 0.00s (update 3.0ms)", lines[2]);
+    }
+
+    @Test
+    public void commandEndingAtTheClocksZeroIsNotRunning() {
+        // a virtual clock may well start at 0
+        scheduler.schedule(Commands.instant("now", () -> {
+        }));
+        assertEquals("now @0.00s 0.00s (update 0.0ms)", scheduler.timeline.toString().trim());
+    }
+}
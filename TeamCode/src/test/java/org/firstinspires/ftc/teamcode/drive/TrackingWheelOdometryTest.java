@@ -0,0 +1,186 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.ThreeTrackingWheelLocalizer;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks {@link TrackingWheelOdometry} against Road Runner's {@code ThreeTrackingWheelLocalizer}
+ * with the wheel poses {@code StandardTrackingWheelLocalizer} uses, and both against the true
+ * pose, on synthetic encoder traces of a robot driving curves while strafing and turning.
+ */
+public class TrackingWheelOdometryTest {
+    // StandardTrackingWheelLocalizer's defaults
+    private static final double LATERAL_DISTANCE = 10; // in
+    private static final double FORWARD_OFFSET = 4; // in
+    private static final double TICKS_PER_REV = 2000;
+    private static final double WHEEL_RADIUS = 0.944882; // in
+
+    private static final double[][] WHEELS = {
+            {0, LATERAL_DISTANCE / 2, 0}, // left
+            {0, -LATERAL_DISTANCE / 2, 0}, // right
+            {FORWARD_OFFSET, 0, Math.toRadians(90)} // front
+    };
+
+    private static final double DURATION = 5; // s
+    private static final int SAMPLES_PER_SECOND = 100;
+    // the truth is integrated this many times finer than the wheels are sampled
+    private static final int SUBSTEPS = 200;
+
+    // the two implementations only differ in floating point order
+    private static final double MATCH_EPSILON = 1e-9; // in, rad
+    // per-sample pose exponential steps on a twist that keeps changing
+    private static final double EXACT_TOLERANCE = 0.01; // in
+    // plus a tick of quantization on every sample
+    private static final double TICK_TOLERANCE = 0.05; // in
+
+    /**
+     * Robot-relative velocity at {@code t}: x, y (in/s) and heading (rad/s).
+     */
+    private static double[] twist(double t) {
+        return new double[]{
+                40 * Math.sin(0.7 * t) + 10,
+                15 * Math.cos(1.3 * t),
+                1.5 * Math.sin(0.9 * t + 0.4)
+        };
+    }
+
+    private static double wheelVelocity(double[] wheel, double[] twist) {
+        double cos = Math.cos(wheel[2]), sin = Math.sin(wheel[2]);
+        return cos * twist[0] + sin * twist[1] + (wheel[0] * sin - wheel[1] * cos) * twist[2];
+    }
+
+    /**
+     * The trace: per sample, the true field pose and the wheel positions in inches.
+     */
+    private static final class Trace {
+        final int samples = (int) (DURATION * SAMPLES_PER_SECOND) + 1;
+        final double[][] poses = new double[samples][3];
+        final double[][] wheels = new double[samples][WHEELS.length];
+
+        Trace(boolean quantized) {
+            double dt = 1.0 / SAMPLES_PER_SECOND / SUBSTEPS;
+            double x = 0, y = 0, heading = 0;
+            double[] positions = new double[WHEELS.length];
+            double inchesPerTick = 2 * Math.PI * WHEEL_RADIUS / TICKS_PER_REV;
+
+            for (int i = 0; i < samples; i++) {
+                poses[i][0] = x;
+                poses[i][1] = y;
+                poses[i][2] = heading;
+                for (int w = 0; w < WHEELS.length; w++) {
+                    wheels[i][w] = quantized
+                            ? Math.floor(positions[w] / inchesPerTick) * inchesPerTick
+                            : positions[w];
+                }
+
+                for (int s = 0; s < SUBSTEPS; s++) {
+                    // midpoint rule, on both the twist and the heading it's rotated by
+                    double[] twist = twist((i * SUBSTEPS + s + 0.5) * dt);
+                    double mid = heading + twist[2] * dt / 2;
+                    x += (twist[0] * Math.cos(mid) - twist[1] * Math.sin(mid)) * dt;
+                    y += (twist[0] * Math.sin(mid) + twist[1] * Math.cos(mid)) * dt;
+                    heading += twist[2] * dt;
+                    for (int w = 0; w < WHEELS.length; w++) {
+                        positions[w] += wheelVelocity(WHEELS[w], twist) * dt;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Road Runner's localizer, fed from the trace one sample at a time.
+     */
+    private static final class TraceLocalizer extends ThreeTrackingWheelLocalizer {
+        private List<Double> positions;
+
+        TraceLocalizer() {
+            super(Arrays.asList(
+                    new Pose2d(WHEELS[0][0], WHEELS[0][1], WHEELS[0][2]),
+                    new Pose2d(WHEELS[1][0], WHEELS[1][1], WHEELS[1][2]),
+                    new Pose2d(WHEELS[2][0], WHEELS[2][1], WHEELS[2][2])
+            ));
+        }
+
+        void update(double[] wheels) {
+            positions = Arrays.asList(wheels[0], wheels[1], wheels[2]);
+            update();
+        }
+
+        @NonNull
+        @Override
+        public List<Double> getWheelPositions() {
+            return positions;
+        }
+    }
+
+    private static void run(Trace trace, double tolerance) {
+        TrackingWheelOdometry odometry = new TrackingWheelOdometry(LATERAL_DISTANCE, FORWARD_OFFSET);
+        TraceLocalizer reference = new TraceLocalizer();
+
+        for (int i = 0; i < trace.samples; i++) {
+            odometry.update(trace.wheels[i][0], trace.wheels[i][1], trace.wheels[i][2]);
+            reference.update(trace.wheels[i]);
+
+            String at = "sample " + i;
+            Pose2d expected = reference.getPoseEstimate();
+            assertEquals(at, expected.getX(), odometry.getX(), MATCH_EPSILON);
+            assertEquals(at, expected.getY(), odometry.getY(), MATCH_EPSILON);
+            assertEquals(at, 0, Angle.normDelta(expected.getHeading() - odometry.getHeading()), MATCH_EPSILON);
+
+            double[] truth = trace.poses[i];
+            assertEquals(at, truth[0], odometry.getX(), tolerance);
+            assertEquals(at, truth[1], odometry.getY(), tolerance);
+            assertEquals(at, 0, Angle.normDelta(truth[2] - odometry.getHeading()), tolerance / LATERAL_DISTANCE);
+        }
+    }
+
+    @Test
+    public void matchesRoadRunnerOnExactWheelPositions() {
+        run(new Trace(false), EXACT_TOLERANCE);
+    }
+
+    @Test
+    public void matchesRoadRunnerOnEncoderTicks() {
+        run(new Trace(true), TICK_TOLERANCE);
+    }
+
+    @Test
+    public void recoversTwistFromWheelVelocities() {
+        TrackingWheelOdometry odometry = new TrackingWheelOdometry(LATERAL_DISTANCE, FORWARD_OFFSET);
+        for (double t = 0; t < DURATION; t += 0.25) {
+            double[] twist = twist(t);
+            odometry.updateVelocity(
+                    wheelVelocity(WHEELS[0], twist),
+                    wheelVelocity(WHEELS[1], twist),
+                    wheelVelocity(WHEELS[2], twist));
+            assertEquals(twist[0], odometry.getVelX(), MATCH_EPSILON);
+            assertEquals(twist[1], odometry.getVelY(), MATCH_EPSILON);
+            assertEquals(twist[2], odometry.getVelHeading(), MATCH_EPSILON);
+        }
+    }
+
+    @Test
+    public void startsFromSetPose() {
+        TrackingWheelOdometry odometry = new TrackingWheelOdometry(LATERAL_DISTANCE, FORWARD_OFFSET);
+        odometry.setPose(12, -24, Math.toRadians(90));
+        // the first positions after setPose are only recorded
+        odometry.update(100, 100, 100);
+        odometry.update(110, 110, 100);
+
+        // straight ahead along the field's +y
+        assertEquals(12, odometry.getX(), MATCH_EPSILON);
+        assertEquals(-14, odometry.getY(), MATCH_EPSILON);
+        assertEquals(Math.toRadians(90), odometry.getHeading(), MATCH_EPSILON);
+    }
+}
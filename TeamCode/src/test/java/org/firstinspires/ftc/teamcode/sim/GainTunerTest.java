@@ -0,0 +1,58 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.teamcode.DriveGains;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs {@link GainTuner} on the simulator. With {@code -PtuneGains=<file>} on the Gradle command
+ * line, {@link #tunesAndWritesGains()} also runs a full tune and writes the best gains to that
+ * file, relative to TeamCode.
+ */
+public class GainTunerTest {
+    @Test
+    public void convergesFromDetunedGains() {
+        GainTuner tuner = new GainTuner();
+        tuner.start = DriveGains.current();
+        tuner.start.translationalP = 1;
+        tuner.start.headingP = 1;
+        tuner.trialsPerCandidate = 2;
+        tuner.maxEvaluations = 200;
+        tuner.tolerance = 0.01;
+        tuner.sequence = robot -> robot.trajectorySequenceBuilder(new Pose2d())
+                .forward(24)
+                .turn(Math.toRadians(90))
+                .strafeLeft(12)
+                .build();
+
+        GainTuner.Result result = tuner.tune();
+        System.out.print(result.report());
+
+        assertTrue(result.report(), result.converged);
+        assertTrue(result.report(), result.bestCost < 0.7 * result.startCost);
+        assertTrue(result.best.translationalP > 1 || result.best.headingP > 1);
+        double best = result.startCost;
+        for (GainTuner.Iteration iteration : result.history) {
+            assertTrue(iteration.bestCost <= best);
+            best = iteration.bestCost;
+        }
+    }
+
+    @Test
+    public void tunesAndWritesGains() throws IOException {
+        String file = System.getProperty("tuneGains");
+        assumeTrue("pass -PtuneGains=<file> to run a full tune", file != null);
+
+        GainTuner.Result result = new GainTuner().tune();
+        System.out.print(result.report());
+        result.write(new File(file));
+        System.out.println("wrote " + new File(file).getAbsolutePath());
+    }
+}
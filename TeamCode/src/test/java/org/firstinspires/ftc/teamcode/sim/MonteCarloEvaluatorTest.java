@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs {@link MonteCarloEvaluator} on the simulator and writes its report. With
+ * {@code -PmonteCarlo=<dir>} on the Gradle command line, {@link #evaluatesAndWritesReport()} also
+ * runs {@link GainTuner}'s test drive with the current tunables and writes the summary table and
+ * the per-trial CSV to that directory, relative to TeamCode.
+ */
+public class MonteCarloEvaluatorTest {
+    private static final int TRIALS = 200;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes {@code summary.txt} and {@code trials.csv} to {@code dir}.
+     */
+    private static void write(MonteCarloEvaluator.Result result, File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        Files.write(new File(dir, "summary.txt").toPath(), result.summary().getBytes(StandardCharsets.UTF_8));
+        result.writeCsv(new File(dir, "trials.csv"));
+    }
+
+    @Test
+    public void writesSummaryAndCsv() throws IOException {
+        MonteCarloEvaluator evaluator = new MonteCarloEvaluator();
+        MonteCarloEvaluator.Result result = evaluator.evaluate(
+                new SimulatedRobot().createRobot(null).trajectorySequenceBuilder(new Pose2d())
+                        .forward(24)
+                        .build(),
+                4);
+
+        File dir = folder.newFolder("report");
+        write(result, dir);
+
+        String summary = new String(Files.readAllBytes(new File(dir, "summary.txt").toPath()), StandardCharsets.UTF_8);
+        assertTrue(summary, summary.startsWith("4 trials"));
+        assertTrue(summary, summary.contains("completion time (s)"));
+
+        List<String> rows = Files.readAllLines(new File(dir, "trials.csv").toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, rows.size());
+        int columns = rows.get(0).split(",").length;
+        for (int i = 1; i < rows.size(); i++) {
+            String[] row = rows.get(i).split(",");
+            assertEquals(columns, row.length);
+            assertEquals(String.valueOf(i - 1), row[0]);
+        }
+    }
+
+    @Test
+    public void evaluatesAndWritesReport() throws IOException {
+        String dir = System.getProperty("monteCarlo");
+        assumeTrue("pass -PmonteCarlo=<dir> to run a full evaluation", dir != null);
+
+        MonteCarloEvaluator evaluator = new MonteCarloEvaluator();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        MonteCarloEvaluator.Result result;
+        try {
+            result = evaluator.evaluate(new GainTuner().sequence, TRIALS, pool);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.print(result.summary());
+        write(result, new File(dir));
+        System.out.println("wrote " + new File(dir).getAbsolutePath());
+    }
+}
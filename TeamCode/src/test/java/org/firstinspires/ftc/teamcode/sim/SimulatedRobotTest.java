@@ -0,0 +1,115 @@
+package org.firstinspires.ftc.teamcode.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.firstinspires.ftc.teamcode.DriveGains;
+import org.firstinspires.ftc.teamcode.RealRobot;
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+
+import org.junit.Test;
+
+/**
+ * Drives {@link RealRobot} through sequences on a {@link SimulatedRobot} and checks where the
+ * robot really ends up. Runs as a local unit test, i.e. on the desktop JVM against the SDK's
+ * classes.
+ */
+public class SimulatedRobotTest {
+    // where the robot really stops vs the end of the sequence
+    private static final double POSITION_TOLERANCE = 1.5; // in
+    private static final double HEADING_TOLERANCE = Math.toRadians(3);
+    // where the localizer thinks it stopped vs where it did
+    private static final double LOCALIZATION_TOLERANCE = 0.5; // in
+
+    private static DriveGains gains() {
+        DriveGains gains = DriveGains.current();
+        gains.translationalP = 8;
+        gains.headingP = 8;
+        return gains;
+    }
+
+    private static TrajectorySequence sequence(RealRobot robot, Pose2d start) {
+        return robot.trajectorySequenceBuilder(start)
+                .forward(24)
+                .turn(Math.toRadians(90))
+                .waitSeconds(0.25)
+                .strafeRight(12)
+                .splineTo(new Vector2d(12, 36), Math.toRadians(180))
+                .build();
+    }
+
+    @Test
+    public void followsSequenceToItsEnd() {
+        SimulatedRobot simulation = new SimulatedRobot();
+        RealRobot robot = simulation.createRobot(null, gains());
+
+        Pose2d start = new Pose2d(0, 0, 0);
+        simulation.setPose(start);
+        robot.setPoseEstimate(start);
+
+        TrajectorySequence sequence = sequence(robot, start);
+        double startTime = simulation.getClock().seconds();
+        robot.followTrajectorySequence(sequence);
+        double elapsed = simulation.getClock().seconds() - startTime;
+
+        assertFalse(robot.isBusy());
+        // finishes on time, as far as whole loops allow
+        assertEquals(sequence.duration(), elapsed, 0.25);
+
+        Pose2d end = sequence.end();
+        Pose2d actual = simulation.getPose();
+        assertEquals(end.getX(), actual.getX(), POSITION_TOLERANCE);
+        assertEquals(end.getY(), actual.getY(), POSITION_TOLERANCE);
+        assertEquals(0, Angle.normDelta(actual.getHeading() - end.getHeading()), HEADING_TOLERANCE);
+
+        Pose2d estimate = robot.getPoseEstimate();
+        assertEquals(actual.getX(), estimate.getX(), LOCALIZATION_TOLERANCE);
+        assertEquals(actual.getY(), estimate.getY(), LOCALIZATION_TOLERANCE);
+    }
+
+    @Test
+    public void sameSeedSameRun() {
+        SimulationParameters parameters = new SimulationParameters();
+        parameters.encoderNoise = 1;
+        parameters.loopJitter = 0.002;
+        parameters.seed = 42;
+
+        Pose2d[] ends = new Pose2d[2];
+        for (int i = 0; i < ends.length; i++) {
+            SimulatedRobot simulation = new SimulatedRobot(parameters);
+            RealRobot robot = simulation.createRobot(null, gains());
+            Pose2d start = new Pose2d(0, 0, 0);
+            simulation.setPose(start);
+            robot.setPoseEstimate(start);
+            robot.followTrajectorySequence(sequence(robot, start));
+            ends[i] = simulation.getPose();
+        }
+
+        assertEquals(ends[0].getX(), ends[1].getX(), 0);
+        assertEquals(ends[0].getY(), ends[1].getY(), 0);
+        assertEquals(ends[0].getHeading(), ends[1].getHeading(), 0);
+    }
+
+    @Test
+    public void monteCarloTrialsFinish() {
+        MonteCarloEvaluator evaluator = new MonteCarloEvaluator();
+        evaluator.gains = gains();
+        MonteCarloEvaluator.Result result = evaluator.evaluate(
+                new SimulatedRobot().createRobot(null).trajectorySequenceBuilder(new Pose2d())
+                        .forward(24)
+                        .turn(Math.toRadians(-90))
+                        .build(),
+                8);
+
+        assertEquals(8, result.trials.length);
+        for (MonteCarloEvaluator.Trial trial : result.trials) {
+            assertFalse(trial.timedOut);
+            assertTrue(trial.getPositionError() < 3 * POSITION_TOLERANCE);
+        }
+    }
+}
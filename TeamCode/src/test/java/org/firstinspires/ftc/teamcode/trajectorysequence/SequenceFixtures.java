@@ -0,0 +1,78 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
+import com.acmerobotics.roadrunner.trajectory.constraints.AngularVelocityConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.MecanumVelocityConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.MinVelocityConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.ProfileAccelerationConstraint;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSegment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Constraints shared by the sequence tests, copied from DriveConstants like the benchmarks'.
+ */
+final class SequenceFixtures {
+    static final double MAX_VEL = 68.8675311434;
+    static final double MAX_ACCEL = 68.8675311434;
+    static final double MAX_ANG_VEL = Math.toRadians(60);
+    static final double MAX_ANG_ACCEL = Math.toRadians(60);
+    static final double TRACK_WIDTH = 13.2;
+
+    private SequenceFixtures() {
+    }
+
+    static TrajectorySequenceBuilder builder(Pose2d start) {
+        return new TrajectorySequenceBuilder(
+                start,
+                new MinVelocityConstraint(Arrays.asList(
+                        new AngularVelocityConstraint(MAX_ANG_VEL),
+                        new MecanumVelocityConstraint(MAX_VEL, TRACK_WIDTH)
+                )),
+                new ProfileAccelerationConstraint(MAX_ACCEL),
+                MAX_ANG_VEL, MAX_ANG_ACCEL
+        );
+    }
+
+    /**
+     * @return where the segment wants the robot {@code t} seconds into it
+     */
+    static Pose2d sample(SequenceSegment segment, double t) {
+        if (segment instanceof TrajectorySegment) {
+            return ((TrajectorySegment) segment).getTrajectory().get(t);
+        } else if (segment instanceof TurnSegment) {
+            Pose2d start = segment.getStartPose();
+            return new Pose2d(start.getX(), start.getY(), ((TurnSegment) segment).getMotionProfile().get(t).getX());
+        }
+        return segment.getStartPose();
+    }
+
+    /**
+     * @return the segment's markers; a trajectory segment keeps them in its trajectory, where the
+     * follower fires them
+     */
+    static List<TrajectoryMarker> markers(SequenceSegment segment) {
+        if (segment instanceof TrajectorySegment) {
+            return ((TrajectorySegment) segment).getTrajectory().getMarkers();
+        }
+        return segment.getMarkers();
+    }
+
+    /**
+     * A clock that only moves when told to.
+     */
+    static class ManualClock extends NanoClock {
+        double time;
+
+        @Override
+        public double seconds() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrajectorySequenceIOTest {
+    private static final double DT = 0.01; // s
+    // paths are rebuilt from their knots and end derivatives, and re-parameterized by arc length
+    private static final double POSE_EPSILON = 1e-4; // in, rad
+    // profiles and marker times are stored verbatim
+    private static final double EPSILON = 1e-12;
+
+    private static final MarkerCallback NO_OP = () -> {
+    };
+
+    /**
+     * Every segment kind, every heading interpolation, and all three kinds of marker, one of them
+     * in the turn and the rest in trajectories.
+     */
+    private static TrajectorySequence sequence() {
+        return SequenceFixtures.builder(new Pose2d(-36, -62, Math.toRadians(90)))
+                .splineTo(new Vector2d(-30, -34), Math.toRadians(60))
+                .addTemporalMarker(0.5, NO_OP)
+                .back(6)
+                .turn(Math.toRadians(-150))
+                .UNSTABLE_addTemporalMarkerOffset(-0.2, NO_OP)
+                .splineToLinearHeading(new Pose2d(48, -36, Math.toRadians(180)), Math.toRadians(0))
+                .addDisplacementMarker(NO_OP)
+                .waitSeconds(0.5)
+                .lineToConstantHeading(new Vector2d(24, -12))
+                .splineToConstantHeading(new Vector2d(-58, -12), Math.toRadians(180))
+                .addSpatialMarker(new Vector2d(-20, -12), NO_OP)
+                .splineToSplineHeading(new Pose2d(24, -12, Math.toRadians(90)), Math.toRadians(0))
+                .lineToLinearHeading(new Pose2d(48, -36, Math.toRadians(180)))
+                .build();
+    }
+
+    private static byte[] write(TrajectorySequence sequence) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TrajectorySequenceIO.write(sequence, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static TrajectorySequence read(byte[] bytes, MarkerCallback... callbacks) throws IOException {
+        return TrajectorySequenceIO.read(new DataInputStream(new ByteArrayInputStream(bytes)), callbacks);
+    }
+
+    private static double[] markerTimes(SequenceSegment segment) {
+        List<TrajectoryMarker> markers = SequenceFixtures.markers(segment);
+        double[] times = new double[markers.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = markers.get(i).getTime();
+        }
+        return times;
+    }
+
+    @Test
+    public void fixtureHasMarkersInTrajectoryAndOtherSegments() {
+        TrajectorySequence sequence = sequence();
+        int inTrajectories = 0, inOthers = 0;
+        for (int i = 0; i < sequence.size(); i++) {
+            int n = SequenceFixtures.markers(sequence.get(i)).size();
+            if (sequence.get(i) instanceof TrajectorySegment) {
+                inTrajectories += n;
+            } else {
+                inOthers += n;
+            }
+        }
+        assertEquals(4, inTrajectories + inOthers);
+        assertTrue(inTrajectories > 0);
+        assertTrue(inOthers > 0);
+    }
+
+    @Test
+    public void roundTripMatchesAtEverySampledTime() throws IOException {
+        TrajectorySequence original = sequence();
+        TrajectorySequence loaded = read(write(original));
+
+        assertEquals(original.size(), loaded.size());
+        assertEquals(original.duration(), loaded.duration(), EPSILON);
+        for (int i = 0; i < original.size(); i++) {
+            SequenceSegment a = original.get(i);
+            SequenceSegment b = loaded.get(i);
+            assertSame(a.getClass(), b.getClass());
+            assertEquals(a.getDuration(), b.getDuration(), EPSILON);
+            assertArrayEquals(markerTimes(a), markerTimes(b), EPSILON);
+
+            for (double t = 0; t <= a.getDuration() + DT / 2; t += DT) {
+                double time = Math.min(t, a.getDuration());
+                Pose2d expected = SequenceFixtures.sample(a, time);
+                Pose2d actual = SequenceFixtures.sample(b, time);
+                String at = "segment " + i + " at " + time + " s";
+                assertEquals(at, expected.getX(), actual.getX(), POSE_EPSILON);
+                assertEquals(at, expected.getY(), actual.getY(), POSE_EPSILON);
+                assertEquals(at, 0, Angle.normDelta(expected.getHeading() - actual.getHeading()), POSE_EPSILON);
+            }
+        }
+        assertEquals(0, TrajectorySequenceIO.maxDeviation(original, loaded, DT), POSE_EPSILON);
+    }
+
+    @Test
+    public void loadedSequenceRoundTripsAgain() throws IOException {
+        TrajectorySequence once = read(write(sequence()));
+        TrajectorySequence twice = read(write(once));
+        assertEquals(0, TrajectorySequenceIO.maxDeviation(once, twice, DT), POSE_EPSILON);
+    }
+
+    @Test
+    public void callbacksAreReattachedInOrder() throws IOException {
+        TrajectorySequence original = sequence();
+        int markers = 0;
+        for (int i = 0; i < original.size(); i++) {
+            markers += SequenceFixtures.markers(original.get(i)).size();
+        }
+
+        List<Integer> fired = new ArrayList<>();
+        MarkerCallback[] callbacks = new MarkerCallback[markers];
+        for (int i = 0; i < markers; i++) {
+            int index = i;
+            callbacks[i] = () -> fired.add(index);
+        }
+        TrajectorySequence loaded = read(write(original), callbacks);
+
+        // each segment's markers, in the order they were written, get the next callbacks
+        for (int i = 0; i < loaded.size(); i++) {
+            for (TrajectoryMarker marker : SequenceFixtures.markers(loaded.get(i))) {
+                marker.getCallback().onMarkerReached();
+            }
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < markers; i++) {
+            expected.add(i);
+        }
+        assertEquals(4, markers);
+        assertEquals(expected, fired);
+    }
+
+    @Test
+    public void missingCallbacksDoNothing() throws IOException {
+        TrajectorySequence loaded = read(write(sequence()));
+        for (int i = 0; i < loaded.size(); i++) {
+            for (TrajectoryMarker marker : SequenceFixtures.markers(loaded.get(i))) {
+                marker.getCallback().onMarkerReached();
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherData() throws IOException {
+        read(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    }
+}
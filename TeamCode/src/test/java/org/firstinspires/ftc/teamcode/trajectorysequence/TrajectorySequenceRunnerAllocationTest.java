@@ -0,0 +1,135 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.acmerobotics.roadrunner.control.PIDCoefficients;
+import com.acmerobotics.roadrunner.drive.DriveSignal;
+import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.teamcode.sim.SimulatedRobot;
+import org.firstinspires.ftc.teamcode.util.VoltageService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes {@link TrajectorySequenceRunner#update} allocates on top of the
+ * {@link TrajectorySequenceStepper} it wraps. Road Runner's trajectories and followers allocate on
+ * every trajectory tick (see {@link TrajectorySequenceStepperAllocationTest}), so both run a fake
+ * follower that returns the same signal every time; the runner must add nothing to the rest.
+ */
+public class TrajectorySequenceRunnerAllocationTest {
+    private static final double LOOP_PERIOD = 0.01; // s
+    private static final int WARMUP_UPDATES = 10_000;
+    private static final int UPDATES = 5_000;
+    // the first reads of the counter allocate a little themselves; none of it scales with UPDATES
+    private static final long SLACK_BYTES = 1024;
+
+    private static final Pose2d START = new Pose2d(-36, -62, Math.toRadians(90));
+    private static final Pose2d VELOCITY = new Pose2d(0, 0, 0);
+
+    private com.sun.management.ThreadMXBean threads;
+    private VoltageService voltageService;
+    // keeps the JIT from eliding allocations in one loop but not the other
+    private Object sink;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        voltageService = new VoltageService(
+                new SimulatedRobot().getHardwareMap().voltageSensor.iterator().next(), false);
+    }
+
+    /**
+     * Drives straight ahead at a fixed speed.
+     */
+    private static class FixedFollower extends TrajectoryFollower {
+        private final DriveSignal signal = new DriveSignal(new Pose2d(30, 0, 0), new Pose2d());
+        private Pose2d lastError = new Pose2d();
+
+        FixedFollower(NanoClock clock) {
+            super(new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5, clock);
+        }
+
+        @Override
+        public Pose2d getLastError() {
+            return lastError;
+        }
+
+        protected void setLastError(Pose2d lastError) {
+            this.lastError = lastError;
+        }
+
+        @Override
+        protected DriveSignal internalUpdate(Pose2d currentPose, Pose2d currentRobotVel) {
+            return signal;
+        }
+    }
+
+    private static TrajectorySequence straight() {
+        // long enough to stay on the trajectory through the warmup and the measurement
+        double seconds = 2 * (WARMUP_UPDATES + UPDATES) * LOOP_PERIOD;
+        return SequenceFixtures.builder(START).forward(seconds * SequenceFixtures.MAX_VEL).build();
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return bytes allocated by {@code updates} stepper updates, a loop period apart
+     */
+    private long measure(TrajectorySequenceStepper stepper, SequenceFixtures.ManualClock clock, int updates) {
+        long before = allocatedBytes();
+        for (int i = 0; i < updates; i++) {
+            clock.time += LOOP_PERIOD;
+            sink = stepper.update(START, VELOCITY);
+        }
+        return allocatedBytes() - before;
+    }
+
+    /**
+     * @return bytes allocated by {@code updates} runner updates, a loop period apart
+     */
+    private long measure(TrajectorySequenceRunner runner, SequenceFixtures.ManualClock clock, int updates) {
+        long before = allocatedBytes();
+        for (int i = 0; i < updates; i++) {
+            clock.time += LOOP_PERIOD;
+            sink = runner.update(START, VELOCITY);
+        }
+        return allocatedBytes() - before;
+    }
+
+    @Test
+    public void trajectoryUpdateAllocatesNothingOnTopOfTheFollower() {
+        SequenceFixtures.ManualClock stepperClock = new SequenceFixtures.ManualClock();
+        TrajectorySequenceStepper stepper = new TrajectorySequenceStepper(
+                new FixedFollower(stepperClock), new PIDCoefficients(8, 0, 0.2), stepperClock);
+        stepper.follow(straight());
+        measure(stepper, stepperClock, WARMUP_UPDATES);
+        long stepperBytes = measure(stepper, stepperClock, UPDATES);
+        assertTrue(stepper.isBusy());
+
+        SequenceFixtures.ManualClock runnerClock = new SequenceFixtures.ManualClock();
+        int[] none = new int[0];
+        TrajectorySequenceRunner runner = new TrajectorySequenceRunner(
+                new FixedFollower(runnerClock), new PIDCoefficients(8, 0, 0.2), voltageService,
+                none, none, none, none, runnerClock);
+        runner.setLogging(false);
+        runner.followTrajectorySequenceAsync(straight());
+        measure(runner, runnerClock, WARMUP_UPDATES);
+        long runnerBytes = measure(runner, runnerClock, UPDATES);
+        assertTrue(runner.isBusy());
+
+        assertTrue(runnerBytes + " bytes over " + UPDATES + " updates, the stepper alone " + stepperBytes,
+                runnerBytes <= stepperBytes + SLACK_BYTES);
+    }
+}
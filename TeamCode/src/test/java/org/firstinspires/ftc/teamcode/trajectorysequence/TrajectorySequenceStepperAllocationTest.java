@@ -0,0 +1,99 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.acmerobotics.roadrunner.control.PIDCoefficients;
+import com.acmerobotics.roadrunner.followers.HolonomicPIDVAFollower;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes {@link TrajectorySequenceStepper#update} allocates on the calling thread. Idle
+ * and on a wait it must allocate nothing, since that is most of every autonomous's loops.
+ */
+public class TrajectorySequenceStepperAllocationTest {
+    private static final double LOOP_PERIOD = 0.01; // s
+    private static final int WARMUP_UPDATES = 20_000;
+    private static final int UPDATES = 10_000;
+    // the first reads of the counter allocate a little themselves; none of it scales with UPDATES
+    private static final long SLACK_BYTES = 1024;
+
+    private static final Pose2d START = new Pose2d(-36, -62, Math.toRadians(90));
+    private static final Pose2d VELOCITY = new Pose2d(0, 0, 0);
+
+    private final SequenceFixtures.ManualClock clock = new SequenceFixtures.ManualClock();
+    private com.sun.management.ThreadMXBean threads;
+    private TrajectorySequenceStepper stepper;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        PIDCoefficients translational = new PIDCoefficients(8, 0, 0.5);
+        PIDCoefficients heading = new PIDCoefficients(8, 0, 0.2);
+        HolonomicPIDVAFollower follower = new HolonomicPIDVAFollower(translational, translational, heading,
+                new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5, clock);
+        stepper = new TrajectorySequenceStepper(follower, heading, clock);
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return bytes allocated by {@code updates} updates, a loop period apart
+     */
+    private long measure(int updates) {
+        long before = allocatedBytes();
+        for (int i = 0; i < updates; i++) {
+            clock.time += LOOP_PERIOD;
+            stepper.update(START, VELOCITY);
+        }
+        return allocatedBytes() - before;
+    }
+
+    @Test
+    public void idleUpdateAllocatesNothing() {
+        measure(WARMUP_UPDATES);
+        assertNull(stepper.update(START, VELOCITY));
+
+        long bytes = measure(UPDATES);
+        assertTrue(bytes + " bytes over " + UPDATES + " updates", bytes <= SLACK_BYTES);
+    }
+
+    @Test
+    public void waitUpdateAllocatesNothing() {
+        // long enough to stay on the wait through the warmup and the measurement
+        double seconds = 2 * (WARMUP_UPDATES + UPDATES) * LOOP_PERIOD;
+        stepper.follow(SequenceFixtures.builder(START).waitSeconds(seconds).build());
+        measure(WARMUP_UPDATES);
+        assertSame(TrajectorySequenceStepper.IDLE, stepper.update(START, VELOCITY));
+
+        long bytes = measure(UPDATES);
+        assertTrue(stepper.isBusy());
+        assertTrue(bytes + " bytes over " + UPDATES + " updates", bytes <= SLACK_BYTES);
+    }
+
+    @Test
+    public void counterSeesFollowerAllocations() {
+        // Road Runner's follower returns new poses and signals, so a trajectory tick allocates
+        int updates = 100;
+        double seconds = 2 * 2 * updates * LOOP_PERIOD;
+        stepper.follow(SequenceFixtures.builder(START).forward(seconds * SequenceFixtures.MAX_VEL).build());
+        measure(updates);
+
+        long bytes = measure(updates);
+        assertTrue(stepper.isBusy());
+        assertTrue(bytes + " bytes over " + updates + " updates", bytes > 16 * updates);
+    }
+}
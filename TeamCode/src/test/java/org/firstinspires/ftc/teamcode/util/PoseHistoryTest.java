@@ -0,0 +1,65 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Wrapping and resizing of the {@link PoseHistory} ring.
+ */
+public class PoseHistoryTest {
+    private static double[] xs(PoseHistory history) {
+        double[] xs = new double[history.size()];
+        history.copyTo(xs, new double[history.size()]);
+        return xs;
+    }
+
+    @Test
+    public void keepsTheNewestPointsOldestFirst() {
+        PoseHistory history = new PoseHistory(4);
+        for (int i = 0; i < 10; i++) {
+            history.add(i, -i);
+        }
+
+        assertEquals(4, history.size());
+        assertArrayEquals(new double[]{6, 7, 8, 9}, xs(history), 0);
+
+        // a wrapped ring comes out as two runs that join up
+        double[] seen = new double[4];
+        int[] n = new int[1];
+        history.forEachRun((xs, ys, from, to) -> {
+            for (int i = from; i < to; i++) {
+                assertEquals(-xs[i], ys[i], 0);
+                seen[n[0]++] = xs[i];
+            }
+        });
+        assertArrayEquals(new double[]{6, 7, 8, 9}, seen, 0);
+    }
+
+    @Test
+    public void resizingKeepsTheNewestPoints() {
+        PoseHistory history = new PoseHistory(4);
+        for (int i = 0; i < 6; i++) {
+            history.add(i, 0);
+        }
+
+        history.setCapacity(3);
+        assertArrayEquals(new double[]{3, 4, 5}, xs(history), 0);
+
+        history.setCapacity(8);
+        history.add(6, 0);
+        assertArrayEquals(new double[]{3, 4, 5, 6}, xs(history), 0);
+    }
+
+    @Test
+    public void skipsPointsCloserThanTheSpacing() {
+        PoseHistory history = new PoseHistory(10);
+        history.setMinSpacing(1);
+        history.add(0, 0);
+        history.add(0.5, 0);
+        history.add(1.2, 0);
+
+        assertArrayEquals(new double[]{0, 1.2}, xs(history), 0);
+    }
+}
@@ -0,0 +1,202 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compares {@link VelocityEstimator} with the median-of-three of successive differences that
+ * {@code Encoder} used before it, on synthetic encoder traces: a 0.5 Hz sinusoid peaking at
+ * 20000 ticks/s, rounded to whole ticks, optionally with jittered sample times and 400 tick
+ * glitches on 1% of the samples.
+ */
+public class VelocityEstimatorTest {
+    private static final double PEAK_VELOCITY = 20000; // ticks/s
+    private static final double FREQUENCY = 0.5; // Hz
+    private static final double DURATION = 10; // s
+    // the estimators' first samples aren't scored
+    private static final double SETTLE_TIME = 1; // s
+    private static final int GLITCH_TICKS = 400;
+
+    /**
+     * The estimator {@code Encoder} had before: velocities from successive position changes, and
+     * the median of the last three.
+     */
+    private static final class MedianOfThree {
+        private final double[] estimates = new double[3];
+        private int index;
+        private int lastPosition;
+        private double lastTime;
+
+        double update(double time, int position) {
+            if (position != lastPosition) {
+                estimates[index] = (position - lastPosition) / (time - lastTime);
+                index = (index + 1) % 3;
+                lastPosition = position;
+                lastTime = time;
+            }
+            return estimates[0] > estimates[1]
+                    ? Math.max(estimates[1], Math.min(estimates[0], estimates[2]))
+                    : Math.max(estimates[0], Math.min(estimates[1], estimates[2]));
+        }
+    }
+
+    /**
+     * RMS errors in ticks/s of the median-of-three ({@code [0]}) and of {@code estimator} ({@code [1]}).
+     *
+     * @param jitter fraction of the period each sample time may be off by
+     */
+    private static double[] rmsErrors(VelocityEstimator estimator, double period, double jitter, double glitchRate) {
+        Random random = new Random(1);
+        MedianOfThree median = new MedianOfThree();
+        double amplitude = PEAK_VELOCITY / (2 * Math.PI * FREQUENCY);
+        double w = 2 * Math.PI * FREQUENCY;
+
+        double medianSquares = 0, fitSquares = 0;
+        int n = 0;
+        for (double t = period; t < DURATION; t += period * (1 + jitter * (2 * random.nextDouble() - 1))) {
+            int position = (int) Math.round(amplitude * Math.sin(w * t));
+            if (random.nextDouble() < glitchRate) {
+                position += random.nextBoolean() ? GLITCH_TICKS : -GLITCH_TICKS;
+            }
+            double velocity = amplitude * w * Math.cos(w * t);
+
+            double medianError = median.update(t, position) - velocity;
+            estimator.add((long) (t * 1e9), position);
+            double fitError = estimator.getVelocity(0) - velocity;
+            if (t > SETTLE_TIME) {
+                medianSquares += medianError * medianError;
+                fitSquares += fitError * fitError;
+                n++;
+            }
+        }
+        return new double[]{Math.sqrt(medianSquares / n), Math.sqrt(fitSquares / n)};
+    }
+
+    /**
+     * How far behind a constantly accelerating wheel the median-of-three ({@code [0]}) and
+     * {@code estimator} ({@code [1]}) are, in seconds.
+     */
+    private static double[] lags(VelocityEstimator estimator, double period) {
+        double acceleration = 20000; // ticks/s^2
+        MedianOfThree median = new MedianOfThree();
+
+        double medianLag = 0, fitLag = 0;
+        int n = 0;
+        for (double t = period; t < 2; t += period) {
+            int position = (int) Math.round(acceleration * t * t / 2);
+            double velocity = acceleration * t;
+            double medianVelocity = median.update(t, position);
+            estimator.add((long) (t * 1e9), position);
+            if (t > 0.5) {
+                medianLag += (velocity - medianVelocity) / acceleration;
+                fitLag += (velocity - estimator.getVelocity(0)) / acceleration;
+                n++;
+            }
+        }
+        return new double[]{medianLag / n, fitLag / n};
+    }
+
+    @Test
+    public void beatsMedianOfThreeAtTheLoopRate() {
+        // FixedRateScheduler's 50 Hz, with the jitter and glitches of a real loop
+        double[] rms = rmsErrors(new VelocityEstimator(1), 0.02, 0.3, 0.01);
+        assertTrue("median " + rms[0] + " vs fit " + rms[1], rms[1] < rms[0] / 2);
+    }
+
+    @Test
+    public void beatsMedianOfThreeOnCleanFastSamples() {
+        double[] rms = rmsErrors(new VelocityEstimator(1), 0.005, 0.3, 0);
+        assertTrue("median " + rms[0] + " vs fit " + rms[1], rms[1] < rms[0] / 4);
+    }
+
+    @Test
+    public void longerWindowCopesWithGlitchesInFastSamples() {
+        // the default window is 35 ms here, short enough for two glitches in one window to show
+        double[] defaults = rmsErrors(new VelocityEstimator(1), 0.005, 0.3, 0.01);
+        assertTrue("median " + defaults[0] + " vs fit " + defaults[1], defaults[1] > defaults[0] / 2);
+
+        VelocityEstimator longer = new VelocityEstimator(1);
+        longer.setWindow(16);
+        double[] rms = rmsErrors(longer, 0.005, 0.3, 0.01);
+        assertTrue("median " + rms[0] + " vs fit " + rms[1], rms[1] < rms[0] / 2);
+    }
+
+    @Test
+    public void quadraticFitDoesNotLag() {
+        double[] lag = lags(new VelocityEstimator(1), 0.02);
+        // the median of three differences is the middle one, centered 1.5 periods back
+        assertEquals(0.03, lag[0], 0.002);
+        assertEquals(0, lag[1], 0.001);
+    }
+
+    @Test
+    public void linearFitLagsHalfItsWindow() {
+        VelocityEstimator linear = new VelocityEstimator(1);
+        linear.setQuadratic(false);
+        double[] lag = lags(linear, 0.02);
+        // a line through 8 samples is the velocity at their middle, 3.5 periods back
+        assertEquals(0.07, lag[1], 0.002);
+    }
+
+    @Test
+    public void rejectsSingleGlitch() {
+        VelocityEstimator estimator = new VelocityEstimator(1);
+        for (int i = 0; i < 12; i++) {
+            estimator.add(i * 20_000_000L, 400 * i + (i == 9 ? GLITCH_TICKS : 0));
+            if (i > 0) {
+                assertEquals("sample " + i, 20000, estimator.getVelocity(0), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void sharesTimesAcrossChannels() {
+        VelocityEstimator estimator = new VelocityEstimator(3);
+        int[] positions = new int[3];
+        for (int i = 0; i < 10; i++) {
+            positions[0] = 100 * i;
+            positions[1] = -50 * i;
+            positions[2] = 7;
+            estimator.add(i * 10_000_000L, positions);
+            // a repeat of the same bulk read is ignored
+            estimator.add(i * 10_000_000L, positions);
+        }
+        assertEquals(10000, estimator.getVelocity(0), 1e-6);
+        assertEquals(-5000, estimator.getVelocity(1), 1e-6);
+        assertEquals(0, estimator.getVelocity(2), 1e-6);
+    }
+
+    @Test
+    public void correctsOverflowedHubVelocity() {
+        VelocityEstimator estimator = new VelocityEstimator(1);
+        for (int i = 0; i < 10; i++) {
+            estimator.add(i * 10_000_000L, 1000 * i);
+        }
+        // 100000 cps wraps at 16 bits; the hub's velocities are multiples of 20
+        assertEquals(100000, estimator.correct(0, (short) 100000), 0);
+    }
+
+    @Test
+    public void reportsFitAheadOfLaggingHubVelocity() {
+        VelocityEstimator estimator = new VelocityEstimator(1);
+        double accel = 20000; // ticks/s^2
+        double t = 0, hub = 0;
+        for (int i = 0; i < 20; i++) {
+            t = i * 0.02;
+            estimator.add(Math.round(t * 1e9), (int) Math.round(accel * t * t / 2));
+            // the hub averages over its last 50 ms, i.e. reports the velocity of 25 ms ago
+            hub = 20 * Math.round(accel * Math.max(0, t - 0.025) / 20);
+        }
+
+        assertEquals(estimator.getVelocity(0), estimator.getVelocity(0, hub), 0);
+        assertEquals(accel * t, estimator.getVelocity(0, hub), 20);
+        assertTrue(accel * t - hub > 400);
+
+        estimator.setFitVelocity(false);
+        assertEquals(hub, estimator.getVelocity(0, hub), 0);
+    }
+}
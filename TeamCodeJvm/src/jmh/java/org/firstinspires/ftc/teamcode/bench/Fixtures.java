@@ -0,0 +1,83 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.trajectory.constraints.AngularVelocityConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.MecanumVelocityConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.MinVelocityConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.ProfileAccelerationConstraint;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Constraints and paths shared by the benchmarks. The numbers are copied from DriveConstants,
+ * which is Android only; they only have to be realistic, not current.
+ */
+final class Fixtures {
+    static final double MAX_VEL = 68.8675311434;
+    static final double MAX_ACCEL = 68.8675311434;
+    static final double MAX_ANG_VEL = Math.toRadians(60);
+    static final double MAX_ANG_ACCEL = Math.toRadians(60);
+    static final double TRACK_WIDTH = 13.2;
+
+    static final Pose2d START = new Pose2d(-36, -62, Math.toRadians(90));
+
+    static final MarkerCallback NO_OP = () -> {
+    };
+
+    private Fixtures() {
+    }
+
+    static TrajectorySequenceBuilder builder(Pose2d start) {
+        return new TrajectorySequenceBuilder(
+                start,
+                new MinVelocityConstraint(Arrays.asList(
+                        new AngularVelocityConstraint(MAX_ANG_VEL),
+                        new MecanumVelocityConstraint(MAX_VEL, TRACK_WIDTH)
+                )),
+                new ProfileAccelerationConstraint(MAX_ACCEL),
+                MAX_ANG_VEL, MAX_ANG_ACCEL
+        );
+    }
+
+    /**
+     * A typical autonomous: spike mark, backdrop, stack and back, with a turn and a wait. Each
+     * marker kind is added {@code markers} times, spread over the sequence.
+     */
+    static TrajectorySequenceBuilder autonomous(int markers) {
+        TrajectorySequenceBuilder builder = builder(START)
+                .splineTo(new Vector2d(-30, -34), Math.toRadians(60))
+                .back(6)
+                .turn(Math.toRadians(-150))
+                .splineToLinearHeading(new Pose2d(48, -36, Math.toRadians(180)), Math.toRadians(0))
+                .waitSeconds(0.5)
+                .lineToConstantHeading(new Vector2d(24, -12))
+                .splineToConstantHeading(new Vector2d(-58, -12), Math.toRadians(180))
+                .splineToConstantHeading(new Vector2d(24, -12), Math.toRadians(0))
+                .lineToLinearHeading(new Pose2d(48, -36, Math.toRadians(180)));
+        for (int i = 0; i < markers; i++) {
+            double fraction = (i + 0.5) / markers;
+            builder.addTemporalMarker(fraction, 0, NO_OP)
+                    .addDisplacementMarker(fraction, 0, NO_OP)
+                    .addSpatialMarker(new Vector2d(-58 + 106 * fraction, -12), NO_OP);
+        }
+        return builder;
+    }
+
+    /**
+     * A clock that only moves when told to, so a benchmark steps through a sequence at a fixed
+     * loop period however fast it actually runs.
+     */
+    static class ManualClock extends NanoClock {
+        double time;
+
+        @Override
+        public double seconds() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import org.firstinspires.ftc.teamcode.drive.HeadingFusion;
+import org.firstinspires.ftc.teamcode.drive.TrackingWheelOdometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-read localization math: a three wheel odometry update, and a fusion step with an IMU
+ * sample every fourth step, the way the IMU poller's samples arrive against the odometry rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OdometryBenchmark {
+    private static final long STEP_NANOS = 2_000_000;
+
+    private final TrackingWheelOdometry odometry = new TrackingWheelOdometry(10, 4);
+    private final HeadingFusion fusion = new HeadingFusion();
+
+    // wheel positions of a robot driving an arc, in inches
+    private double left, right, front;
+    private long nanos;
+    private int step;
+
+    @Benchmark
+    public double odometryUpdate() {
+        left += 0.12;
+        right += 0.10;
+        front += 0.01;
+        odometry.update(left, right, front);
+        odometry.updateVelocity(60, 50, 5);
+        return odometry.getHeading();
+    }
+
+    @Benchmark
+    public double headingFusion() {
+        nanos += STEP_NANOS;
+        fusion.predict(nanos, 0.11, 0.01, 0.002);
+        if ((++step & 3) == 0) {
+            // sampled a step ago, so the correction has to look back into the history
+            fusion.correct(nanos - STEP_NANOS, fusion.getHeading() + 0.001, 0.05);
+        }
+        return fusion.getHeading();
+    }
+}
@@ -0,0 +1,60 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.util.PathPolyline;
+import org.firstinspires.ftc.teamcode.util.PoseHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hardware-free parts of the runner's field overlay: sampling a sequence's paths, which
+ * happens once per followed sequence, and recording and walking the pose history, which happens
+ * every loop and every packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlayBenchmark {
+    private TrajectorySequence sequence;
+    private final PoseHistory poseHistory = new PoseHistory(100);
+    private double t;
+
+    @Setup
+    public void setup() {
+        sequence = Fixtures.autonomous(0).build();
+    }
+
+    @Benchmark
+    public void samplePolylines(Blackhole blackhole) {
+        for (int i = 0; i < sequence.size(); i++) {
+            if (sequence.get(i) instanceof TrajectorySegment) {
+                blackhole.consume(PathPolyline.sample(((TrajectorySegment) sequence.get(i)).getTrajectory().getPath()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void poseHistory(Blackhole blackhole) {
+        t += 0.01;
+        poseHistory.add(48 * Math.cos(t), 48 * Math.sin(t));
+        poseHistory.forEachRun((xs, ys, from, to) -> {
+            blackhole.consume(xs[from]);
+            blackhole.consume(ys[to - 1]);
+        });
+    }
+}
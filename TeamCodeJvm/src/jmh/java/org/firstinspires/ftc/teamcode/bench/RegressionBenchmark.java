@@ -0,0 +1,77 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import org.firstinspires.ftc.teamcode.util.RegressionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The feedforward fits of the tuning op modes, on synthetic ramp and acceleration runs.
+ * {@code samples} is the run length at the op modes' loop rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegressionBenchmark {
+    private static final double KV = 0.0145, KA = 0.002, K_STATIC = 0.05;
+
+    @Param({"500", "5000"})
+    public int samples;
+
+    private final List<Double> times = new ArrayList<>();
+    private final List<Double> rampPositions = new ArrayList<>(), rampPowers = new ArrayList<>();
+    private final List<Double> accelPositions = new ArrayList<>(), accelPowers = new ArrayList<>();
+    private RegressionUtil.RampResult rampResult;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        double dt = 0.02;
+        double rampRate = 0.1; // power per second
+        double accelPower = 0.7;
+        for (int i = 0; i < samples; i++) {
+            double t = i * dt;
+            times.add(t);
+
+            // velocity follows the ramp: power = kV v + kStatic
+            double rampPower = Math.min(1, rampRate * t);
+            double rampVelocity = Math.max(0, rampPower - K_STATIC) / KV;
+            double last = rampPositions.isEmpty() ? 0 : rampPositions.get(rampPositions.size() - 1);
+            rampPositions.add(last + rampVelocity * dt + random.nextGaussian() * 0.05);
+            rampPowers.add(rampPower);
+
+            // constant power from rest: v approaches its final value with time constant kA / kV
+            double finalVelocity = (accelPower - K_STATIC) / KV;
+            double tau = KA / KV;
+            accelPositions.add(finalVelocity * (t - tau * (1 - Math.exp(-t / tau))) + random.nextGaussian() * 0.05);
+            accelPowers.add(accelPower);
+        }
+        rampResult = RegressionUtil.fitRampData(times, rampPositions, rampPowers, true, null);
+    }
+
+    @Benchmark
+    public RegressionUtil.RampResult fitRamp() {
+        return RegressionUtil.fitRampData(times, rampPositions, rampPowers, true, null);
+    }
+
+    @Benchmark
+    public RegressionUtil.AccelResult fitAccel() {
+        return RegressionUtil.fitAccelData(times, accelPositions, accelPowers, rampResult, null);
+    }
+}
@@ -0,0 +1,37 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a sequence, which is what an op mode waits on during init: generating the paths and
+ * motion profiles, then projecting the temporal, displacement and spatial markers onto segment
+ * times. {@code markers} is the number of markers of each kind.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBuildBenchmark {
+    @Param({"0", "4", "16", "128", "512"})
+    public int markers;
+
+    @Benchmark
+    public TrajectorySequence build() {
+        return Fixtures.autonomous(markers).build();
+    }
+
+}
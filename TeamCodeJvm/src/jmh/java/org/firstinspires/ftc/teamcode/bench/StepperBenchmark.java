@@ -0,0 +1,72 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import com.acmerobotics.roadrunner.control.PIDCoefficients;
+import com.acmerobotics.roadrunner.drive.DriveSignal;
+import com.acmerobotics.roadrunner.followers.HolonomicPIDVAFollower;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceStepper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of the runner's following logic: segment bookkeeping, the holonomic follower or the
+ * turn controller, and firing markers. Virtual time advances one loop period per call and the
+ * robot is placed on the target with a small offset, so every segment kind is hit in proportion
+ * to its duration and the controllers see a nonzero error. The sequence restarts when it ends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepperBenchmark {
+    private static final double LOOP_PERIOD = 0.01; // s
+
+    @Param({"0", "16", "128", "512"})
+    public int markers;
+
+    private final Fixtures.ManualClock clock = new Fixtures.ManualClock();
+    private TrajectorySequence sequence;
+    private TrajectorySequenceStepper stepper;
+    private Pose2d pose = Fixtures.START;
+    private final Pose2d velocity = new Pose2d(10, 0, 0);
+
+    @Setup
+    public void setup() {
+        sequence = Fixtures.autonomous(markers).build();
+        PIDCoefficients translational = new PIDCoefficients(8, 0, 0.5);
+        PIDCoefficients heading = new PIDCoefficients(8, 0, 0.2);
+        HolonomicPIDVAFollower follower = new HolonomicPIDVAFollower(translational, translational, heading,
+                new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5, clock);
+        stepper = new TrajectorySequenceStepper(follower, heading, clock);
+        stepper.follow(sequence);
+    }
+
+    @Benchmark
+    public DriveSignal update() {
+        clock.time += LOOP_PERIOD;
+        DriveSignal signal = stepper.update(pose, velocity);
+        Pose2d target = stepper.getTargetPose();
+        if (target != null) {
+            pose = new Pose2d(target.getX() + 0.3, target.getY() - 0.2, target.getHeading() + 0.01);
+        }
+        if (!stepper.isBusy()) {
+            stepper.follow(sequence);
+        }
+        return signal;
+    }
+}
@@ -0,0 +1,91 @@
+package org.firstinspires.ftc.teamcode.bench;
+
+import org.firstinspires.ftc.teamcode.util.VelocityEstimator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sample of every wheel into a {@link VelocityEstimator}, i.e. the fits of one bulk read, as
+ * the odometry thread does for the three tracking wheels. Every 64th sample carries a glitch, so
+ * the outlier rejection's refit is in the mix. {@code medianOfThree} is the estimator the fit
+ * replaced, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VelocityEstimatorBenchmark {
+    private static final long STEP_NANOS = 5_000_000;
+
+    @Param({"1", "3"})
+    public int channels;
+
+    @Param({"8", "16"})
+    public int window;
+
+    private VelocityEstimator estimator;
+    private int[] positions;
+    private long nanos;
+    private int step;
+
+    // median-of-three state
+    private final double[] estimates = new double[3];
+    private int estimateIndex;
+    private int lastPosition;
+    private long lastNanos;
+
+    @Setup
+    public void setup() {
+        estimator = new VelocityEstimator(channels);
+        estimator.setWindow(window);
+        positions = new int[channels];
+    }
+
+    private int position(int channel) {
+        // a wheel speeding up, at a few hundred ticks per sample
+        return (int) (0.01 * step * step) + 200 * step + 37 * channel + ((step & 63) == 0 ? 400 : 0);
+    }
+
+    @Benchmark
+    public double fit() {
+        nanos += STEP_NANOS;
+        step++;
+        for (int c = 0; c < channels; c++) {
+            positions[c] = position(c);
+        }
+        estimator.add(nanos, positions);
+        return estimator.getVelocity(0);
+    }
+
+    @Benchmark
+    public double medianOfThree() {
+        nanos += STEP_NANOS;
+        step++;
+        double median = 0;
+        for (int c = 0; c < channels; c++) {
+            // one channel's state stands in for each; the work per channel is the same
+            int position = position(c);
+            estimates[estimateIndex] = (position - lastPosition) / ((nanos - lastNanos) / 1e9);
+            estimateIndex = (estimateIndex + 1) % 3;
+            lastPosition = position;
+            median = estimates[0] > estimates[1]
+                    ? Math.max(estimates[1], Math.min(estimates[0], estimates[2]))
+                    : Math.max(estimates[0], Math.min(estimates[1], estimates[2]));
+        }
+        lastNanos = nanos;
+        return median;
+    }
+}